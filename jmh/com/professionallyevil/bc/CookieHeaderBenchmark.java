@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IExtensionHelpers;
+import burp.IHttpRequestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the Set-Cookie headers of a synthetic history into cookie statistics, both from already split header strings
+ * and from the raw responses (parsing the headers with analyzeResponse versus scanning the bytes in place).  The string
+ * based benchmarks use a replica of the previous header splitting and statistics.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CookieHeaderBenchmark {
+
+    private List<String> headers;
+    private List<byte[]> responses;
+    private IExtensionHelpers helpers;
+
+    @Setup
+    public void setup() {
+        IHttpRequestResponse[] history = SyntheticHistory.generate(20000, 1);
+        helpers = SyntheticHistory.callbacks(history).getHelpers();
+        headers = new ArrayList<>();
+        responses = new ArrayList<>();
+        for (IHttpRequestResponse message : history) {
+            responses.add(message.getResponse());
+            for (String header : helpers.analyzeResponse(message.getResponse()).getHeaders()) {
+                if (CorrelatorEngine.startsWithIgnoreCase(header, "set-cookie:")) {
+                    headers.add(header);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, LegacyCookieStatistics> processCookieHeader() {
+        Map<String, LegacyCookieStatistics> cookieStatistics = new TreeMap<>();
+        for (String header : headers) {
+            processCookieHeader(header, cookieStatistics);
+        }
+        return cookieStatistics;
+    }
+
+    @Benchmark
+    public Map<String, LegacyCookieStatistics> analyzeResponses() {
+        Map<String, LegacyCookieStatistics> cookieStatistics = new TreeMap<>();
+        for (byte[] response : responses) {
+            for (String header : helpers.analyzeResponse(response).getHeaders()) {
+                if (CorrelatorEngine.startsWithIgnoreCase(header, "set-cookie:")) {
+                    processCookieHeader(header, cookieStatistics);
+                }
+            }
+        }
+        return cookieStatistics;
+    }
+
+    @Benchmark
+    public Map<String, CookieStatistics> scanResponses() {
+        Map<String, CookieStatistics> cookieStatistics = new TreeMap<>();
+        for (int i = 0; i < responses.size(); i++) {
+            SetCookieScanner cookie = new SetCookieScanner(responses.get(i));
+            while (cookie.next()) {
+                CorrelatorEngine.processCookie(cookie, i, cookieStatistics);
+            }
+        }
+        return cookieStatistics;
+    }
+
+    /**
+     * How CorrelatorEngine counted a Set-Cookie header before SetCookieScanner: split on ';' and '=' into strings.
+     */
+    static void processCookieHeader(String header, Map<String, LegacyCookieStatistics> cookieStatistics) {
+        String[] parts = header.substring("set-cookie:".length()).split(";");
+        boolean httpOnly = false;
+        boolean secure = false;
+        String expires = null;
+        String maxAge = null;
+        String domain = null;
+        String path = null;
+        String name = "";
+        int count = 0;
+        for (String part: parts) {
+            String[] pair = part.split("=");
+            String key = pair[0].trim().toUpperCase();
+            switch(key) {
+                case "HTTPONLY":
+                    httpOnly = true;
+                    break;
+                case "SECURE":
+                    secure = true;
+                    break;
+                case "EXPIRES":
+                    expires = pair[1].trim();
+                    break;
+                case "MAX-AGE":
+                    maxAge = pair[1].trim();
+                    break;
+                case "DOMAIN":
+                    domain = pair[1].trim();
+                    break;
+                case "PATH":
+                    path = pair[1].trim();
+                    break;
+                default:
+                    // pass
+            }
+            if(count==0) {
+                name = pair[0].trim();
+            }
+            count+=1;
+        }
+        if(!name.isEmpty()) {
+            LegacyCookieStatistics cs;
+            if (cookieStatistics.get(name) != null) {
+                cs = cookieStatistics.get(name);
+            } else {
+                cs = new LegacyCookieStatistics();
+                cookieStatistics.put(name, cs);
+            }
+            cs.addCookieValues(httpOnly, secure, expires, maxAge, domain, path);
+        }
+    }
+
+    /**
+     * The attribute counting CookieStatistics did for the split header strings.
+     */
+    static class LegacyCookieStatistics {
+        private int count = 0;
+        private int httpOnlyCount = 0;
+        private int secureCount = 0;
+        private String cookieType = "Session";
+        private List<String> domainList = new ArrayList<>();
+        private String domains = "(Never Set)";
+        private List<String> pathList = new ArrayList<>();
+        private String paths = "(Never Set)";
+
+        void addCookieValues(boolean httpOnly, boolean secure, String expires, String maxAge, String domain,
+                             String path) {
+            count+=1;
+            if(httpOnly) {
+                httpOnlyCount += 1;
+            }
+            if(secure) {
+                secureCount += 1;
+            }
+            if (expires != null || maxAge != null) {
+                cookieType = "Persistent";
+            }
+            if(domain != null && !domainList.contains(domain)) {
+                domainList.add(domain);
+                domains = String.join(",", domainList);
+            }
+            if(path != null && !pathList.contains(path)) {
+                pathList.add(path);
+                paths = String.join(",", pathList);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collecting parameter instances (put) and analyzing them (analyzeAll), with request parsing done up front so only
+ * CorrelatedParam itself is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorrelatedParamBenchmark {
+
+    @Param({"2000", "20000"})
+    int historySize;
+
+    private IBurpExtenderCallbacks callbacks;
+    private IExtensionHelpers helpers;
+    private MessageTable messages;
+    private IRequestInfo[] requestInfos;
+    private String[] responseStrings;
+
+    @Setup
+    public void setup() {
+        IHttpRequestResponse[] history = SyntheticHistory.generate(historySize, 1);
+        callbacks = SyntheticHistory.callbacks(history);
+        helpers = callbacks.getHelpers();
+        messages = new MessageTable(history);
+        requestInfos = new IRequestInfo[history.length];
+        responseStrings = new String[history.length];
+        for (int i = 0; i < history.length; i++) {
+            requestInfos[i] = helpers.analyzeRequest(history[i]);
+            responseStrings[i] = helpers.bytesToString(history[i].getResponse());
+        }
+    }
+
+    Map<String, CorrelatedParam> putAll() {
+        Map<String, CorrelatedParam> params = new HashMap<>();
+        for (int i = 0; i < requestInfos.length; i++) {
+            List<IParameter> requestParams = requestInfos[i].getParameters();
+            for (IParameter param : requestParams) {
+                CorrelatedParam cp = params.get(param.getName());
+                if (cp == null) {
+                    cp = new CorrelatedParam(param.getName(), param.getType(), messages);
+                    params.put(param.getName(), cp);
+                }
+                cp.put(param, i, requestInfos[i], responseStrings[i], helpers);
+            }
+        }
+        return params;
+    }
+
+    @Benchmark
+    public Map<String, CorrelatedParam> put() {
+        return putAll();
+    }
+
+    /**
+     * A fresh, unanalyzed set of parameters for every invocation of analyzeAll.
+     */
+    @State(Scope.Thread)
+    public static class Unanalyzed {
+        Map<String, CorrelatedParam> params;
+
+        @Setup(Level.Invocation)
+        public void setup(CorrelatedParamBenchmark benchmark) {
+            params = benchmark.putAll();
+        }
+    }
+
+    @Benchmark
+    public Map<String, CorrelatedParam> analyzeAll(Unanalyzed unanalyzed) {
+        for (CorrelatedParam cp : unanalyzed.params.values()) {
+            cp.analyzeAll(callbacks);
+        }
+        return unanalyzed.params;
+    }
+}
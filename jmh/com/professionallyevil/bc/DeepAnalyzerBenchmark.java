@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deep analysis of an MD5 parameter: hashes every indexed value looking for the preimage, or looks it up in a digest
+ * index.  Building the value and digest indexes, which is done once per analysis rather than per deep analysis, is
+ * measured separately.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class DeepAnalyzerBenchmark {
+
+    @Param({"2000", "20000"})
+    int historySize;
+
+    private IBurpExtenderCallbacks callbacks;
+    private List<CorrelatedParam> params;
+    private ValueIndex valueIndex;
+    private DigestIndex digestIndex;
+    private ParamInstance target;
+
+    private static final WorkerStatusListener IGNORE = new WorkerStatusListener() {
+        @Override
+        public void setStatus(String statusText) {
+        }
+
+        @Override
+        public void setProgress(int percentDone) {
+        }
+
+        @Override
+        public void done(Object result) {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        IHttpRequestResponse[] history = SyntheticHistory.generate(historySize, 1);
+        callbacks = SyntheticHistory.callbacks(history);
+        CorrelationShard results = SyntheticHistory.correlate(history, callbacks, true);
+        params = SyntheticHistory.allParameters(results);
+        valueIndex = buildValueIndex();
+        digestIndex = buildDigestIndex();
+        CorrelatedParam token = results.jsonParameters.get("token");
+        target = token.getSample();
+        if (target.getFormat() != ParamInstance.Format.MD5) {
+            throw new IllegalStateException("Expected the token parameter to be identified as MD5, not " +
+                    target.getFormat());
+        }
+    }
+
+    @Benchmark
+    public Map<ParamInstance, String> hashMatching() {
+        DeepAnalyzer analyzer = new DeepAnalyzer(target, valueIndex, null, callbacks, IGNORE);
+        analyzer.doInBackground();
+        return analyzer.getResultsMap();
+    }
+
+    @Benchmark
+    public Map<ParamInstance, String> digestLookup() {
+        DeepAnalyzer analyzer = new DeepAnalyzer(target, valueIndex, digestIndex, callbacks, IGNORE);
+        analyzer.doInBackground();
+        return analyzer.getResultsMap();
+    }
+
+    @Benchmark
+    public DigestIndex buildDigestIndex() {
+        DigestIndex index = new DigestIndex(valueIndex);
+        index.update(null);
+        return index;
+    }
+
+    @Benchmark
+    public ValueIndex buildValueIndex() {
+        ValueIndex index = new ValueIndex();
+        index.update(params);
+        return index;
+    }
+}
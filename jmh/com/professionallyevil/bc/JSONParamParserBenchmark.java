@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Breaking the JSON and JWT values of a synthetic history out into their name/value pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONParamParserBenchmark {
+
+    private List<String> jsonValues;
+
+    @Setup
+    public void setup() {
+        IHttpRequestResponse[] history = SyntheticHistory.generate(2000, 1);
+        IBurpExtenderCallbacks callbacks = SyntheticHistory.callbacks(history);
+        jsonValues = new ArrayList<>();
+        for (CorrelatedParam cp : SyntheticHistory.allParameters(SyntheticHistory.correlate(history, callbacks, true))) {
+            for (ParamInstance pi : cp.getParamInstances(false)) {
+                if (pi.getFormat() == ParamInstance.Format.JSON || pi.getFormat() == ParamInstance.Format.JWT) {
+                    jsonValues.add(pi.getDecodedValue());
+                }
+            }
+        }
+        for (IHttpRequestResponse message : history) {
+            String request = callbacks.getHelpers().bytesToString(message.getRequest());
+            if (request.startsWith("POST /api/")) {
+                jsonValues.add(request.substring(request.indexOf("\r\n\r\n") + 4));
+            }
+        }
+    }
+
+    @Benchmark
+    public int parse() {
+        int count = 0;
+        for (String value : jsonValues) {
+            count += JSONParamParser.parse(value).size();
+        }
+        return count;
+    }
+}
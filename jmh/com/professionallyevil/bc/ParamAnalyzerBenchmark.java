@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Format identification and decoding of every unique value in a synthetic history.  The shared analysis cache is
+ * cleared first, so this is the cost of analyzing values that have not been seen before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParamAnalyzerBenchmark {
+
+    @Param({"2000"})
+    int historySize;
+
+    private IBurpExtenderCallbacks callbacks;
+    private List<ParamInstance> instances;
+
+    @Setup
+    public void setup() {
+        IHttpRequestResponse[] history = SyntheticHistory.generate(historySize, 1);
+        callbacks = SyntheticHistory.callbacks(history);
+        instances = new ArrayList<>();
+        for (CorrelatedParam cp : SyntheticHistory.allParameters(SyntheticHistory.correlate(history, callbacks, false))) {
+            instances.addAll(cp.getParamInstances(false));
+        }
+    }
+
+    @Benchmark
+    public int analyze() {
+        ParamAnalyzer.getCache().clear();
+        int steps = 0;
+        for (ParamInstance pi : instances) {
+            steps += ParamAnalyzer.analyze(pi, callbacks).getStepCount();
+        }
+        return steps;
+    }
+
+    /**
+     * Analysis plus rendering of the text for every value, i.e. what every analysis cost before the text was only
+     * rendered on demand.
+     */
+    @Benchmark
+    public int describe() {
+        ParamAnalyzer.getCache().clear();
+        int length = 0;
+        for (ParamInstance pi : instances) {
+            length += ParamAnalyzer.describe(pi, callbacks).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+import burp.IParameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of ParamInstance into the sets used by the analysis, comparing the fingerprint based
+ * equals/hashCode/compareTo with a replica of the previous string based implementation.
+ * <p>
+ * Run with: gradle jmh -Pjmh.includes=ParamInstanceOrdering
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParamInstanceOrderingBenchmark {
+
+    @Param({"1000", "10000"})
+    int instanceCount;
+
+    private ParamInstance[] instances;
+    private LegacyParamInstance[] legacyInstances;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        IHttpRequestResponse[] history = new IHttpRequestResponse[instanceCount];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new OfflineMessage(new byte[0], null);
+        }
+        ParamInstanceStore store = new ParamInstanceStore("JSESSIONID", IParameter.PARAM_COOKIE,
+                new MessageTable(history));
+        instances = new ParamInstance[instanceCount];
+        legacyInstances = new LegacyParamInstance[instanceCount];
+        for (int i = 0; i < instanceCount; i++) {
+            // roughly one new session every 10 requests
+            String value = String.format("%032X", random.nextInt(Math.max(1, instanceCount / 10)));
+            int index = store.add(i, value, 100, 110, 111, 111 + value.length());
+            instances[i] = store.view(index);
+            legacyInstances[i] = new LegacyParamInstance(instances[i]);
+        }
+    }
+
+    @Benchmark
+    public Set<ParamInstance> fingerprintTreeSet() {
+        return new TreeSet<>(Arrays.asList(instances));
+    }
+
+    @Benchmark
+    public Set<LegacyParamInstance> legacyTreeSet() {
+        return new TreeSet<>(Arrays.asList(legacyInstances));
+    }
+
+    @Benchmark
+    public Set<ParamInstance> fingerprintHashSet() {
+        return new HashSet<>(Arrays.asList(instances));
+    }
+
+    @Benchmark
+    public Set<LegacyParamInstance> legacyHashSet() {
+        return new HashSet<>(Arrays.asList(legacyInstances));
+    }
+
+    /**
+     * The identity scheme ParamInstance used before fingerprints: a lazily cached hash of a StringBuilder (which is
+     * identity based) and a compareTo that concatenates name and value on every call.
+     */
+    static class LegacyParamInstance implements Comparable<LegacyParamInstance> {
+        private final ParamInstance param;
+        private int hashCode = 0;
+
+        LegacyParamInstance(ParamInstance param) {
+            this.param = param;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LegacyParamInstance)) {
+                return false;
+            }
+            ParamInstance other = ((LegacyParamInstance) obj).param;
+            return param.getMessage().equals(other.getMessage()) &&
+                    param.getType() == other.getType() &&
+                    param.getName().equals(other.getName()) &&
+                    param.getValue().equals(other.getValue()) &&
+                    param.getValueStart() == other.getValueStart() &&
+                    param.getValueEnd() == other.getValueEnd() &&
+                    param.getNameStart() == other.getNameStart() &&
+                    param.getNameEnd() == other.getNameEnd();
+        }
+
+        @Override
+        public int hashCode() {
+            StringBuilder buf = new StringBuilder();
+            if (this.hashCode == 0) {
+                buf.append(ParamInstance.class)
+                        .append(':')
+                        .append(param.getMessage().toString())
+                        .append(':')
+                        .append(param.getType())
+                        .append(':')
+                        .append(param.getName())
+                        .append(':')
+                        .append(param.getValue())
+                        .append(':')
+                        .append(param.getValueStart())
+                        .append(':')
+                        .append(param.getValueEnd())
+                        .append(':')
+                        .append(param.getNameStart())
+                        .append(':')
+                        .append(param.getNameEnd());
+                this.hashCode = buf.hashCode();
+            }
+            return hashCode;
+        }
+
+        @Override
+        public int compareTo(LegacyParamInstance o) {
+            if (this.hashCode() == o.hashCode()) {
+                return 0;
+            } else {
+                return (param.getName() + ':' + param.getValue()).compareTo(
+                        o.param.getName() + ':' + o.param.getValue()) == -1 ? -1 : 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the REST-style path parameters (and their offsets) of uploads to deep REST endpoints, either by splitting
+ * the URL path and searching the decoded request for each segment, or by scanning the request line in place.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RestPathBenchmark {
+
+    @Param({"1024", "262144"})
+    public int bodySize;
+
+    private List<byte[]> requests;
+    private List<String> paths;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        requests = new ArrayList<>();
+        paths = new ArrayList<>();
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'x');
+        for (int i = 0; i < 200; i++) {
+            String path = "/api/v2/tenants/" + random.nextInt(50) + "/projects/" + random.nextInt(1000) + "/files/"
+                    + Integer.toHexString(random.nextInt()) + "/upload";
+            String head = "POST " + path + " HTTP/1.1\r\nHost: www.example.com\r\nContent-Type: application/octet-stream\r\n"
+                    + "Content-Length: " + bodySize + "\r\n\r\n";
+            byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] request = Arrays.copyOf(headBytes, headBytes.length + bodySize);
+            System.arraycopy(body, 0, request, headBytes.length, bodySize);
+            requests.add(request);
+            paths.add(path);
+        }
+    }
+
+    @Benchmark
+    public int splitAndIndexOf() {
+        int count = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            String[] pathElements = paths.get(i).substring(1).split("/");
+            for (int p = 0; p < pathElements.length - 1; p++) {
+                String requestString = new String(requests.get(i));
+                count += requestString.indexOf(pathElements[p]) + requestString.indexOf(pathElements[p + 1]);
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int scanRequestLine() {
+        int count = 0;
+        for (byte[] request : requests) {
+            RestPathScanner path = new RestPathScanner(request);
+            while (path.next()) {
+                count += path.getName().length() + path.getValueStart();
+            }
+        }
+        return count;
+    }
+}
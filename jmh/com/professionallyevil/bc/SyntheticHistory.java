@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Generates a reproducible proxy history that resembles a typical authenticated web application: sessions with
+ * JSESSIONID, BigIP and JWT cookies, search pages that reflect their query, REST style API paths, url-encoded logins
+ * and JSON bodies that carry an MD5 of the user's email.  The same seed always gives the same history.
+ */
+class SyntheticHistory {
+    private static final String[] WORDS = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+            "india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra"};
+    private static final int REQUESTS_PER_SESSION = 20;
+
+    static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+            // discard
+        }
+    });
+
+    private final Random random;
+    private final IHttpService service = new OfflineHelpers.HttpService("app.example.com", 443, "https");
+    private String sessionId;
+    private String bigIP;
+    private String jwt;
+    private String email;
+    private int userId;
+
+    private SyntheticHistory(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param size The number of request/response pairs.
+     * @param seed The seed for the random generator.
+     * @return A generated proxy history.
+     */
+    static IHttpRequestResponse[] generate(int size, long seed) {
+        SyntheticHistory generator = new SyntheticHistory(seed);
+        IHttpRequestResponse[] history = new IHttpRequestResponse[size];
+        for (int i = 0; i < size; i++) {
+            history[i] = generator.next(i % REQUESTS_PER_SESSION == 0);
+        }
+        return history;
+    }
+
+    /**
+     * @return Callbacks serving the history, with all output discarded.
+     */
+    static IBurpExtenderCallbacks callbacks(IHttpRequestResponse[] history) {
+        return new OfflineCallbacks(history, DISCARD, DISCARD);
+    }
+
+    /**
+     * Run the first pass (and optionally the format analysis) over a history, the same way CorrelatorEngine does.
+     */
+    static CorrelationShard correlate(IHttpRequestResponse[] history, IBurpExtenderCallbacks callbacks,
+                                      boolean analyze) {
+        CorrelationShard shard = new CorrelationShard(callbacks, new MessageTable(history), false,
+                new HashSet<String>());
+        for (int i = 0; i < history.length; i++) {
+            shard.processMessage(i);
+        }
+        if (analyze) {
+            for (CorrelatedParam cp : allParameters(shard)) {
+                cp.analyzeAll(callbacks);
+                shard.processJSON(cp, null);
+            }
+            for (CorrelatedParam cp : shard.jsonPartParameters.values()) {
+                cp.analyzeAll(callbacks);
+            }
+        }
+        return shard;
+    }
+
+    static List<CorrelatedParam> allParameters(CorrelationShard shard) {
+        List<CorrelatedParam> params = new ArrayList<>();
+        params.addAll(shard.urlParameters.values());
+        params.addAll(shard.bodyParameters.values());
+        params.addAll(shard.cookieParameters.values());
+        params.addAll(shard.jsonParameters.values());
+        params.addAll(shard.restParameters.values());
+        params.addAll(shard.jsonPartParameters.values());
+        return params;
+    }
+
+    private IHttpRequestResponse next(boolean newSession) {
+        String setCookies = "";
+        if (newSession) {
+            sessionId = hex(16);
+            bigIP = (random.nextInt(Integer.MAX_VALUE)) + "." + (20480 + random.nextInt(4) * 256) + ".0000";
+            userId = 1000 + random.nextInt(9000);
+            email = word() + "." + word() + "@example.com";
+            jwt = base64Url("{\"alg\":\"HS256\",\"typ\":\"JWT\"}") + "." +
+                    base64Url("{\"sub\":\"" + userId + "\",\"email\":\"" + email + "\",\"iat\":" +
+                            (1500000000 + random.nextInt(100000000)) + "}") + "." + base64Url(hex(16));
+            setCookies = "Set-Cookie: JSESSIONID=" + sessionId + "; Path=/; Secure; HttpOnly\r\n" +
+                    "Set-Cookie: BIGipServerpool_app=" + bigIP + "; path=/\r\n" +
+                    "Set-Cookie: auth=" + jwt + "; Max-Age=3600; Domain=example.com; Path=/; Secure\r\n";
+        }
+        String cookies = "Cookie: JSESSIONID=" + sessionId + "; BIGipServerpool_app=" + bigIP + "; auth=" + jwt +
+                "\r\n";
+
+        switch (random.nextInt(4)) {
+            case 0: {
+                String query = word();
+                String request = "GET /app/search?q=" + query + "&page=" + random.nextInt(20) +
+                        "&sort=asc HTTP/1.1\r\nHost: app.example.com\r\n" + cookies + "\r\n";
+                String body = "<html><body><h1>Results for " + query + "</h1><p>" + (random.nextInt(500)) +
+                        " results</p></body></html>";
+                return message(request, "text/html", setCookies, body);
+            }
+            case 1: {
+                String order = UUID.nameUUIDFromBytes(hex(8).getBytes(StandardCharsets.ISO_8859_1)).toString();
+                String request = "GET /api/users/" + userId + "/orders/" + order + " HTTP/1.1\r\n" +
+                        "Host: app.example.com\r\n" + cookies + "\r\n";
+                String body = "{\"order\":\"" + order + "\",\"user\":" + userId + ",\"total\":" +
+                        random.nextInt(10000) + "}";
+                return message(request, "application/json", setCookies, body);
+            }
+            case 2: {
+                String csrf = Base64.getEncoder().encodeToString(hex(12).getBytes(StandardCharsets.ISO_8859_1));
+                String body = "username=" + email.replace("@", "%40") + "&password=" + word() + random.nextInt(100) +
+                        "&csrf=" + csrf.replace("=", "%3D");
+                String request = "POST /login HTTP/1.1\r\nHost: app.example.com\r\n" + cookies +
+                        "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: " + body.length() +
+                        "\r\n\r\n" + body;
+                return message(request, "text/html", setCookies, "<html><body>Welcome " + email + "</body></html>");
+            }
+            default: {
+                String body = "{\"user\":{\"id\":" + userId + ",\"email\":\"" + email + "\"},\"prefs\":[\"" + word() +
+                        "\",\"" + word() + "\"],\"token\":\"" + md5(email) + "\",\"active\":true}";
+                String request = "POST /api/profile HTTP/1.1\r\nHost: app.example.com\r\n" + cookies +
+                        "Content-Type: application/json\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+                return message(request, "application/json", setCookies, "{\"status\":\"ok\",\"id\":" + userId + "}");
+            }
+        }
+    }
+
+    private IHttpRequestResponse message(String request, String contentType, String setCookies, String body) {
+        String response = "HTTP/1.1 200 OK\r\nContent-Type: " + contentType + "\r\n" + setCookies +
+                "Content-Length: " + body.length() + "\r\n\r\n" + body;
+        return new OfflineMessage(service, request.getBytes(StandardCharsets.ISO_8859_1),
+                response.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private String hex(int bytes) {
+        byte[] buf = new byte[bytes];
+        random.nextBytes(buf);
+        return toHex(buf);
+    }
+
+    private static String base64Url(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    static String md5(String value) {
+        try {
+            return toHex(MessageDigest.getInstance("MD5").digest(value.getBytes()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return buf.toString().toUpperCase();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of ParamAnalyzer results keyed by raw value, shared by every parameter.  The
+ * same session cookie seen thousands of times is then only decoded and classified once.  Safe to use from the analysis
+ * threads and the EDT at the same time.
+ */
+class AnalysisCache {
+    static final int DEFAULT_CAPACITY = 20000;
+
+    private final Map<Key, ValueAnalysis> entries;
+    private long hits = 0;
+    private long misses = 0;
+
+    AnalysisCache(final int capacity) {
+        this.entries = new LinkedHashMap<Key, ValueAnalysis>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ValueAnalysis> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param value The raw value that was analyzed.
+     * @param bigIP true if the parameter name marks it as a BigIP cookie, which changes how the value is analyzed.
+     * @return The cached result, or null if it has to be analyzed.
+     */
+    synchronized ValueAnalysis get(String value, boolean bigIP) {
+        ValueAnalysis result = entries.get(new Key(value, bigIP));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    synchronized void put(String value, boolean bigIP, ValueAnalysis result) {
+        entries.put(new Key(value, bigIP), result);
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "Analysis cache: " + entries.size() + " values, " + hits + " hits, " + misses + " misses" +
+                (lookups > 0 ? " (" + (100 * hits / lookups) + "% hit rate)" : "");
+    }
+
+    private static class Key {
+        private final String value;
+        private final boolean bigIP;
+
+        Key(String value, boolean bigIP) {
+            this.value = value;
+            this.bigIP = bigIP;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return bigIP == other.bigIP && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode() * 31 + (bigIP ? 1 : 0);
+        }
+    }
+}
@@ -16,10 +16,22 @@
 
 package com.professionallyevil.bc;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Aggregates every Set-Cookie of one cookie name as the history is streamed through.  Apart from the domain and path
+ * lists, the memory used per cookie is fixed no matter how many values are seen: distinct values are estimated with a
+ * HyperLogLog, lengths are kept in power-of-two buckets and the character distribution in a 256-entry table.
+ * <p>
+ * Not thread safe: live analysis shows copies (see copy()) on the EDT while it keeps adding to the originals.
+ */
 public class CookieStatistics {
+    private static final int LENGTH_BUCKETS = 17;  // 0, 1, 2-3, 4-7, ... 32768+
+
     private String name;
     private int count = 0;
     private int httpOnlyCount = 0;
@@ -29,30 +41,247 @@ public class CookieStatistics {
     private String domains = "(Never Set)";
     private List<String> pathList = new ArrayList<>();
     private String paths = "(Never Set)";
+    private int valueCount = 0;
+    private final HyperLogLog distinctValues = new HyperLogLog();
+    private final int[] lengthBuckets = new int[LENGTH_BUCKETS];
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = 0;
+    private final long[] byteCounts = new long[256];
+    private int firstSeen = -1;
+    private int lastSeen = -1;
+    private long firstHash;
+    private long lastHash;
+    private int rotations = 0;  // times the value differed from the previous one seen
 
     public CookieStatistics(String name) {
         this.name = name;
     }
 
-    void addCookieValues(boolean httpOnly, boolean secure, String expires, String maxAge, String domain, String path) {
+    /**
+     * Count a cookie found by a SetCookieScanner.  Strings are only created for domains and paths not seen before.
+     * @param messageOrdinal The position in the MessageTable of the response that set it.  Cookies must be added in
+     *                       history order.
+     */
+    void addCookieValues(SetCookieScanner cookie, int messageOrdinal) {
         count+=1;
-        if(httpOnly) {
+        if(cookie.isHttpOnly()) {
             httpOnlyCount += 1;
         }
-        if(secure) {
+        if(cookie.isSecure()) {
             secureCount += 1;
         }
-        if (expires != null || maxAge != null) {
+        if (cookie.isPersistent()) {
             cookieType = "Persistent";
         }
-        if(domain != null && !domainList.contains(domain)) {
-            domainList.add(domain);
+        if (cookie.hasDomain() && !containsDomain(cookie)) {
+            domainList.add(cookie.getDomain());
             domains = String.join(",", domainList);
         }
-        if(path != null && !pathList.contains(path)) {
-            pathList.add(path);
+        if (cookie.hasPath() && !containsPath(cookie)) {
+            pathList.add(cookie.getPath());
             paths = String.join(",", pathList);
         }
+        addValue(cookie, messageOrdinal);
+    }
+
+    private void addValue(SetCookieScanner cookie, int messageOrdinal) {
+        int length = cookie.getValueLength();
+        long hash = HyperLogLog.FNV_OFFSET;
+        for (int i = 0; i < length; i++) {
+            int b = cookie.getValueByte(i);
+            hash = HyperLogLog.fnvStep(hash, b);
+            byteCounts[b]++;
+        }
+        hash = HyperLogLog.mix(hash);
+        distinctValues.add(hash);
+        lengthBuckets[Math.min(LENGTH_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(length))]++;
+        minLength = Math.min(minLength, length);
+        maxLength = Math.max(maxLength, length);
+
+        if (valueCount == 0) {
+            firstSeen = messageOrdinal;
+            firstHash = hash;
+        } else if (hash != lastHash) {
+            rotations++;
+        }
+        lastSeen = messageOrdinal;
+        lastHash = hash;
+        valueCount++;
+    }
+
+    private boolean containsDomain(SetCookieScanner cookie) {
+        for (String domain : domainList) {
+            if (cookie.domainEquals(domain)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsPath(SetCookieScanner cookie) {
+        for (String path : pathList) {
+            if (cookie.pathEquals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Combine the counts from another set of statistics for the same cookie name.
+     * @param other Statistics gathered from a later part of the proxy history.
+     */
+    void merge(CookieStatistics other) {
+        count += other.count;
+        httpOnlyCount += other.httpOnlyCount;
+        secureCount += other.secureCount;
+        if ("Persistent".equals(other.cookieType)) {
+            cookieType = "Persistent";
+        }
+        for (String domain : other.domainList) {
+            if (!domainList.contains(domain)) {
+                domainList.add(domain);
+                domains = String.join(",", domainList);
+            }
+        }
+        for (String path : other.pathList) {
+            if (!pathList.contains(path)) {
+                pathList.add(path);
+                paths = String.join(",", pathList);
+            }
+        }
+        if (other.valueCount > 0) {
+            distinctValues.merge(other.distinctValues);
+            for (int i = 0; i < LENGTH_BUCKETS; i++) {
+                lengthBuckets[i] += other.lengthBuckets[i];
+            }
+            for (int i = 0; i < byteCounts.length; i++) {
+                byteCounts[i] += other.byteCounts[i];
+            }
+            minLength = Math.min(minLength, other.minLength);
+            maxLength = Math.max(maxLength, other.maxLength);
+            rotations += other.rotations;
+            if (valueCount == 0) {
+                firstSeen = other.firstSeen;
+                firstHash = other.firstHash;
+            } else if (other.firstHash != lastHash) {
+                rotations++;
+            }
+            lastSeen = other.lastSeen;
+            lastHash = other.lastHash;
+            valueCount += other.valueCount;
+        }
+    }
+
+    /**
+     * @return A copy that later changes to these statistics don't affect.
+     */
+    CookieStatistics copy() {
+        CookieStatistics cs = new CookieStatistics(name);
+        cs.count = count;
+        cs.httpOnlyCount = httpOnlyCount;
+        cs.secureCount = secureCount;
+        cs.cookieType = cookieType;
+        cs.domainList.addAll(domainList);
+        cs.domains = domains;
+        cs.pathList.addAll(pathList);
+        cs.paths = paths;
+        cs.valueCount = valueCount;
+        cs.distinctValues.merge(distinctValues);
+        System.arraycopy(lengthBuckets, 0, cs.lengthBuckets, 0, LENGTH_BUCKETS);
+        cs.minLength = minLength;
+        cs.maxLength = maxLength;
+        System.arraycopy(byteCounts, 0, cs.byteCounts, 0, byteCounts.length);
+        cs.firstSeen = firstSeen;
+        cs.lastSeen = lastSeen;
+        cs.firstHash = firstHash;
+        cs.lastHash = lastHash;
+        cs.rotations = rotations;
+        return cs;
+    }
+
+    /**
+     * @return Copies of each of the statistics, in the same order.
+     */
+    static Map<String, CookieStatistics> copyAll(Map<String, CookieStatistics> cookieStatistics) {
+        Map<String, CookieStatistics> copies = new TreeMap<>();
+        for (Map.Entry<String, CookieStatistics> entry : cookieStatistics.entrySet()) {
+            copies.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Write these statistics to a snapshot.
+     */
+    void write(ResultsSnapshot.Output out) throws IOException {
+        out.writeString(name);
+        out.writeVarInt(count);
+        out.writeVarInt(httpOnlyCount);
+        out.writeVarInt(secureCount);
+        out.writeString(cookieType);
+        out.writeVarInt(domainList.size());
+        for (String domain : domainList) {
+            out.writeString(domain);
+        }
+        out.writeVarInt(pathList.size());
+        for (String path : pathList) {
+            out.writeString(path);
+        }
+        out.writeVarInt(valueCount);
+        distinctValues.write(out);
+        for (int lengthBucket : lengthBuckets) {
+            out.writeVarInt(lengthBucket);
+        }
+        out.writeVarInt(minLength);
+        out.writeVarInt(maxLength);
+        for (long byteCount : byteCounts) {
+            out.writeVarLong(byteCount);
+        }
+        out.writeSignedVarInt(firstSeen);
+        out.writeSignedVarInt(lastSeen);
+        out.writeLong(firstHash);
+        out.writeLong(lastHash);
+        out.writeVarInt(rotations);
+    }
+
+    /**
+     * Read statistics written by write().
+     */
+    static CookieStatistics read(ResultsSnapshot.Input in) throws IOException {
+        CookieStatistics cs = new CookieStatistics(in.readString());
+        cs.count = in.readVarInt();
+        cs.httpOnlyCount = in.readVarInt();
+        cs.secureCount = in.readVarInt();
+        cs.cookieType = in.readString();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            cs.domainList.add(in.readString());
+        }
+        if (!cs.domainList.isEmpty()) {
+            cs.domains = String.join(",", cs.domainList);
+        }
+        for (int i = in.readVarInt(); i > 0; i--) {
+            cs.pathList.add(in.readString());
+        }
+        if (!cs.pathList.isEmpty()) {
+            cs.paths = String.join(",", cs.pathList);
+        }
+        cs.valueCount = in.readVarInt();
+        cs.distinctValues.read(in);
+        for (int i = 0; i < LENGTH_BUCKETS; i++) {
+            cs.lengthBuckets[i] = in.readVarInt();
+        }
+        cs.minLength = in.readVarInt();
+        cs.maxLength = in.readVarInt();
+        for (int i = 0; i < cs.byteCounts.length; i++) {
+            cs.byteCounts[i] = in.readVarLong();
+        }
+        cs.firstSeen = in.readSignedVarInt();
+        cs.lastSeen = in.readSignedVarInt();
+        cs.firstHash = in.readLong();
+        cs.lastHash = in.readLong();
+        cs.rotations = in.readVarInt();
+        return cs;
     }
 
     public String getName(){
@@ -83,5 +312,80 @@ public class CookieStatistics {
         return paths;
     }
 
+    /**
+     * @return The estimated number of distinct values.
+     */
+    long getDistinctValues() {
+        return distinctValues.estimate();
+    }
+
+    /**
+     * @return The shortest and longest value lengths, e.g. "32" or "16-40", or "" if no values have been seen.
+     */
+    String getLengthRange() {
+        if (valueCount == 0) {
+            return "";
+        }
+        return minLength == maxLength ? Integer.toString(minLength) : minLength + "-" + maxLength;
+    }
+
+    /**
+     * @return The non-empty power-of-two length buckets and their counts, e.g. "16-31:950 32-63:50".
+     */
+    String getLengthHistogram() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < LENGTH_BUCKETS; i++) {
+            if (lengthBuckets[i] > 0) {
+                if (buf.length() > 0) {
+                    buf.append(' ');
+                }
+                int from = i == 0 ? 0 : 1 << (i - 1);
+                int to = i == 0 ? 0 : (1 << i) - 1;
+                buf.append(from == to ? Integer.toString(from) : i == LENGTH_BUCKETS - 1 ? from + "+" : from + "-" + to);
+                buf.append(':').append(lengthBuckets[i]);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return The Shannon entropy of the characters of all values, in bits per character, rounded to 2 places.
+     */
+    double getEntropy() {
+        long total = 0;
+        for (long byteCount : byteCounts) {
+            total += byteCount;
+        }
+        double entropy = 0;
+        for (long byteCount : byteCounts) {
+            if (byteCount > 0) {
+                double p = (double) byteCount / total;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+        return Math.round(entropy * 100) / 100.0;
+    }
+
+    /**
+     * @return The percentage of Set-Cookies that changed the value from the previous one, or 0 with fewer than two.
+     */
+    int getRotationPercent() {
+        return valueCount < 2 ? 0 : (int) (100L * rotations / (valueCount - 1));
+    }
+
+    /**
+     * @return The ordinal of the first message that set this cookie, or -1 if unknown.
+     */
+    int getFirstSeen() {
+        return firstSeen;
+    }
+
+    /**
+     * @return The ordinal of the last message that set this cookie, or -1 if unknown.
+     */
+    int getLastSeen() {
+        return lastSeen;
+    }
+
 
 }
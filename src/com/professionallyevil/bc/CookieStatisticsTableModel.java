@@ -24,8 +24,11 @@ import java.util.TreeMap;
 
 public class CookieStatisticsTableModel extends AbstractTableModel {
 
-    String[] columnNames = {"Name", "Count", "HttpOnly Flag", "Secure Flag", "Type", "Domains", "Paths"};
-    Class[] columnClasses = {String.class, Integer.class, String.class, String.class, String.class, String.class, String.class};
+    String[] columnNames = {"Name", "Count", "HttpOnly Flag", "Secure Flag", "Type", "Domains", "Paths",
+            "Distinct Values", "Value Length", "Length Histogram", "Entropy (bits/char)", "Rotation %",
+            "First Seen (Ordinal)", "Last Seen (Ordinal)"};
+    Class[] columnClasses = {String.class, Integer.class, String.class, String.class, String.class, String.class, String.class,
+            Long.class, String.class, String.class, Double.class, Integer.class, Integer.class, Integer.class};
 
     Map<String, CookieStatistics> cookieStatistics = new TreeMap<>();
 
@@ -79,6 +82,20 @@ public class CookieStatisticsTableModel extends AbstractTableModel {
                 return cs.getDomains();
             case 6:
                 return cs.getPaths();
+            case 7:
+                return cs.getDistinctValues();
+            case 8:
+                return cs.getLengthRange();
+            case 9:
+                return cs.getLengthHistogram();
+            case 10:
+                return cs.getEntropy();
+            case 11:
+                return cs.getRotationPercent();
+            case 12:
+                return cs.getFirstSeen();
+            case 13:
+                return cs.getLastSeen();
             default:
                 return "";
 
@@ -18,76 +18,138 @@ package com.professionallyevil.bc;
 
 import burp.*;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.*;
 
 /**
  * This class represents a parameter in the web traffic.  It includes analysis of all instances of that parameter.
  */
 public class CorrelatedParam {
-    SortedSet<ParamInstance> paramInstances = new TreeSet<>();
+    ParamInstanceStore instances;
     Set<String> uniqueURLs = new HashSet<>();
-    Set<String> uniqueValues = new HashSet<>();
-    SortedSet<ParamInstance> uniqueParamInstances = new TreeSet<>();
     int reflectedCount = 0;
     boolean isInteresting = false;
     Map<String, IHttpRequestResponse> seenParams = new HashMap<>();
-    Map<ParamInstance,String> analysisText = new HashMap<>();
+    int analyzedCount = 0;      // instances before this index have been analyzed
+    int uniqueValuesTaken = 0;  // unique values before this position have been handed out by takeNewUniqueInstances
+    Map<ParamInstance.Format, Integer> formatCounts = new HashMap<>();
     ParamInstance.Format bestFormat = ParamInstance.Format.UNKNOWN;
     int bestFormatPercent = 0;
     private static String[] INTERESTING_HINTS = {"session","key","user","password","token","ssn"};
 
-    CorrelatedParam(IParameter param, IHttpRequestResponse message, IRequestInfo requestInfo, String responseString,
-                    IExtensionHelpers helpers) {
-        put(param, message, requestInfo, responseString, helpers);
+    CorrelatedParam(String name, byte type, MessageTable messages) {
+        instances = new ParamInstanceStore(name, type, messages);
     }
 
-    CorrelatedParam(RestParamInstance param, IHttpRequestResponse message, IRequestInfo requestInfo, String responseString,
-                    IExtensionHelpers helpers) {
-        put(param, message, requestInfo, responseString, helpers);
+    public synchronized void put(IParameter param, int messageOrdinal, IRequestInfo requestInfo,
+                                 String responseString, IExtensionHelpers helpers) {
+        instances.add(messageOrdinal, param.getValue(), param.getNameStart(), param.getNameEnd(),
+                param.getValueStart(), param.getValueEnd());
+        addURL(requestInfo.getUrl());
+        if (isReflected(param.getValue(), responseString, helpers)) {
+            reflectedCount += 1;
+        }
     }
 
-    CorrelatedParam(JSONParamInstance param) {
-        put(param);
+    /**
+     * Add an instance of a REST path parameter.  These are found after the rest of the message has been processed, so
+     * the URL and whether the value was reflected are passed in rather than worked out here.
+     */
+    public synchronized void putRest(String value, int messageOrdinal, int nameStart, int nameEnd, int valueStart,
+                                     int valueEnd, URL url, boolean reflected) {
+        instances.add(messageOrdinal, value, nameStart, nameEnd, valueStart, valueEnd);
+        addURL(url);
+        if (reflected) {
+            reflectedCount += 1;
+        }
     }
 
+    public synchronized void putJSONPart(JSONParamParser.Part part, ParamInstance parent) {
+        instances.addJSONPart(part, parent);
+    }
 
-    public void put(IParameter param, IHttpRequestResponse message, IRequestInfo requestInfo, String responseString,
-                    IExtensionHelpers helpers) {
-        ParamInstance pi = new ParamInstance(param, message);
-        paramInstances.add(pi);
-        addURL(requestInfo);
-
-        String value = param.getValue();
-        if(!uniqueValues.contains(value)) {
-            uniqueValues.add(value);
-            uniqueParamInstances.add(pi);
+    /**
+     * Fold the instances of another CorrelatedParam (with the same name, seen later in the history) into this one.
+     * Both are expected to be unanalyzed, as is the case when merging shards after the first pass.
+     * @param other The parameter collected from a later slice of the history.
+     */
+    public synchronized void merge(CorrelatedParam other) {
+        instances.addAll(other.instances);
+        uniqueURLs.addAll(other.uniqueURLs);
+        for (Map.Entry<ParamInstance.Format, Integer> entry : other.formatCounts.entrySet()) {
+            formatCounts.merge(entry.getKey(), entry.getValue(), Integer::sum);
+        }
+        reflectedCount += other.reflectedCount;
+        for (Map.Entry<String, IHttpRequestResponse> entry : other.seenParams.entrySet()) {
+            seenParams.putIfAbsent(entry.getKey(), entry.getValue());
         }
-        checkReflection(param, responseString, helpers);
     }
 
-    public void put(RestParamInstance param, IHttpRequestResponse message, IRequestInfo requestInfo, String responseString,
-                    IExtensionHelpers helpers) {
-        paramInstances.add(param);
-        addURL((requestInfo));
-        String value = param.getValue();
-        if(!uniqueValues.contains(value)) {
-            uniqueValues.add(value);
-            uniqueParamInstances.add(param);
+    /**
+     * Write this parameter, with all its instances and analysis, to a snapshot.
+     */
+    synchronized void write(ResultsSnapshot.Output out) throws IOException {
+        out.writeString(instances.getName());
+        out.writeByte(instances.getType());
+        instances.write(out);
+        out.writeVarInt(uniqueURLs.size());
+        for (String url : uniqueURLs) {
+            out.writeString(url);
+        }
+        out.writeVarInt(reflectedCount);
+        out.writeBoolean(isInteresting);
+        out.writeVarInt(seenParams.size());
+        for (Map.Entry<String, IHttpRequestResponse> entry : seenParams.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeMessage(entry.getValue());
         }
-        checkReflection(param, responseString, helpers);
+        out.writeVarInt(analyzedCount);
+        out.writeVarInt(uniqueValuesTaken);
+        out.writeVarInt(formatCounts.size());
+        for (Map.Entry<ParamInstance.Format, Integer> entry : formatCounts.entrySet()) {
+            out.writeByte(entry.getKey().ordinal());
+            out.writeVarInt(entry.getValue());
+        }
+        out.writeByte(bestFormat.ordinal());
+        out.writeVarInt(bestFormatPercent);
     }
 
-    public void put(JSONParamInstance param) {
-        paramInstances.add(param);
-        String value = param.getValue();
-        if(!uniqueValues.contains(value)) {
-            uniqueValues.add(value);
-            uniqueParamInstances.add(param);
+    /**
+     * Read a parameter written by write().
+     * @param results The results being read, which must already hold the parents of any JSON parts.
+     */
+    static CorrelatedParam read(ResultsSnapshot.Input in, CorrelationShard results) throws IOException {
+        String name = in.readString();
+        byte type = (byte) in.readByte();
+        CorrelatedParam param = new CorrelatedParam(name, type, in.getMessages());
+        param.instances = ParamInstanceStore.read(in, name, type, results);
+        for (int i = in.readVarInt(); i > 0; i--) {
+            param.uniqueURLs.add(in.readString());
+        }
+        param.reflectedCount = in.readVarInt();
+        param.isInteresting = in.readBoolean();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            String value = in.readString();
+            IHttpRequestResponse message = in.readMessage();
+            if (message != null) {
+                param.seenParams.put(value, message);
+            }
         }
+        param.analyzedCount = in.readVarInt();
+        param.uniqueValuesTaken = in.readVarInt();
+        ParamInstance.Format[] formats = ParamInstance.Format.values();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            ParamInstance.Format format = formats[in.readByte()];
+            param.formatCounts.put(format, in.readVarInt());
+        }
+        param.bestFormat = formats[in.readByte()];
+        param.bestFormatPercent = in.readVarInt();
+        return param;
     }
 
-    private void addURL(IRequestInfo requestInfo) {
-        String externalForm = requestInfo.getUrl().toExternalForm();
+    private void addURL(URL url) {
+        String externalForm = url.toExternalForm();
         int paramStart = externalForm.indexOf('?');
         if (paramStart == -1) {
             uniqueURLs.add(externalForm);
@@ -96,7 +158,7 @@ public class CorrelatedParam {
         }
     }
 
-    public void putSeenParam(String value, IHttpRequestResponse message) {
+    public synchronized void putSeenParam(String value, IHttpRequestResponse message) {
         seenParams.put(value, message);
     }
 
@@ -104,19 +166,30 @@ public class CorrelatedParam {
         return uniqueURLs;
     }
 
-    public Set<String> getUniqueValues() {
-        return uniqueValues;
+    /**
+     * @return The distinct raw values of this parameter, in first-seen order.
+     */
+    public synchronized List<String> getUniqueValues() {
+        List<String> values = new ArrayList<>(instances.uniqueCount());
+        for (int i = 0; i < instances.uniqueCount(); i++) {
+            values.add(instances.getValue(instances.uniqueInstance(i)));
+        }
+        return values;
     }
 
-    private void checkReflection(IParameter param, String responseString, IExtensionHelpers helpers) {
-        if(param.getValue().length()>2) {
-            String decodedValue = helpers.urlDecode(param.getValue());
-            if (responseString.contains(param.getValue())) {
-             reflectedCount += 1;
-            } else if (!decodedValue.equals(param.getValue()) && responseString.contains(decodedValue)) {
-                reflectedCount += 1;
+    /**
+     * @return True if the value (at least 3 characters long) appears in the response, as is or URL-decoded.
+     */
+    static boolean isReflected(String value, String responseString, IExtensionHelpers helpers) {
+        if(value.length()>2) {
+            String decodedValue = helpers.urlDecode(value);
+            if (responseString.contains(value)) {
+                return true;
+            } else if (!decodedValue.equals(value) && responseString.contains(decodedValue)) {
+                return true;
             }
         }
+        return false;
     }
 
     public int getReflectedCount() {
@@ -131,41 +204,85 @@ public class CorrelatedParam {
         isInteresting = s;
     }
 
-    public SortedSet<ParamInstance> getParamInstances(boolean withDuplicates) {
-        return withDuplicates? this.paramInstances : this.uniqueParamInstances;
+    /**
+     * A list view of the instances.  Entries are created on demand, so avoid holding on to the whole list.
+     * @param withDuplicates true for every instance, false for the first instance of each unique value.
+     * @return The instances, in the order they were seen.
+     */
+    public List<ParamInstance> getParamInstances(final boolean withDuplicates) {
+        return new AbstractList<ParamInstance>() {
+            @Override
+            public ParamInstance get(int i) {
+                return instances.view(withDuplicates ? i : instances.uniqueInstance(i));
+            }
+
+            @Override
+            public int size() {
+                return getInstanceCount(withDuplicates);
+            }
+        };
+    }
+
+    /**
+     * @param withDuplicates true to count every instance, false to count unique values.
+     * @return The number of instances.
+     */
+    public int getInstanceCount(boolean withDuplicates) {
+        return withDuplicates ? instances.size() : instances.uniqueCount();
+    }
+
+    /**
+     * A copy of the instances that is safe to use while live analysis may still be adding to this parameter.
+     * @param withDuplicates true for every instance, false for the first instance of each unique value.
+     * @return The instances at the time of the call.
+     */
+    public synchronized ParamInstance[] getParamInstanceArray(boolean withDuplicates) {
+        List<ParamInstance> list = getParamInstances(withDuplicates);
+        return list.toArray(new ParamInstance[list.size()]);
+    }
+
+    /**
+     * Returns the unique-value instances added since the last call, so follow-up processing (e.g. JSON extraction) only
+     * needs to look at new values.
+     * @return The newly seen unique-value instances.
+     */
+    public synchronized List<ParamInstance> takeNewUniqueInstances() {
+        List<ParamInstance> newInstances = new ArrayList<>(instances.uniqueCount() - uniqueValuesTaken);
+        for (; uniqueValuesTaken < instances.uniqueCount(); uniqueValuesTaken++) {
+            newInstances.add(instances.view(instances.uniqueInstance(uniqueValuesTaken)));
+        }
+        return newInstances;
     }
 
     public Map<String, IHttpRequestResponse> getSeenParams() {
         return seenParams;
     }
 
-    public ParamInstance getSample() {
-        return paramInstances.first();
+    public synchronized ParamInstance getSample() {
+        return instances.view(0);
     }
 
+    /**
+     * Render the analysis of an instance.  The text is not kept, as only the selected value is ever shown.
+     */
     public String getAnalysisText(ParamInstance pi, IBurpExtenderCallbacks callbacks) {
-        if(analysisText.containsKey(pi)) {
-            return analysisText.get(pi);
+        if (pi instanceof JSONParamInstance) {
+            String logPrefix = "This parameter was derived from a JSON object: "+ ((JSONParamInstance)pi).getParent().getName()+"\n";
+            return ParamAnalyzer.describe(pi, callbacks, logPrefix);
         } else {
-            String text = "";
-            if (pi instanceof JSONParamInstance) {
-                String logPrefix = "This parameter was derived from a JSON object: "+ ((JSONParamInstance)pi).getParent().getName()+"\n";
-                text = ParamAnalyzer.analyze(pi, callbacks, logPrefix);
-            } else {
-                text = ParamAnalyzer.analyze(pi, callbacks);
-            }
-
-            analysisText.put(pi, text);
-            return text;
+            return ParamAnalyzer.describe(pi, callbacks);
         }
     }
 
-    public void analyzeAll(IBurpExtenderCallbacks callbacks){
-        Map<ParamInstance.Format, Integer> formatCounts = new HashMap<>();
-
-        for (ParamInstance pi: paramInstances) {
-            getAnalysisText(pi, callbacks);
-            ParamInstance.Format format = pi.getFormat();
+    /**
+     * Analyze every instance added since the last call and update the best-fit format for this parameter.  Format
+     * counts are kept between calls so that live analysis only pays for the new instances.
+     * @param callbacks The standard burp callbacks object.
+     */
+    public synchronized void analyzeAll(IBurpExtenderCallbacks callbacks){
+        for (; analyzedCount < instances.size(); analyzedCount++) {
+            ParamInstance pi = instances.view(analyzedCount);
+            ParamInstance.Format format = ParamAnalyzer.analyze(pi, callbacks).getFormat();
             if (!format.equals(ParamInstance.Format.EMPTY)) {
                 int count = formatCounts.containsKey(format) ? formatCounts.get(format) : 0;
                 count += 1;
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * Holds the parameters and cookie statistics collected from a contiguous slice of the proxy history.  Each shard is
+ * filled by a single thread, so nothing in here is synchronized.  Shards are merged back together in history order so
+ * that the first-seen instance of each value is the same as it would be for a single sequential pass.
+ */
+class CorrelationShard {
+    private final IBurpExtenderCallbacks callbacks;
+    private final IExtensionHelpers helpers;
+    private final boolean ignoreEmpty;
+    private final Set<String> ignoreList;
+    private final MessageTable messages;
+    private final ValueIndex valueIndex = new ValueIndex();
+    private final OriginIndex originIndex;
+    private volatile DigestIndex digestIndex = null;
+    private final RouteTrie routeTrie = new RouteTrie();
+    private List<RoutedRequest> pendingRoutes = null;
+
+    Map<String, CorrelatedParam> urlParameters = new HashMap<>();
+    Map<String, CorrelatedParam> bodyParameters = new HashMap<>();
+    Map<String, CorrelatedParam> cookieParameters = new HashMap<>();
+    Map<String, CorrelatedParam> jsonParameters = new HashMap<>();
+    Map<String, CorrelatedParam> restParameters = new HashMap<>();
+    Map<String, CorrelatedParam> jsonPartParameters = new HashMap<>();
+    Set<IHttpRequestResponse> inScopeMessagesWithResponses = new LinkedHashSet<>();
+    Map<String, CookieStatistics> cookieStatistics = new TreeMap<>();
+
+    CorrelationShard(IBurpExtenderCallbacks callbacks, MessageTable messages, boolean ignoreEmpty,
+                     Set<String> ignoreList) {
+        this.callbacks = callbacks;
+        this.messages = messages;
+        this.originIndex = new OriginIndex(messages);
+        this.helpers = callbacks.getHelpers();
+        this.ignoreEmpty = ignoreEmpty;
+        this.ignoreList = ignoreList;
+    }
+
+    boolean isIgnoreEmpty() {
+        return ignoreEmpty;
+    }
+
+    Set<String> getIgnoreList() {
+        return ignoreList;
+    }
+
+    MessageTable getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return The index of every value in these results.  It is filled once the parameters have been analyzed, which
+     * is not done for the partial shards of a parallel first pass.
+     */
+    ValueIndex getValueIndex() {
+        return valueIndex;
+    }
+
+    /**
+     * @return Where the cookies and response values in these results were first issued.
+     */
+    OriginIndex getOriginIndex() {
+        return originIndex;
+    }
+
+    /**
+     * @return Precomputed digests of the value index, or null if they have not been (fully) built.
+     */
+    DigestIndex getDigestIndex() {
+        return digestIndex;
+    }
+
+    void setDigestIndex(DigestIndex digestIndex) {
+        this.digestIndex = digestIndex;
+    }
+
+    /**
+     * @return Every parameter, including JSON parts.
+     */
+    List<CorrelatedParam> getAllParameters() {
+        List<CorrelatedParam> params = new ArrayList<>();
+        for (Map<String, CorrelatedParam> paramMap : Arrays.asList(urlParameters, bodyParameters, cookieParameters,
+                jsonParameters, restParameters, jsonPartParameters)) {
+            params.addAll(paramMap.values());
+        }
+        return params;
+    }
+
+    /**
+     * @return The URL paths of the in-scope requests in these results.
+     */
+    RouteTrie getRouteTrie() {
+        return routeTrie;
+    }
+
+    /**
+     * Hold REST path parameters back until resolveRoutes() is called, so that the variable segments are inferred from
+     * every path in the shard rather than from the paths seen so far.  Used for full analysis; without it each path is
+     * resolved as soon as it is added, as live analysis needs.
+     */
+    void deferRoutes() {
+        if (pendingRoutes == null) {
+            pendingRoutes = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Infer the route templates and add the variable segments of every held-back path as REST parameters.  Paths
+     * added after this are resolved straight away.
+     */
+    void resolveRoutes() {
+        if (pendingRoutes == null) {
+            return;
+        }
+        routeTrie.infer();
+        for (RoutedRequest route : pendingRoutes) {
+            addRestParameters(route, null);
+        }
+        pendingRoutes = null;
+    }
+
+    /**
+     * Analyze and categorize the parameters of a single message.
+     * @param messageOrdinal The position of the message in the MessageTable.
+     */
+    void processMessage(int messageOrdinal) {
+        processMessage(messageOrdinal, null);
+    }
+
+    /**
+     * Analyze and categorize the parameters of a single message.
+     * @param messageOrdinal The position of the message in the MessageTable.
+     * @param touched If not null, receives every parameter that was created or added to by this message.
+     */
+    void processMessage(int messageOrdinal, Collection<CorrelatedParam> touched) {
+        IHttpRequestResponse message = messages.get(messageOrdinal);
+        //  Analyze response for cookies
+        byte[] response = message.getResponse();
+        if (response != null) {
+            SetCookieScanner cookie = new SetCookieScanner(response);
+            while (cookie.next()) {
+                CorrelatorEngine.processCookie(cookie, messageOrdinal, cookieStatistics);
+                String value = cookie.getValue();
+                if (value != null) {
+                    originIndex.addCookie(cookie.getName(), value, messageOrdinal);
+                }
+            }
+        }
+        IRequestInfo requestInfo = helpers.analyzeRequest(message);
+        if (callbacks.isInScope(requestInfo.getUrl())) {
+            byte[] responseBytes = response;
+            String responseString = "";
+            if (responseBytes != null) {
+                responseString = helpers.bytesToString(responseBytes);
+                inScopeMessagesWithResponses.add(message);
+            }
+
+            List<IParameter> params = requestInfo.getParameters();
+            for (IParameter param : params) {
+                if ((!ignoreEmpty || param.getValue().length() > 0) && !ignoreList.contains(param.getName())) {
+                    Map<String, CorrelatedParam> paramMap = getParamMap(param.getType());
+
+                    if (paramMap != null) {
+                        CorrelatedParam cp = paramMap.get(param.getName());
+                        if (cp == null) {
+                            cp = new CorrelatedParam(param.getName(), param.getType(), messages);
+                            paramMap.put(param.getName(), cp);
+                        }
+                        cp.put(param, messageOrdinal, requestInfo, responseString, helpers);
+                        if (touched != null) {
+                            touched.add(cp);
+                        }
+                    }
+                }
+            }
+
+            // look at path for REST variables
+            RestPathScanner path = new RestPathScanner(message.getRequest());
+            if (path.next()) {
+                RoutedRequest route = new RoutedRequest(messageOrdinal, requestInfo.getUrl());
+                route.add(path.getName(), path.getNameStart(), path.getNameEnd(), false);
+                do {
+                    String value = path.getValue();
+                    route.add(value, path.getValueStart(), path.getValueEnd(),
+                            CorrelatedParam.isReflected(value, responseString, helpers));
+                } while (path.next());
+                routeTrie.add(route.segments);
+                if (pendingRoutes != null) {
+                    pendingRoutes.add(route);
+                } else {
+                    routeTrie.infer(route.segments);
+                    addRestParameters(route, touched);
+                }
+            }
+        }
+    }
+
+    /**
+     * Break any new JSON or JWT values of an analyzed parameter out into their own JSON Part parameters.
+     * @param cp A parameter whose pending instances have already been analyzed.
+     * @param touched If not null, receives every JSON Part parameter that was created or added to.
+     */
+    void processJSON(CorrelatedParam cp, Collection<CorrelatedParam> touched) {
+        for (ParamInstance param : cp.takeNewUniqueInstances()) {
+            if (param.getFormat() == ParamInstance.Format.JSON || param.getFormat() == ParamInstance.Format.JWT) {
+                for (JSONParamParser.Part part : JSONParamParser.parse(param.getDecodedValue())) {
+                    CorrelatedParam jsonPart = jsonPartParameters.get(part.getName());
+                    if (jsonPart == null) {
+                        jsonPart = new CorrelatedParam(part.getName(), JSONParamInstance.TYPE, messages);
+                        jsonPartParameters.put(part.getName(), jsonPart);
+                    }
+                    jsonPart.putJSONPart(part, param);
+                    if (touched != null) {
+                        touched.add(jsonPart);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the variable segments of a path as REST parameters, each named after the segment before it (or, if that one
+     * is variable too, after its parameter name in braces).
+     */
+    private void addRestParameters(RoutedRequest route, Collection<CorrelatedParam> touched) {
+        boolean[] variable = routeTrie.match(route.segments);
+        String[] names = new String[variable.length];
+        for (int k = 1; k < variable.length; k++) {
+            names[k] = variable[k - 1] ? "{" + (names[k - 1] == null ? "" : names[k - 1]) + "}" :
+                    route.segments.get(k - 1);
+            if (variable[k]) {
+                CorrelatedParam cp = restParameters.get(names[k]);
+                if (cp == null) {
+                    cp = new CorrelatedParam(names[k], RestParamInstance.TYPE, messages);
+                    restParameters.put(names[k], cp);
+                }
+                cp.putRest(route.segments.get(k), route.messageOrdinal, route.offsets[2 * k - 2],
+                        route.offsets[2 * k - 1], route.offsets[2 * k], route.offsets[2 * k + 1], route.url,
+                        route.reflected.get(k));
+                if (touched != null) {
+                    touched.add(cp);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The parameter of the given type (including REST and JSON Part) and name, or null if there isn't one.
+     */
+    CorrelatedParam getParameter(byte type, String name) {
+        Map<String, CorrelatedParam> paramMap;
+        if (type == RestParamInstance.TYPE) {
+            paramMap = restParameters;
+        } else if (type == JSONParamInstance.TYPE) {
+            paramMap = jsonPartParameters;
+        } else {
+            paramMap = getParamMap(type);
+        }
+        return paramMap == null ? null : paramMap.get(name);
+    }
+
+    /**
+     * Write everything except the value and digest indexes (which are rebuilt from the parameters) to a snapshot.
+     * JSON parts are written last, as they refer to the instances of other parameters.
+     */
+    void write(ResultsSnapshot.Output out) throws IOException {
+        for (Map<String, CorrelatedParam> paramMap : Arrays.asList(urlParameters, bodyParameters, cookieParameters,
+                jsonParameters, restParameters, jsonPartParameters)) {
+            out.writeVarInt(paramMap.size());
+            for (CorrelatedParam param : paramMap.values()) {
+                param.write(out);
+            }
+        }
+        out.writeVarInt(inScopeMessagesWithResponses.size());
+        for (IHttpRequestResponse message : inScopeMessagesWithResponses) {
+            out.writeMessage(message);
+        }
+        out.writeVarInt(cookieStatistics.size());
+        for (CookieStatistics cs : cookieStatistics.values()) {
+            cs.write(out);
+        }
+        originIndex.write(out);
+        routeTrie.write(out);
+    }
+
+    /**
+     * Fill these (empty) results from a snapshot written by write().
+     */
+    void read(ResultsSnapshot.Input in) throws IOException {
+        for (Map<String, CorrelatedParam> paramMap : Arrays.asList(urlParameters, bodyParameters, cookieParameters,
+                jsonParameters, restParameters, jsonPartParameters)) {
+            for (int i = in.readVarInt(); i > 0; i--) {
+                CorrelatedParam param = CorrelatedParam.read(in, this);
+                paramMap.put(param.instances.getName(), param);
+            }
+        }
+        for (int i = in.readVarInt(); i > 0; i--) {
+            IHttpRequestResponse message = in.readMessage();
+            if (message != null) {
+                inScopeMessagesWithResponses.add(message);
+            }
+        }
+        for (int i = in.readVarInt(); i > 0; i--) {
+            CookieStatistics cs = CookieStatistics.read(in);
+            cookieStatistics.put(cs.getName(), cs);
+        }
+        originIndex.read(in);
+        routeTrie.read(in);
+    }
+
+    private Map<String, CorrelatedParam> getParamMap(byte type) {
+        switch (type) {
+            case IParameter.PARAM_URL:
+                return urlParameters;
+            case IParameter.PARAM_BODY:
+                return bodyParameters;
+            case IParameter.PARAM_COOKIE:
+                return cookieParameters;
+            case IParameter.PARAM_JSON:
+                return jsonParameters;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Fold the results of a later shard into this one.  The other shard must cover messages that come after the ones
+     * in this shard, otherwise the first-seen ordering of unique values will differ from a sequential pass.
+     * @param other The shard to merge into this one.
+     */
+    void merge(CorrelationShard other) {
+        mergeParamMap(urlParameters, other.urlParameters);
+        mergeParamMap(bodyParameters, other.bodyParameters);
+        mergeParamMap(cookieParameters, other.cookieParameters);
+        mergeParamMap(jsonParameters, other.jsonParameters);
+        mergeParamMap(restParameters, other.restParameters);
+        mergeParamMap(jsonPartParameters, other.jsonPartParameters);
+        inScopeMessagesWithResponses.addAll(other.inScopeMessagesWithResponses);
+        originIndex.merge(other.originIndex);
+        routeTrie.merge(other.routeTrie);
+        if (pendingRoutes != null && other.pendingRoutes != null) {
+            pendingRoutes.addAll(other.pendingRoutes);
+        }
+        for (CookieStatistics cs : other.cookieStatistics.values()) {
+            CookieStatistics existing = cookieStatistics.get(cs.getName());
+            if (existing == null) {
+                cookieStatistics.put(cs.getName(), cs);
+            } else {
+                existing.merge(cs);
+            }
+        }
+    }
+
+    private static void mergeParamMap(Map<String, CorrelatedParam> target, Map<String, CorrelatedParam> source) {
+        for (Map.Entry<String, CorrelatedParam> entry : source.entrySet()) {
+            CorrelatedParam existing = target.get(entry.getKey());
+            if (existing == null) {
+                target.put(entry.getKey(), entry.getValue());
+            } else {
+                existing.merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The path segments of one request, with their offsets in the request, kept until the route can be resolved.
+     */
+    private static class RoutedRequest {
+        final int messageOrdinal;
+        final URL url;
+        final List<String> segments = new ArrayList<>();
+        final BitSet reflected = new BitSet();
+        int[] offsets = new int[8];  // start and end of each segment
+
+        RoutedRequest(int messageOrdinal, URL url) {
+            this.messageOrdinal = messageOrdinal;
+            this.url = url;
+        }
+
+        void add(String segment, int start, int end, boolean isReflected) {
+            int k = segments.size();
+            if (2 * k + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[2 * k] = start;
+            offsets[2 * k + 1] = end;
+            reflected.set(k, isReflected);
+            segments.add(segment);
+        }
+    }
+}
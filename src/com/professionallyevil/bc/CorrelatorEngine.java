@@ -19,10 +19,14 @@ package com.professionallyevil.bc;
 import burp.*;
 
 import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.net.URL;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class manages the actual analysis of parameters in web traffic.  This is handled on a background thread so that
@@ -39,9 +43,19 @@ public class CorrelatorEngine extends SwingWorker<String, Object> {
     Map<String, CorrelatedParam> cookieParameters = new HashMap<>();
     Map<String, CorrelatedParam> jsonParameters = new HashMap<>();
     Map<String, CorrelatedParam> restParameters = new HashMap<>();
-    Map<String, CorrelatedParam> jsonPartParameters = new HashMap<>();
     Set<IHttpRequestResponse> inScopeMessagesWithResponses = new HashSet<>();
     Map<String, CookieStatistics> cookieStatistics = new TreeMap<>();
+    boolean parallel = true;
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    CorrelationShard results;
+    List<ParamSummary> summaries = new ArrayList<>();
+    File snapshot = null;
+    int snapshotMessageCount = 0;
+    int historySize = 0;
+
+    // Below this many messages the overhead of splitting the history isn't worth it.
+    private static final int PARALLEL_THRESHOLD = 2000;
+    private static final int MIN_CHUNK_SIZE = 250;
 
     public CorrelatorEngine(IBurpExtenderCallbacks callbacks, WorkerStatusListener l, boolean ignoreEmpty, String ignoreThese) {
         this.callbacks = callbacks;
@@ -56,102 +70,145 @@ public class CorrelatorEngine extends SwingWorker<String, Object> {
     @Override
     protected String doInBackground() throws Exception {
         publish("Starting...");
-        IExtensionHelpers helpers = callbacks.getHelpers();
         publish(0);
         IHttpRequestResponse[] messages = callbacks.getProxyHistory();
-        if (messages.length == 0) {
+        historySize = messages.length;
+        if (snapshot != null) {
+            loadSnapshot(messages);
+        } else if (messages.length == 0) {
+            results = new CorrelationShard(callbacks, new MessageTable(), ignoreEmpty, ignoreList);
             publish(100);
+            return "";
         } else {
-            firstPass(helpers, messages);
+            firstPass(messages);
             parameterFormatAnalysis();
-            //secondPass(helpers);  This is just too darn slow as it is now... need to rethink it.
+            reflectionPass(callbacks.getHelpers());
         }
+        publish("Indexing values...");
+        results.getValueIndex().update(results.getAllParameters());
+        List<CorrelatedParam> tableParameters = new ArrayList<>();
+        for (Map<String, CorrelatedParam> paramMap : Arrays.asList(urlParameters, bodyParameters,
+                cookieParameters, jsonParameters, restParameters)) {
+            tableParameters.addAll(paramMap.values());
+        }
+        summaries = ParametersTableModel.summarize(tableParameters);
         return "";
     }
 
     /**
      * Analyze and categorize each of the parameters in scope.
-     * @param helpers The standard burp ExtensionHelpers object.
      * @param messages The set of request messages to be processed.
      */
-    private void firstPass(IExtensionHelpers helpers, IHttpRequestResponse[] messages) {
+    private void firstPass(IHttpRequestResponse[] messages) {
         publish("Examining parameters...");
-        for (int i = 0; i < messages.length; i++) {
-            publish(100 * i / messages.length);
-            messages[i].getHttpService();
-            //  Analyze response for cookies
-            if(messages[i].getResponse() != null) {
-                IResponseInfo responseInfo = helpers.analyzeResponse(messages[i].getResponse());
-                List<String> headers = responseInfo.getHeaders();
-                for (String header: headers){
-                    if (startsWithIgnoreCase(header, "set-cookie:")) {
-                        processCookieHeader(header);
-                    }
-                }
+        MessageTable messageTable = new MessageTable(messages);
+        if (parallel && messages.length >= PARALLEL_THRESHOLD && parallelism > 1) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                int chunkSize = Math.max(MIN_CHUNK_SIZE, messages.length / (pool.getParallelism() * 4));
+                results = pool.invoke(new ShardTask(messageTable, 0, messages.length, chunkSize,
+                        new AtomicInteger()));
+            } finally {
+                pool.shutdown();
             }
-            IRequestInfo requestInfo = helpers.analyzeRequest(messages[i]);
-            if (callbacks.isInScope(requestInfo.getUrl())) {
-                byte[] responseBytes = messages[i].getResponse();
-                String responseString = "";
-                if (responseBytes != null) {
-                    responseString = helpers.bytesToString(responseBytes);
-                    inScopeMessagesWithResponses.add(messages[i]);
-                }
+        } else {
+            results = new CorrelationShard(callbacks, messageTable, ignoreEmpty, ignoreList);
+            results.deferRoutes();
+            for (int i = 0; i < messages.length; i++) {
+                publish(100 * i / messages.length);
+                results.processMessage(i);
+            }
+        }
+        results.resolveRoutes();
+        useResults();
+    }
 
-                List<IParameter> params = requestInfo.getParameters();
-                for (IParameter param : params) {
-                    if((!ignoreEmpty || param.getValue().length() > 0) && !ignoreList.contains(param.getName())) {
-                        int type = param.getType();
-                        Map<String, CorrelatedParam> paramMap;
-                        switch (type) {
-                            case IParameter.PARAM_URL:
-                                paramMap = urlParameters;
-                                break;
-                            case IParameter.PARAM_BODY:
-                                paramMap = bodyParameters;
-                                break;
-                            case IParameter.PARAM_COOKIE:
-                                paramMap = cookieParameters;
-                                break;
-                            case IParameter.PARAM_JSON:
-                                paramMap = jsonParameters;
-                                break;
-                            default:
-                                paramMap = null;
-                                // nothing
-                        }
+    private void useResults() {
+        urlParameters = results.urlParameters;
+        bodyParameters = results.bodyParameters;
+        cookieParameters = results.cookieParameters;
+        jsonParameters = results.jsonParameters;
+        restParameters = results.restParameters;
+        inScopeMessagesWithResponses = results.inScopeMessagesWithResponses;
+        cookieStatistics = results.cookieStatistics;
+    }
 
-                        if (paramMap != null) {
-                            if (messages[i] == null) {
-                                callbacks.printOutput("Warning... adding null message!");
-                            }
-
-                            if (paramMap.containsKey(param.getName())) {
-                                paramMap.get(param.getName()).put(param, messages[i], requestInfo, responseString,
-                                        helpers);
-                            } else {
-                                paramMap.put(param.getName(), new CorrelatedParam(param, messages[i], requestInfo,
-                                        responseString, helpers));
-                            }
-                        }
-                    }
+    /**
+     * Load the results of an earlier analysis from a snapshot, then analyze the messages added to the history since it
+     * was taken the way live analysis would (so they are matched against the routes already inferred, and are not
+     * part of the reflection pass).
+     * @param messages The proxy history, which must start with the messages the snapshot was taken from.  Messages
+     *                 that were analyzed live when it was taken are skipped.
+     */
+    private void loadSnapshot(IHttpRequestResponse[] messages) throws IOException {
+        publish("Loading snapshot...");
+        ResultsSnapshot.Loaded loaded = ResultsSnapshot.load(snapshot, callbacks, messages);
+        results = loaded.getResults();
+        snapshotMessageCount = loaded.getMessageCount();
+        int newMessages = messages.length - snapshotMessageCount;
+        if (newMessages > 0) {
+            publish("Analyzing " + newMessages + " messages added since the snapshot...");
+            Set<CorrelatedParam> touched = new LinkedHashSet<>();
+            int processed = 0;
+            for (int i = 0; i < messages.length; i++) {
+                if (!loaded.covers(i)) {
+                    publish(100 * processed++ / newMessages);
+                    results.processMessage(i, touched);
                 }
+            }
+            Set<CorrelatedParam> jsonParts = new LinkedHashSet<>();
+            for (CorrelatedParam cp : touched) {
+                cp.analyzeAll(callbacks);
+                results.processJSON(cp, jsonParts);
+            }
+            for (CorrelatedParam cp : jsonParts) {
+                cp.analyzeAll(callbacks);
+            }
+        }
+        useResults();
+        jsonParameters = new HashMap<>(results.jsonParameters);
+        jsonParameters.putAll(results.jsonPartParameters);
+    }
 
-                // look at path for REST variables
-                URL url = requestInfo.getUrl();
-                String[] pathElements = url.getPath().substring(1).split("/");
-
-                for (int p=0; p < pathElements.length -1; p++){
-                    RestParamInstance param = new RestParamInstance(pathElements[p], pathElements[p+1], messages[i]);
+    /**
+     * Splits a range of the proxy history in half until it is small enough to process directly into its own shard,
+     * then merges the two halves back together (left first, to keep history order).
+     */
+    private class ShardTask extends RecursiveTask<CorrelationShard> {
+        private static final long serialVersionUID = 1L;
+
+        private final MessageTable messages;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final AtomicInteger processed;
+
+        ShardTask(MessageTable messages, int from, int to, int chunkSize, AtomicInteger processed) {
+            this.messages = messages;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.processed = processed;
+        }
 
-                    if (restParameters.containsKey(param.getName())) {
-                        restParameters.get(param.getName()).put(param, messages[i], requestInfo, responseString,
-                                helpers);
-                    } else {
-                        restParameters.put(param.getName(), new CorrelatedParam(param, messages[i], requestInfo,
-                                responseString, helpers));
-                    }
+        @Override
+        protected CorrelationShard compute() {
+            if (to - from <= chunkSize) {
+                CorrelationShard shard = new CorrelationShard(callbacks, messages, ignoreEmpty, ignoreList);
+                shard.deferRoutes();
+                for (int i = from; i < to; i++) {
+                    shard.processMessage(i);
                 }
+                publish(100 * processed.addAndGet(to - from) / messages.size());
+                return shard;
+            } else {
+                int middle = (from + to) >>> 1;
+                ShardTask left = new ShardTask(messages, from, middle, chunkSize, processed);
+                ShardTask right = new ShardTask(messages, middle, to, chunkSize, processed);
+                right.fork();
+                CorrelationShard result = left.compute();
+                result.merge(right.join());
+                return result;
             }
         }
     }
@@ -163,82 +220,111 @@ public class CorrelatorEngine extends SwingWorker<String, Object> {
         publish(0);
         for(CorrelatedParam cp: urlParameters.values()){
             cp.analyzeAll(callbacks);
-            processJSON(cp);
+            results.processJSON(cp, null);
             i+=1;
             publish(100*i/total);
         }
         for(CorrelatedParam cp: bodyParameters.values()){
             cp.analyzeAll(callbacks);
-            processJSON(cp);
+            results.processJSON(cp, null);
             i+=1;
             publish(100*i/total);
         }
         for(CorrelatedParam cp: cookieParameters.values()){
             cp.analyzeAll(callbacks);
-            processJSON(cp);
+            results.processJSON(cp, null);
             i+=1;
             publish(100*i/total);
         }
         for(CorrelatedParam cp: jsonParameters.values()){
             cp.analyzeAll(callbacks);
-            processJSON(cp);
+            results.processJSON(cp, null);
             i+=1;
             publish(100*i/total);
         }
         for(CorrelatedParam cp: restParameters.values()){
             cp.analyzeAll(callbacks);
-            processJSON(cp);
+            results.processJSON(cp, null);
             i+=1;
             publish(100*i/total);
         }
 
-        for(CorrelatedParam cp: jsonPartParameters.values()) {
+        for(CorrelatedParam cp: results.jsonPartParameters.values()) {
             publish("Analyzing JSON params...");
             cp.analyzeAll(callbacks);
         }
 
-        jsonParameters.putAll(jsonPartParameters);
+        // keep the shard's own map untouched so live analysis can keep adding to it
+        jsonParameters = new HashMap<>(results.jsonParameters);
+        jsonParameters.putAll(results.jsonPartParameters);
     }
 
-    private void processJSON(CorrelatedParam cp) {
-        for(ParamInstance param: cp.uniqueParamInstances) {
-            if(param.getFormat() == ParamInstance.Format.JSON || param.getFormat() == ParamInstance.Format.JWT) {
-                List<JSONParamInstance> jsonParams = JSONParamParser.parseObjectString(param.decodedValue, param);
-                for(JSONParamInstance jsonParam: jsonParams) {
-                    if (jsonPartParameters.containsKey(jsonParam.getName())) {
-                        jsonPartParameters.get(jsonParam.getName()).put(jsonParam);
-                    } else {
-                        jsonPartParameters.put(jsonParam.getName(), new CorrelatedParam(jsonParam));
+    /**
+     * Look for the values of every parameter in every in-scope response.  All unique values (raw and URL-decoded) are
+     * compiled into a single Aho-Corasick automaton so each response only needs to be scanned once, no matter how many
+     * parameters and values there are.
+     * @param helpers The standard burp ExtensionHelpers object.
+     */
+    private void reflectionPass(IExtensionHelpers helpers) {
+        publish("Building reflection dictionary...");
+        publish(0);
+        MultiPatternMatcher matcher = new MultiPatternMatcher();
+        List<List<CorrelatedParam>> owners = new ArrayList<>();
+        List<Map<String, CorrelatedParam>> allStats = Arrays.asList(urlParameters, bodyParameters, cookieParameters,
+                restParameters);
+        for (Map<String, CorrelatedParam> paramMap : allStats) {
+            for (CorrelatedParam param : paramMap.values()) {
+                for (String value : param.getUniqueValues()) {
+                    addReflectionPattern(matcher, owners, value, param);
+                    String decodedValue = helpers.urlDecode(value);
+                    if (!decodedValue.equals(value)) {
+                        addReflectionPattern(matcher, owners, decodedValue, param);
                     }
                 }
             }
         }
-    }
+        if (matcher.getPatternCount() == 0) {
+            return;
+        }
+        matcher.build();
 
-    private void secondPass(IExtensionHelpers helpers) {
-        publish("Second Pass...");
-        publish(0);
-        Set<Map<String, CorrelatedParam>> allStats = new HashSet<>();
-        allStats.add(urlParameters);
-        allStats.add(bodyParameters);
-        allStats.add(cookieParameters);
-        allStats.add(restParameters);
+        publish("Looking for reflected values...");
+        final OriginIndex originIndex = results.getOriginIndex();
+        final int[] lastSeenIn = new int[matcher.getPatternCount()];
+        Arrays.fill(lastSeenIn, -1);
         int x = 0;
-        for (IHttpRequestResponse message : inScopeMessagesWithResponses) {
+        for (final IHttpRequestResponse message : inScopeMessagesWithResponses) {
             publish(100 * x / inScopeMessagesWithResponses.size());
-            x += 1;
+            final int messageNumber = x++;
             String responseString = helpers.bytesToString(message.getResponse());
-            for (Map<String, CorrelatedParam> paramMap : allStats) {
-                for (String paramName : paramMap.keySet()) {
-                    publish("Analyzing " + paramName + "...");
-                    for (CorrelatedParam param : paramMap.values()) {
-                        for (String value: param.getUniqueValues()) {
-                            if (responseString.contains(value)) {
-                                param.putSeenParam(value, message);
-                            }
+            matcher.scan(responseString, new MultiPatternMatcher.MatchHandler() {
+                @Override
+                public void match(int patternId, int end) {
+                    if (lastSeenIn[patternId] != messageNumber) {
+                        lastSeenIn[patternId] = messageNumber;
+                        String value = matcher.getPattern(patternId);
+                        originIndex.addValueOrigin(value, message);
+                        for (CorrelatedParam param : owners.get(patternId)) {
+                            param.putSeenParam(value, message);
                         }
                     }
                 }
+            });
+        }
+    }
+
+    private static void addReflectionPattern(MultiPatternMatcher matcher, List<List<CorrelatedParam>> owners,
+                                             String value, CorrelatedParam param) {
+        // Same cut-off as CorrelatedParam.checkReflection: very short values match nearly everything.
+        if (value.length() > 2) {
+            int id = matcher.add(value);
+            if (id == owners.size()) {
+                owners.add(new ArrayList<CorrelatedParam>(1));
+            }
+            List<CorrelatedParam> paramOwners = owners.get(id);
+            // a param's values are added together, so a duplicate can only be the last owner added
+            if (paramOwners.isEmpty() || paramOwners.get(paramOwners.size() - 1) != param) {
+                paramOwners.add(param);
             }
         }
     }
@@ -287,57 +373,19 @@ public class CorrelatorEngine extends SwingWorker<String, Object> {
         return str.regionMatches(true, 0, prefix, 0, prefix.length());
     }
 
-    public void processCookieHeader(String header) {
-        String[] parts = header.substring("set-cookie:".length()).split(";");
-        boolean httpOnly = false;
-        boolean secure = false;
-        String expires = null;
-        String maxAge = null;
-        String domain = null;
-        String path = null;
-        String name = "";
-        int count = 0;
-        for (String part: parts) {
-            String[] pair = part.split("=");
-            String key = pair[0].trim().toUpperCase();
-            switch(key) {
-                case "HTTPONLY":
-                    httpOnly = true;
-                    break;
-                case "SECURE":
-                    secure = true;
-                    break;
-                case "EXPIRES":
-                    expires = pair[1].trim();
-                    break;
-                case "MAX-AGE":
-                    maxAge = pair[1].trim();
-                    break;
-                case "DOMAIN":
-                    domain = pair[1].trim();
-                    break;
-                case "PATH":
-                    path = pair[1].trim();
-                    break;
-                default:
-                    // pass
-            }
-            if(count==0) {
-                name = pair[0].trim();
-            }
-            count+=1;
-        }
-        if(!name.isEmpty()) {
-            CookieStatistics cs;
-            if (cookieStatistics.get(name) != null) {
-                cs = cookieStatistics.get(name);
-            } else {
-                cs = new CookieStatistics(name);
-                cookieStatistics.put(name, cs);
-            }
-            cs.addCookieValues(httpOnly, secure, expires, maxAge, domain, path);
+    /**
+     * Count the cookie a SetCookieScanner is positioned on.
+     * @param messageOrdinal The position in the MessageTable of the response being scanned.
+     */
+    static void processCookie(SetCookieScanner cookie, int messageOrdinal,
+                              Map<String, CookieStatistics> cookieStatistics) {
+        String name = cookie.getName();
+        CookieStatistics cs = cookieStatistics.get(name);
+        if (cs == null) {
+            cs = new CookieStatistics(name);
+            cookieStatistics.put(name, cs);
         }
-
+        cs.addCookieValues(cookie, messageOrdinal);
     }
 
     public Map<String, CookieStatistics> getCookieStatistics() {
@@ -359,4 +407,63 @@ public class CorrelatorEngine extends SwingWorker<String, Object> {
     public Map<String, CorrelatedParam> getJSONParameters() { return jsonParameters; }
 
     public Map<String, CorrelatedParam> getRestParameters() {return restParameters; }
+
+    /**
+     * @return The rows of the parameters table, summarized once the analysis has finished.
+     */
+    List<ParamSummary> getSummaries() {
+        return summaries;
+    }
+
+    /**
+     * The collected parameters in the form used for further (live) processing.
+     * @return The merged shard from the last run.
+     */
+    CorrelationShard getResults() {
+        return results;
+    }
+
+    /**
+     * Start from a snapshot saved by ResultsSnapshot instead of analyzing the whole proxy history.  Only messages added
+     * to the history since the snapshot was taken are analyzed.  The ignore settings saved with it are used instead
+     * of the ones given to the constructor.
+     * @param snapshot The snapshot file.
+     */
+    public void setSnapshot(File snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    File getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return The number of messages covered by the snapshot that was loaded.
+     */
+    int getSnapshotMessageCount() {
+        return snapshotMessageCount;
+    }
+
+    /**
+     * @return The length of the proxy history when the analysis read it; later messages are not in the results.
+     */
+    int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Enable or disable splitting large proxy histories across multiple threads.  Small histories are always processed
+     * sequentially.
+     * @param parallel true to allow the parallel first pass.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param parallelism The number of threads to use for the first pass.  Defaults to the number of processors.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
 }
@@ -49,7 +49,10 @@ public class DeepAnalysisTab implements WorkerStatusListener {
     IBurpExtenderCallbacks callbacks;
     private String title;
 
-    DeepAnalysisTab(ParamInstance pi, Paramalyzer parent, IBurpExtenderCallbacks callbacks) {
+    /**
+     * @param thoroughHashSearch true to also search transformed and combined values if the target is a hash.
+     */
+    DeepAnalysisTab(ParamInstance pi, Paramalyzer parent, IBurpExtenderCallbacks callbacks, boolean thoroughHashSearch) {
         this.parent = parent;
         this.callbacks = callbacks;
         titleLabel.setText("Deep Analysis: [" + pi.getTypeName() + "] " + pi.getName() + " = " + pi.getDecodedValue() + "\n (Inferred Format: " + pi.getFormat() + ")");
@@ -64,7 +67,8 @@ public class DeepAnalysisTab implements WorkerStatusListener {
         listMatches.setModel(listModel);
 
         textDetails.setText("Processing...");
-        analyzer = new DeepAnalyzer(pi, ((ParametersTableModel) parent.parametersTable.getModel()).getEntries(), callbacks, this);
+        analyzer = new DeepAnalyzer(pi, parent.getValueIndex(), parent.getDigestIndex(), callbacks, this);
+        analyzer.setThoroughHashSearch(thoroughHashSearch);
         listMatches.addListSelectionListener(new ListSelectionListener() {
             @Override
             public void valueChanged(ListSelectionEvent e) {
@@ -24,7 +24,6 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URL;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 
@@ -34,113 +33,135 @@ import java.util.concurrent.ExecutionException;
 public class DeepAnalyzer extends SwingWorker<String, Object> {
 
     private ParamInstance pi;
-    private List<CorrelatedParam> correlatedParams;
+    private ValueIndex valueIndex;
+    private DigestIndex digestIndex;
     private IBurpExtenderCallbacks callbacks;
     private WorkerStatusListener l;
+    private boolean thoroughHashSearch = false;
 
     private Map<ParamInstance,String> resultsMap = new HashMap<>();
+    private Set<String> foundPreimages = new HashSet<>();
 
-    DeepAnalyzer(ParamInstance pi, List<CorrelatedParam> correlatedParams, IBurpExtenderCallbacks callbacks, WorkerStatusListener listener) {
+    /**
+     * @param pi The target instance.
+     * @param valueIndex The index of all values from the current analysis.  It is only read.
+     * @param digestIndex Precomputed digests of (some of) those values, or null to hash them all here.
+     */
+    DeepAnalyzer(ParamInstance pi, ValueIndex valueIndex, DigestIndex digestIndex, IBurpExtenderCallbacks callbacks,
+                 WorkerStatusListener listener) {
         this.pi = pi;
-        this.correlatedParams = correlatedParams;
+        this.valueIndex = valueIndex;
+        this.digestIndex = digestIndex;
         this.callbacks = callbacks;
         this.l = listener;
     }
 
+    /**
+     * @param thorough true to also try transformed and combined values when the target is a hash (see HashSearch).
+     *                 This uses every core and can take much longer.
+     */
+    void setThoroughHashSearch(boolean thorough) {
+        this.thoroughHashSearch = thorough;
+    }
+
     @Override
     protected String doInBackground()  {
         publish(0);
-        Map<String,Set<ParamInstance>> valueMap = generateValueMap(correlatedParams);
-
-        switch (pi.getFormat()) {
-            case MD5:
-                processHash("MD5", valueMap);
-                break;
-            case SHA1:
-                processHash("SHA-1", valueMap);
-                break;
-            case SHA256:
-                processHash("SHA-256", valueMap);
-                break;
-            case NUMERIC:
-                processNumeric(valueMap);
-                break;
-            default:
+        ParamAnalyzer.analyze(pi, callbacks);  // normally a cache hit; makes sure the format and decoded value are set
+
+        DigestIndex.Algorithm algorithm = DigestIndex.Algorithm.forFormat(pi.getFormat());
+        if (algorithm != null) {
+            processHash(algorithm);
+            if (thoroughHashSearch) {
+                processHashSearch(algorithm);
+            }
+        } else if (pi.getFormat() == ParamInstance.Format.NUMERIC) {
+            processNumeric();
         }
 
-        processMatches(valueMap);
+        processMatches();
 
         publish("Done.");
         return "";
     }
 
+    private void processHash(DigestIndex.Algorithm algorithm) {
+        String value = pi.getDecodedValue();
+        byte[] valueBytes = ParamAnalyzer.hexStringToByteArray(value);
 
-    // It may be worth considering caching this in the future, but for now tests show it is quite fast for processing 10,000 values.
-    private Map<String,Set<ParamInstance>> generateValueMap(List<CorrelatedParam> correlatedParams){
-        publish("Generating value map...");
-        Map<String,Set<ParamInstance>> valueMap = new HashMap<>();
-        int count = 1;
-        for (CorrelatedParam correlatedParam: correlatedParams) {
-            Set<ParamInstance> paramInstances = correlatedParam.getParamInstances(false);
-            for (ParamInstance paramInstance: paramInstances) {
-                String value = paramInstance.getValue();
-                if (valueMap.containsKey(value)) {
-                    valueMap.get(value).add(paramInstance);
-                }else{
-                    Set<ParamInstance> set = new HashSet<>();
-                    set.add(paramInstance);
-                    valueMap.put(value, set);
+        // values already in the digest index are a lookup; anything added since is hashed here
+        int covered = 0;
+        if (digestIndex != null) {
+            covered = digestIndex.getCoveredCount();
+            for (DigestIndex.Match match : digestIndex.lookup(algorithm, valueBytes)) {
+                if (match.ordinal < covered) {
+                    foundPreimages.add(match.getPreimage());
+                    addOrAppendResults(match.value, "The " + algorithm.getName() + " of this parameter value" +
+                            match.variant.getDescription() + " (" + match.getPreimage() + ") resulted in the target value.");
                 }
+            }
+        }
 
-                if (!paramInstance.getDecodedValue().equals(value)){
-                    value = paramInstance.getDecodedValue();
-                    if (valueMap.containsKey(value)) {
-                        valueMap.get(value).add(paramInstance);
-                    }else{
-                        Set<ParamInstance> set = new HashSet<>();
-                        set.add(paramInstance);
-                        valueMap.put(value, set);
-                    }
+        // try the same variants the digest index hashes, skipping any that don't change the value
+        MessageDigest md = algorithm.newDigest();
+        int total = valueIndex.size();
+        for (int i = covered; i < total; i++) {
+            String compareValue = valueIndex.getValue(i);
+            String lastHashed = null;
+            for (DigestIndex.Variant variant : DigestIndex.Variant.values()) {
+                String preimage = variant.apply(compareValue);
+                if (variant != DigestIndex.Variant.AS_IS && (preimage.equals(compareValue) || preimage.equals(lastHashed))) {
+                    continue;
                 }
+                lastHashed = preimage;
+                if (MessageDigest.isEqual(md.digest(preimage.getBytes()), valueBytes)) {
+                    foundPreimages.add(preimage);
+                    addOrAppendResults(compareValue, "The " + algorithm.getName() + " of this parameter value" +
+                            variant.getDescription() + " (" + preimage + ") resulted in the target value.");
+                }
+            }
+            if (((i - covered + 1) & 0xFFF) == 0) {
+                publish(100 * (i - covered + 1) / (total - covered));
             }
-            publish((count++)/correlatedParams.size());
         }
-        publish("Value map complete. "+valueMap.size()+" unique values mapped.");
-        return valueMap;
     }
 
-    private void processHash(String algorithm, Map<String,Set<ParamInstance>> valueMap) {
-        String value = pi.getDecodedValue();
-        byte[] valueBytes = ParamAnalyzer.hexStringToByteArray(value);
+    private void processHashSearch(DigestIndex.Algorithm algorithm) {
+        publish("Trying transformed and combined values...");
+        publish(0);
+        HashSearch search = new HashSearch(algorithm, ParamAnalyzer.hexStringToByteArray(pi.getDecodedValue()),
+                valueIndex, Runtime.getRuntime().availableProcessors());
+        List<HashSearch.Hit> hits = search.run(pi.getDecodedValue(), new WorkerStatusListener() {
+            @Override
+            public void setStatus(String statusText) {
+                publish(statusText);
+            }
 
-        try {
-            MessageDigest md = MessageDigest.getInstance(algorithm);
-
-            int count = 1;
-            for (String compareValue: valueMap.keySet()) {
-                md.reset();
-                md.update(compareValue.getBytes());
-                byte[] digest = md.digest();
-                if (MessageDigest.isEqual(digest, valueBytes)) {
-                    addOrAppendResults(valueMap, compareValue, "The " + algorithm + " of this parameter value ("+compareValue+") resulted in" +
-                            " the target value.");
+            @Override
+            public void setProgress(int percentDone) {
+                publish(percentDone);
+            }
+
+            @Override
+            public void done(Object result) {
+            }
+        });
+        for (HashSearch.Hit hit : hits) {
+            if (foundPreimages.add(hit.preimage)) {
+                for (String value : hit.values) {
+                    addOrAppendResults(value, hit.description);
                 }
-                publish((count++)/correlatedParams.size());
             }
-        } catch (NoSuchAlgorithmException e) {
-            callbacks.printError(e.getMessage());
         }
     }
 
-    private void processNumeric(Map<String, Set<ParamInstance>> valueMap) {
+    private void processNumeric() {
         try {
             long longValue = Long.parseLong(pi.getDecodedValue());
             if(longValue > 0) {
                 String base62Encoded = Base62.encode(longValue);
-                for (String compareValue : valueMap.keySet()) {
-                    if(compareValue.equals(base62Encoded)) {
-                        addOrAppendResults(valueMap, compareValue, "This parameter is the same as the target value base62 encoded.");
-                    }
+                if (valueIndex.contains(base62Encoded)) {
+                    addOrAppendResults(base62Encoded, "This parameter is the same as the target value base62 encoded.");
                 }
             }
         } catch (NumberFormatException e) {
@@ -148,7 +169,7 @@ public class DeepAnalyzer extends SwingWorker<String, Object> {
         }
     }
 
-    private void processMatches(Map<String, Set<ParamInstance>> valueMap) {
+    private void processMatches() {
         Map<String,String> matches = new HashMap<>();
         matches.put(pi.getValue(), "The value of this parameter matches the target value.");
         if(!pi.getDecodedValue().equals(pi.getValue())) {
@@ -163,16 +184,14 @@ public class DeepAnalyzer extends SwingWorker<String, Object> {
         }
 
         for(String match: matches.keySet()) {
-            for (String compareValue: valueMap.keySet()) {
-                if (compareValue.equals(match)) {
-                    addOrAppendResults(valueMap, compareValue, matches.get(match));
-                }
+            if (valueIndex.contains(match)) {
+                addOrAppendResults(match, matches.get(match));
             }
         }
     }
 
-    private void addOrAppendResults(Map<String, Set<ParamInstance>> valueMap, String value, String resultText) {
-        for(ParamInstance paramInstance: valueMap.get(value)) {
+    private void addOrAppendResults(String value, String resultText) {
+        for(ParamInstance paramInstance: valueIndex.getInstances(value)) {
             if(!paramInstance.equals(pi)) {
                 addOrAppendResult(paramInstance, resultText);
             }
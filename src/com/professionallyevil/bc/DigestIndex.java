@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Precomputed MD5, SHA-1, SHA-224, SHA-256 and SHA-512 digests of every value in a ValueIndex (as is, lower-cased and
+ * upper-cased), so that finding the parameter that hashes to a given value is a table lookup instead of hashing every
+ * value again.  Each algorithm has an open addressing table keyed by the first 64 bits of the digest; a hit is
+ * confirmed by hashing the candidate.
+ */
+class DigestIndex {
+
+    enum Algorithm {
+        MD5("MD5", ParamInstance.Format.MD5),
+        SHA1("SHA-1", ParamInstance.Format.SHA1),
+        SHA224("SHA-224", ParamInstance.Format.SHA224),
+        SHA256("SHA-256", ParamInstance.Format.SHA256),
+        SHA512("SHA-512", ParamInstance.Format.SHA512);
+
+        private final String name;
+        private final ParamInstance.Format format;
+
+        Algorithm(String name, ParamInstance.Format format) {
+            this.name = name;
+            this.format = format;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        MessageDigest newDigest() {
+            try {
+                return MessageDigest.getInstance(name);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);  // all of these are required of every JRE
+            }
+        }
+
+        /**
+         * @return The algorithm for a hash format, or null if the format isn't a hash.
+         */
+        static Algorithm forFormat(ParamInstance.Format format) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.format == format) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * How a value was transformed before it was hashed.
+     */
+    enum Variant {
+        AS_IS(""),
+        LOWER_CASE(", lower-cased"),
+        UPPER_CASE(", upper-cased");
+
+        private final String description;
+
+        Variant(String description) {
+            this.description = description;
+        }
+
+        String apply(String value) {
+            switch (this) {
+                case LOWER_CASE:
+                    return value.toLowerCase(Locale.ROOT);
+                case UPPER_CASE:
+                    return value.toUpperCase(Locale.ROOT);
+                default:
+                    return value;
+            }
+        }
+
+        /**
+         * @return Text to put after "this parameter value" to say how it was changed, e.g. ", lower-cased".
+         */
+        String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * A value whose digest matched.
+     */
+    static class Match {
+        final int ordinal;
+        final String value;
+        final Variant variant;
+
+        Match(int ordinal, String value, Variant variant) {
+            this.ordinal = ordinal;
+            this.value = value;
+            this.variant = variant;
+        }
+
+        /**
+         * @return The string that was actually hashed.
+         */
+        String getPreimage() {
+            return variant.apply(value);
+        }
+    }
+
+    private static final Variant[] VARIANTS = Variant.values();
+    private static final Algorithm[] ALGORITHMS = Algorithm.values();
+    private static final int CHUNK_SIZE = 1024;
+
+    private final ValueIndex valueIndex;
+    private final PrefixTable[] tables = new PrefixTable[ALGORITHMS.length];
+    private final Object updateLock = new Object();
+    private volatile int coveredCount = 0;
+
+    /**
+     * @param valueIndex The values to hash.  Call update() to hash them.
+     */
+    DigestIndex(ValueIndex valueIndex) {
+        this.valueIndex = valueIndex;
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new PrefixTable();
+        }
+    }
+
+    /**
+     * Hash the values that were added to the ValueIndex since the last call.  Lookups can continue while this runs.
+     * @param listener If not null, receives progress (0-100) for the values hashed by this call.
+     */
+    void update(WorkerStatusListener listener) {
+        synchronized (updateLock) {
+            MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+            for (int a = 0; a < ALGORITHMS.length; a++) {
+                digests[a] = ALGORITHMS[a].newDigest();
+            }
+            int from = coveredCount;
+            int to = valueIndex.size();
+            long[][] prefixes = new long[ALGORITHMS.length][CHUNK_SIZE * VARIANTS.length];
+            int[] entries = new int[CHUNK_SIZE * VARIANTS.length];
+            for (int start = from; start < to; start += CHUNK_SIZE) {
+                int end = Math.min(to, start + CHUNK_SIZE);
+                int count = 0;
+                for (int ordinal = start; ordinal < end; ordinal++) {
+                    String value = valueIndex.getValue(ordinal);
+                    String lastHashed = null;
+                    for (Variant variant : VARIANTS) {
+                        String preimage = variant.apply(value);
+                        if (variant != Variant.AS_IS && (preimage.equals(value) || preimage.equals(lastHashed))) {
+                            continue;
+                        }
+                        lastHashed = preimage;
+                        byte[] bytes = preimage.getBytes();
+                        for (int a = 0; a < ALGORITHMS.length; a++) {
+                            prefixes[a][count] = prefix(digests[a].digest(bytes));
+                        }
+                        entries[count++] = ordinal * VARIANTS.length + variant.ordinal();
+                    }
+                }
+                synchronized (this) {
+                    for (int a = 0; a < ALGORITHMS.length; a++) {
+                        for (int i = 0; i < count; i++) {
+                            tables[a].put(prefixes[a][i], entries[i]);
+                        }
+                    }
+                    coveredCount = end;
+                }
+                if (listener != null) {
+                    listener.setProgress(100 * (end - from) / (to - from));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How many values of the ValueIndex (by ordinal, from 0) are covered by lookups.
+     */
+    int getCoveredCount() {
+        return coveredCount;
+    }
+
+    /**
+     * Find every covered value that hashes to the given digest.
+     * @param algorithm The hash algorithm.
+     * @param digest The digest, e.g. a hex hash parameter decoded to bytes.
+     * @return The matching values; empty if there are none.
+     */
+    List<Match> lookup(Algorithm algorithm, byte[] digest) {
+        if (digest.length < 8) {
+            return Collections.emptyList();
+        }
+        int[] candidates;
+        synchronized (this) {
+            candidates = tables[algorithm.ordinal()].get(prefix(digest));
+        }
+        List<Match> matches = new ArrayList<>(1);
+        if (candidates.length > 0) {
+            MessageDigest md = algorithm.newDigest();
+            for (int entry : candidates) {
+                int ordinal = entry / VARIANTS.length;
+                Match match = new Match(ordinal, valueIndex.getValue(ordinal), VARIANTS[entry % VARIANTS.length]);
+                if (MessageDigest.isEqual(md.digest(match.getPreimage().getBytes()), digest)) {
+                    matches.add(match);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Look up every hash formatted value of the given parameters at once, e.g. to report all known preimages after an
+     * analysis instead of deep analyzing one hash at a time.
+     * @param params Analyzed parameters.
+     * @return Each unique hash instance that has at least one match, with its matches, in parameter order.
+     */
+    Map<ParamInstance, List<Match>> findPreimages(Collection<CorrelatedParam> params) {
+        Map<ParamInstance, List<Match>> found = new LinkedHashMap<>();
+        List<ParamInstance> hashes = new ArrayList<>();
+        List<Algorithm> algorithms = new ArrayList<>();
+        List<String> digests = new ArrayList<>();
+        for (CorrelatedParam param : params) {
+            // live analysis may be adding to (and re-analyzing) this parameter, so copy its hashes first
+            synchronized (param) {
+                for (ParamInstance instance : param.getParamInstances(false)) {
+                    Algorithm algorithm = Algorithm.forFormat(instance.getFormat());
+                    if (algorithm != null) {
+                        hashes.add(instance);
+                        algorithms.add(algorithm);
+                        digests.add(instance.getDecodedValue());
+                    }
+                }
+            }
+            for (int i = 0; i < hashes.size(); i++) {
+                List<Match> matches = lookup(algorithms.get(i), ParamAnalyzer.hexStringToByteArray(digests.get(i)));
+                if (!matches.isEmpty()) {
+                    found.put(hashes.get(i), matches);
+                }
+            }
+            hashes.clear();
+            algorithms.clear();
+            digests.clear();
+        }
+        return found;
+    }
+
+    private static long prefix(byte[] digest) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (digest[i] & 0xFF);
+        }
+        return prefix;
+    }
+
+    /**
+     * A multimap from a 64-bit digest prefix to int entries, using linear probing over primitive arrays.
+     */
+    private static class PrefixTable {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];  // entry + 1; 0 marks an empty slot
+        private int size = 0;
+
+        void put(long key, int entry) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (values[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = entry + 1;
+            size++;
+        }
+
+        int[] get(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            int[] found = new int[0];
+            while (values[slot] != 0) {
+                if (keys[slot] == key) {
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = values[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return found;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) {
+                    put(oldKeys[i], oldValues[i] - 1);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            // digests are already uniformly distributed; just fold the bits
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Builds the DigestIndex for a set of results in the background, then reports every hash parameter whose preimage is
+ * among the other values.  The index is only attached to the results (and so used by deep analysis) once it is done.
+ */
+class DigestIndexer extends SwingWorker<DigestIndex, Object> {
+    private final CorrelationShard results;
+    private final IBurpExtenderCallbacks callbacks;
+    private final WorkerStatusListener statusListener;
+    private Map<ParamInstance, List<DigestIndex.Match>> preimages;
+
+    DigestIndexer(CorrelationShard results, IBurpExtenderCallbacks callbacks, WorkerStatusListener listener) {
+        this.results = results;
+        this.callbacks = callbacks;
+        this.statusListener = listener;
+    }
+
+    @Override
+    protected DigestIndex doInBackground() throws Exception {
+        publish("Indexing digests of " + results.getValueIndex().size() + " values...");
+        publish(0);
+        DigestIndex digestIndex = new DigestIndex(results.getValueIndex());
+        digestIndex.update(new WorkerStatusListener() {
+            @Override
+            public void setStatus(String statusText) {
+                publish(statusText);
+            }
+
+            @Override
+            public void setProgress(int percentDone) {
+                publish(percentDone);
+            }
+
+            @Override
+            public void done(Object result) {
+            }
+        });
+        publish("Looking up hash values...");
+        preimages = digestIndex.findPreimages(results.getAllParameters());
+        return digestIndex;
+    }
+
+    @Override
+    protected void process(List<Object> chunks) {
+        String lastMessage = null;
+        int lastPercent = -1;
+
+        for (Object chunk : chunks) {
+            if (chunk instanceof String) {
+                lastMessage = (String) chunk;
+            } else if (chunk instanceof Integer) {
+                lastPercent = (Integer) chunk;
+            }
+        }
+
+        if (lastMessage != null) {
+            statusListener.setStatus(lastMessage);
+        }
+        if (lastPercent > -1) {
+            statusListener.setProgress(lastPercent);
+        }
+    }
+
+    @Override
+    protected void done() {
+        try {
+            DigestIndex digestIndex = get();
+            results.setDigestIndex(digestIndex);
+            for (Map.Entry<ParamInstance, List<DigestIndex.Match>> entry : preimages.entrySet()) {
+                ParamInstance hash = entry.getKey();
+                for (DigestIndex.Match match : entry.getValue()) {
+                    callbacks.printOutput(hash.getName() + " (" + hash.getTypeName() + ") = " + hash.getDecodedValue() +
+                            " is the " + hash.getFormat().getTitle() + " of " + match.getPreimage());
+                }
+            }
+            statusListener.setProgress(100);
+            statusListener.setStatus("Digest index complete: " + preimages.size() + " hash values with a known preimage.");
+        } catch (InterruptedException | ExecutionException e) {
+            callbacks.printError("Digest indexing failed: " + e.getMessage());
+        }
+    }
+}
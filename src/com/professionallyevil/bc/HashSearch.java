@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thorough search for what a hash was computed from.  Besides every value as is, it tries transformed values (case,
+ * whitespace, URL decoding, other character sets) and every pair of values seen in the same requests as the hash,
+ * joined with common separators, which finds tokens like md5(user + ":" + salt).  The work is split over a fork-join
+ * pool, with a MessageDigest per thread.
+ */
+class HashSearch {
+
+    /**
+     * How a single value is changed before hashing.
+     */
+    enum Transform {
+        LOWER_CASE(", lower-cased"),
+        UPPER_CASE(", upper-cased"),
+        TRIMMED(", trimmed"),
+        URL_DECODED(", URL-decoded"),
+        UTF8(" as UTF-8"),
+        LATIN1(" as ISO-8859-1");
+
+        private final String description;
+
+        Transform(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return The transformed string, or null if this transform does not change the value.
+         */
+        String apply(String value) {
+            String result;
+            switch (this) {
+                case LOWER_CASE:
+                    result = value.toLowerCase(Locale.ROOT);
+                    break;
+                case UPPER_CASE:
+                    result = value.toUpperCase(Locale.ROOT);
+                    break;
+                case TRIMMED:
+                    result = value.trim();
+                    break;
+                case URL_DECODED:
+                    try {
+                        result = URLDecoder.decode(value, "UTF-8");
+                    } catch (IllegalArgumentException | UnsupportedEncodingException e) {
+                        result = value;
+                    }
+                    break;
+                default:
+                    result = value;  // same string, different bytes
+            }
+            return result.equals(value) && getCharset() == null ? null : result;
+        }
+
+        /**
+         * @return The charset to encode with, or null for the platform default (as the basic search uses).
+         */
+        Charset getCharset() {
+            switch (this) {
+                case UTF8:
+                    return StandardCharsets.UTF_8.equals(Charset.defaultCharset()) ? null : StandardCharsets.UTF_8;
+                case LATIN1:
+                    return StandardCharsets.ISO_8859_1.equals(Charset.defaultCharset()) ? null : StandardCharsets.ISO_8859_1;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * A preimage that produced the target hash.
+     */
+    static class Hit {
+        final String preimage;
+        final String description;
+        final List<String> values;   // the indexed values it was made from
+
+        Hit(String preimage, String description, String... values) {
+            this.preimage = preimage;
+            this.description = description;
+            this.values = Arrays.asList(values);
+        }
+    }
+
+    static final String[] SEPARATORS = {"", ":", "|", ";", ",", ".", "-", "_", " ", "&", "=", "/"};
+    static final int MAX_CONTEXT_MESSAGES = 50;
+    static final int MAX_CONTEXT_VALUES = 250;
+    private static final int LEAF_SIZE = 256;
+
+    private final DigestIndex.Algorithm algorithm;
+    private final byte[] target;
+    private final ValueIndex valueIndex;
+    private final int parallelism;
+    private final ThreadLocal<MessageDigest> digests;
+    private final Queue<Hit> hits = new ConcurrentLinkedQueue<>();
+    private final AtomicLong done = new AtomicLong();
+    private long total = 1;
+    private WorkerStatusListener listener;
+
+    /**
+     * @param algorithm The hash algorithm.
+     * @param target The hash to find a preimage for.
+     * @param valueIndex The values to try.
+     * @param parallelism How many threads to use.
+     */
+    HashSearch(final DigestIndex.Algorithm algorithm, byte[] target, ValueIndex valueIndex, int parallelism) {
+        this.algorithm = algorithm;
+        this.target = target;
+        this.valueIndex = valueIndex;
+        this.parallelism = parallelism;
+        this.digests = new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue() {
+                return algorithm.newDigest();
+            }
+        };
+    }
+
+    /**
+     * Run the search.  This can take a while, so call it from a background thread.
+     * @param hashValue The value of the hash parameter, used to find the requests it was sent in.
+     * @param listener Receives progress (0-100); may be null.
+     * @return Every preimage found, apart from values that hash to the target as they are (the basic search finds those).
+     */
+    List<Hit> run(String hashValue, WorkerStatusListener listener) {
+        this.listener = listener;
+        int valueCount = valueIndex.size();
+        final List<String> context = contextValues(hashValue);
+        final int pairCount = context.size() * context.size();
+        total = Math.max(1, (long) valueCount + pairCount);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Search(0, valueCount, new Work() {
+                @Override
+                public void search(int ordinal) {
+                    searchTransforms(valueIndex.getValue(ordinal));
+                }
+            }));
+            pool.invoke(new Search(0, pairCount, new Work() {
+                @Override
+                public void search(int pair) {
+                    int first = pair / context.size();
+                    int second = pair % context.size();
+                    if (first != second) {
+                        searchPair(context.get(first), context.get(second));
+                    }
+                }
+            }));
+        } finally {
+            pool.shutdown();
+        }
+        return new ArrayList<>(hits);
+    }
+
+    private void searchTransforms(String value) {
+        MessageDigest md = digests.get();
+        Set<String> tried = null;
+        for (Transform transform : Transform.values()) {
+            String transformed = transform.apply(value);
+            if (transformed == null) {
+                continue;
+            }
+            Charset charset = transform.getCharset();
+            if (charset == null) {
+                // several transforms often give the same string; hashing it once is enough
+                if (tried == null) {
+                    tried = new HashSet<>();
+                }
+                if (!tried.add(transformed)) {
+                    continue;
+                }
+            }
+            byte[] bytes = charset == null ? transformed.getBytes() : transformed.getBytes(charset);
+            if (MessageDigest.isEqual(md.digest(bytes), target)) {
+                hits.add(new Hit(transformed, "The " + algorithm.getName() + " of this parameter value" +
+                        transform.description + " (" + transformed + ") resulted in the target value.", value));
+            }
+        }
+    }
+
+    private void searchPair(String first, String second) {
+        MessageDigest md = digests.get();
+        for (String separator : SEPARATORS) {
+            String preimage = first + separator + second;
+            if (MessageDigest.isEqual(md.digest(preimage.getBytes()), target)) {
+                hits.add(new Hit(preimage, "The " + algorithm.getName() + " of " + first + separator + second +
+                        " (this parameter value combined with another value from the same requests as the target)" +
+                        " resulted in the target value.", first, second));
+            }
+        }
+    }
+
+    /**
+     * @return The distinct values (raw and decoded) of every parameter in the requests that the hash was sent in.
+     */
+    private List<String> contextValues(String hashValue) {
+        List<CorrelatedParam> params = valueIndex.getParameters();
+        Set<Integer> messages = new LinkedHashSet<>();
+        for (CorrelatedParam param : params) {
+            // live analysis may be adding to this parameter
+            synchronized (param) {
+                for (ParamInstance instance : param.getParamInstances(true)) {
+                    if (messages.size() >= MAX_CONTEXT_MESSAGES) {
+                        break;
+                    }
+                    if (hashValue.equals(instance.getValue()) || hashValue.equals(instance.getDecodedValue())) {
+                        messages.add(instance.getMessageOrdinal());
+                    }
+                }
+            }
+        }
+
+        Set<String> values = new LinkedHashSet<>();
+        for (CorrelatedParam param : params) {
+            synchronized (param) {
+                for (ParamInstance instance : param.getParamInstances(true)) {
+                    if (values.size() >= MAX_CONTEXT_VALUES) {
+                        break;
+                    }
+                    if (messages.contains(instance.getMessageOrdinal())) {
+                        String value = instance.getValue();
+                        if (!hashValue.equals(value) && !hashValue.equals(instance.getDecodedValue())) {
+                            values.add(value);
+                            values.add(instance.getDecodedValue());
+                        }
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(values);
+    }
+
+    private void progress(int count) {
+        long doneSoFar = done.addAndGet(count);
+        if (listener != null) {
+            listener.setProgress((int) (100 * doneSoFar / total));
+        }
+    }
+
+    private interface Work {
+        void search(int item);
+    }
+
+    /**
+     * Splits a range of work items in half until it is small enough to do directly.
+     */
+    private class Search extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Work work;
+
+        Search(int from, int to, Work work) {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    work.search(i);
+                }
+                progress(to - from);
+            } else {
+                int middle = (from + to) >>> 1;
+                Search right = new Search(middle, to, work);
+                right.fork();
+                new Search(from, middle, work).compute();
+                right.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+
+import javax.swing.table.DefaultTableModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Runs the parameter correlation on saved proxy history without Burp, e.g. on a server overnight:
+ * <pre>
+ * java -cp paramalyzer-all.jar com.professionallyevil.bc.HeadlessRunner [options] history.xml [more.har ...]
+ * </pre>
+ * The parameters and cookie statistics tables are written to parameters.csv (semicolon-separated) and cookies.csv in
+ * the output directory, and the inferred REST routes to routes.csv.  With --hashes, hash parameters whose preimage is another value
+ * in the history are listed in hashes.csv, and with --export every parameter instance is written out as well (see
+ * ResultsExporter).  With --snapshot the results are saved, and the next run only analyzes messages added since.
+ */
+public class HeadlessRunner {
+
+    private static final String USAGE = "Usage: HeadlessRunner [options] <history.xml|history.har>...\n" +
+            "Analyzes Burp XML exports or HAR files (optionally .gz) without Burp.\n" +
+            "  --out <dir>        Directory to write parameters.csv, cookies.csv and routes.csv to (default: .)\n" +
+            "  --include <regex>  Only analyze URLs matching this (repeatable; default: everything)\n" +
+            "  --exclude <regex>  Skip URLs matching this (repeatable)\n" +
+            "  --ignore <name>    Parameter name to ignore (repeatable)\n" +
+            "  --ignore-empty     Ignore empty parameter values\n" +
+            "  --threads <n>      Threads for the first pass (default: number of processors)\n" +
+            "  --hashes           Also write hashes.csv: every hash value whose preimage is another value\n" +
+            "  --export <file>    Also export every parameter instance as CSV, or JSON Lines for a .jsonl file\n" +
+            "                     (add .gz to compress)\n" +
+            "  --snapshot <file>  Start from this snapshot if it exists and matches the history, analyzing only\n" +
+            "                     the messages added since; then save the results to it\n" +
+            "URLs are matched in the form https://host:443/path?query";
+
+    private File outputDir = new File(".");
+    private final List<File> inputs = new ArrayList<>();
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final StringBuilder ignoreList = new StringBuilder();
+    private boolean ignoreEmpty = false;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean hashes = false;
+    private File exportFile = null;
+    private File snapshotFile = null;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        HeadlessRunner runner = new HeadlessRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        try {
+            runner.run();
+            System.exit(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--out":
+                    outputDir = new File(value(args, ++i, arg));
+                    break;
+                case "--include":
+                    includes.add(pattern(value(args, ++i, arg)));
+                    break;
+                case "--exclude":
+                    excludes.add(pattern(value(args, ++i, arg)));
+                    break;
+                case "--ignore":
+                    ignoreList.append(value(args, ++i, arg)).append('\n');
+                    break;
+                case "--ignore-empty":
+                    ignoreEmpty = true;
+                    break;
+                case "--threads":
+                    try {
+                        threads = Integer.parseInt(value(args, ++i, arg));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--threads must be a number");
+                    }
+                    break;
+                case "--hashes":
+                    hashes = true;
+                    break;
+                case "--export":
+                    exportFile = new File(value(args, ++i, arg));
+                    break;
+                case "--snapshot":
+                    snapshotFile = new File(value(args, ++i, arg));
+                    break;
+                case "-h":
+                case "--help":
+                    throw new IllegalArgumentException("");
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                    }
+                    inputs.add(new File(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No history files given.");
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value.");
+        }
+        return args[i];
+    }
+
+    private static Pattern pattern(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regex: " + e.getMessage());
+        }
+    }
+
+    void run() throws Exception {
+        List<IHttpRequestResponse> history = new ArrayList<>();
+        for (File input : inputs) {
+            long start = System.currentTimeMillis();
+            List<IHttpRequestResponse> loaded = ProxyHistoryLoader.load(input);
+            history.addAll(loaded);
+            System.out.println("Loaded " + loaded.size() + " messages from " + input + " in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        }
+
+        OfflineCallbacks callbacks = new OfflineCallbacks(history.toArray(new IHttpRequestResponse[0]), System.out,
+                System.err);
+        for (Pattern include : includes) {
+            callbacks.includeInScope(include);
+        }
+        for (Pattern exclude : excludes) {
+            callbacks.excludeFromScope(exclude);
+        }
+
+        WorkerStatusListener statusListener = new WorkerStatusListener() {
+            String lastStatus = null;
+
+            @Override
+            public void setStatus(String statusText) {
+                if (!statusText.equals(lastStatus)) {
+                    lastStatus = statusText;
+                    System.out.println(statusText);
+                }
+            }
+
+            @Override
+            public void setProgress(int percentDone) {
+            }
+
+            @Override
+            public void done(Object result) {
+            }
+        };
+        CorrelatorEngine engine = new CorrelatorEngine(callbacks, statusListener, ignoreEmpty, ignoreList.toString());
+        engine.setParallelism(threads);
+        if (snapshotFile != null && snapshotFile.exists()) {
+            engine.setSnapshot(snapshotFile);
+        }
+
+        long start = System.currentTimeMillis();
+        // run on this thread; publish()ed status still arrives via the (headless) event queue
+        try {
+            engine.doInBackground();
+        } catch (IOException e) {
+            if (engine.getSnapshot() == null) {
+                throw e;
+            }
+            System.out.println("Not using " + snapshotFile + ": " + e.getMessage());
+            engine = new CorrelatorEngine(callbacks, statusListener, ignoreEmpty, ignoreList.toString());
+            engine.setParallelism(threads);
+            engine.doInBackground();
+        }
+        if (engine.getSnapshot() != null) {
+            System.out.println("Loaded " + engine.getSnapshotMessageCount() + " messages from " + snapshotFile +
+                    " and analyzed " + (history.size() - engine.getSnapshotMessageCount()) + " newer messages");
+        }
+        System.out.println("Analysis complete in " + (System.currentTimeMillis() - start) + "ms");
+        System.out.println(ParamAnalyzer.getCache());
+
+        ParametersTableModel paramsTableModel = new ParametersTableModel();
+        paramsTableModel.addParameters(engine.getUrlParameters());
+        paramsTableModel.addParameters(engine.getBodyParameters());
+        paramsTableModel.addParameters(engine.getCookieParameters());
+        paramsTableModel.addParameters(engine.getJSONParameters());
+        paramsTableModel.addParameters(engine.getRestParameters());
+        CookieStatisticsTableModel cookieStatisticsTableModel = new CookieStatisticsTableModel();
+        cookieStatisticsTableModel.setCookieStatistics(engine.getCookieStatistics(), callbacks);
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+        TableExporter.export(paramsTableModel, new File(outputDir, "parameters.csv"), ';');
+        TableExporter.export(cookieStatisticsTableModel, new File(outputDir, "cookies.csv"), ',');
+        DefaultTableModel routesModel = new DefaultTableModel(new Object[]{"Route", "Requests"}, 0);
+        for (Map.Entry<String, Integer> route : engine.getResults().getRouteTrie().getRoutes().entrySet()) {
+            routesModel.addRow(new Object[]{route.getKey(), route.getValue()});
+        }
+        TableExporter.export(routesModel, new File(outputDir, "routes.csv"), ',');
+        System.out.println("Wrote " + paramsTableModel.getRowCount() + " parameters, " +
+                cookieStatisticsTableModel.getRowCount() + " cookies and " + routesModel.getRowCount() + " routes to " +
+                outputDir);
+
+        if (hashes) {
+            writeHashes(engine.getResults(), new File(outputDir, "hashes.csv"));
+        }
+        if (exportFile != null) {
+            start = System.currentTimeMillis();
+            ResultsExporter exporter = new ResultsExporter(exportFile, paramsTableModel.getSummaries(),
+                    cookieStatisticsTableModel, callbacks, statusListener);
+            long records = exporter.doInBackground();
+            System.out.println("Exported " + records + " records to " + exporter.getFileNames() + " in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        }
+        if (snapshotFile != null) {
+            start = System.currentTimeMillis();
+            ResultsSnapshot.save(engine.getResults(), snapshotFile);
+            System.out.println("Saved a snapshot of " + history.size() + " messages to " + snapshotFile + " (" +
+                    snapshotFile.length() / 1024 + "KB) in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static void writeHashes(CorrelationShard results, File file) throws IOException {
+        long start = System.currentTimeMillis();
+        DigestIndex digestIndex = new DigestIndex(results.getValueIndex());
+        digestIndex.update(null);
+        Map<ParamInstance, List<DigestIndex.Match>> preimages = digestIndex.findPreimages(results.getAllParameters());
+
+        DefaultTableModel model = new DefaultTableModel(new Object[]{"Name", "Type", "Hash", "Algorithm", "Preimage",
+                "Preimage Parameters"}, 0);
+        for (Map.Entry<ParamInstance, List<DigestIndex.Match>> entry : preimages.entrySet()) {
+            ParamInstance hash = entry.getKey();
+            for (DigestIndex.Match match : entry.getValue()) {
+                Set<String> names = new TreeSet<>();
+                for (ParamInstance source : results.getValueIndex().getInstances(match.value)) {
+                    names.add(source.getName() + " (" + source.getTypeName() + ")");
+                }
+                model.addRow(new Object[]{hash.getName(), hash.getTypeName(), hash.getDecodedValue(),
+                        hash.getFormat().getTitle(), match.getPreimage(), String.join(", ", names)});
+            }
+        }
+        TableExporter.export(model, file, ';');
+        System.out.println("Hashed " + digestIndex.getCoveredCount() + " values in " +
+                (System.currentTimeMillis() - start) + "ms; wrote " + model.getRowCount() + " hash matches to " + file);
+    }
+}
@@ -16,65 +16,24 @@
 
 package com.professionallyevil.bc;
 
-import burp.IHttpRequestResponse;
-
+/**
+ * An instance of a value found inside a JSON object (or JWT body) that was itself the value of another parameter.
+ */
 public class JSONParamInstance extends ParamInstance {
 
-    private String paramName;
-    private String paramValue;
-    private ParamInstance parent;
     static final byte TYPE = 64;
 
-    public JSONParamInstance(String name, String value, ParamInstance parent) {
-        super(null, parent.getMessage());
-        this.paramName = name;
-        String[] parts = value.split("\n\r");
-        this.paramValue = String.join(" ", parts);
-        this.parent = parent;
-    }
-
-    @Override
-    public byte getType() {
-        return TYPE;
+    JSONParamInstance(ParamInstanceStore store, int index) {
+        super(store, index);
     }
 
     public ParamInstance getParent() {
-        return parent;
-    }
-
-    @Override
-    public String getName() {
-        return paramName;
+        return store.getParent(index);
     }
 
     @Override
     public String getValue() {
-        return paramValue;
-    }
-
-    @Override
-    public int getNameStart() {
-        return parent.getNameStart();
-    }
-
-    @Override
-    public int getNameEnd() {
-        return parent.getNameEnd();
-    }
-
-    @Override
-    public int getValueStart() {
-        return parent.getValueStart();
-    }
-
-    @Override
-    public int getValueEnd() {
-        return parent.getValueEnd();
-    }
-
-    @Override
-    public IHttpRequestResponse getMessage() {
-        return parent.getMessage();
+        return store.getValue(index);
     }
 
 }
@@ -16,14 +16,16 @@
 
 package com.professionallyevil.bc;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 
+/**
+ * Breaks JSON objects (e.g. parameter values and JWT bodies) out into their name/value pairs with a single scan of the
+ * text, recording where in the text each one was found.
+ */
 class JSONParamParser {
 
     enum JSONValue {
@@ -47,62 +49,309 @@ class JSONParamParser {
         }
     }
 
-    private static void parseValue(List<JSONParamInstance> paramList, ParamInstance parent, String key, Object value) {
-        if (value instanceof JSONObject) {
-            parseObject((JSONObject)value, paramList, parent);
-            paramList.add(new JSONParamInstance(key, value.toString(), parent));
-        } else if (value instanceof JSONArray) {
-            parseArray((JSONArray)value, key, paramList, parent);
-            paramList.add(new JSONParamInstance(key, value.toString(), parent));
-        } else if (value instanceof String) {
-            paramList.add(new JSONParamInstance(key, (String)value, parent));
-        } else if (value instanceof Integer) {
-            try {
-                paramList.add(new JSONParamInstance(key, Integer.toString((Integer)value), parent));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        } else if (value instanceof Boolean) {
-            paramList.add(new JSONParamInstance(key, Boolean.toString((Boolean)value), parent));
+    /**
+     * A name/value pair found in a JSON object.  Nested objects and arrays are reported both as a whole (their source
+     * text) and through the pairs inside them.
+     */
+    static class Part {
+        private final String name;
+        private final String value;
+        private final int nameStart;
+        private final int nameEnd;
+        private final int valueStart;
+        private final int valueEnd;
+
+        Part(String name, String value, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            this.name = name;
+            this.value = value;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+        }
+
+        /**
+         * @return The path of the value, e.g. "id" for a top-level key or "user.address.city" for a nested one.  Array
+         * elements share the path of the array.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * @return The value: unescaped for strings, the source text for anything else.
+         */
+        String getValue() {
+            return value;
+        }
+
+        /** @return The offset in the parsed string of the key, including its quotes. */
+        int getNameStart() {
+            return nameStart;
+        }
+
+        int getNameEnd() {
+            return nameEnd;
+        }
+
+        /** @return The offset in the parsed string of the value (including the quotes of a string). */
+        int getValueStart() {
+            return valueStart;
         }
-    }
 
-    private static void parseObject(JSONObject jsonObject, List<JSONParamInstance> paramList, ParamInstance parent) {
-        for(String key: jsonObject.keySet()) {
-            Object value = jsonObject.get(key);
-            parseValue(paramList, parent, key, value);
+        int getValueEnd() {
+            return valueEnd;
         }
     }
 
-    private static void parseArray(JSONArray array, String key, List<JSONParamInstance> paramList, ParamInstance parent) {
-        for(Object value: array) {
-            parseValue(paramList, parent, key, value);
+    private static class SyntaxException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxException(int position) {
+            super("Invalid JSON at " + position, null, false, false);
         }
     }
 
-    static List<JSONParamInstance> parseObjectString(String jsonString, ParamInstance parent){
-        List<JSONParamInstance> paramList = new ArrayList<>();
+    private final String json;
+    private final List<Part> parts = new ArrayList<>();
+    private final StringBuilder buf = new StringBuilder();
+    private int pos = 0;
+
+    private JSONParamParser(String json) {
+        this.json = json;
+    }
 
+    /**
+     * Extract the name/value pairs of a JSON object, including those of nested objects and arrays, in a single pass
+     * over the text.  Numbers of any size and nulls are kept as their source text.
+     * @param jsonString The JSON object.
+     * @return The pairs found in document order (a container after its contents), or an empty list if it wasn't a
+     * valid JSON object.
+     */
+    static List<Part> parse(String jsonString) {
+        JSONParamParser parser = new JSONParamParser(jsonString);
         try {
-            JSONObject jo = new JSONObject(jsonString);
-            parseObject(jo, paramList, parent);
-        } catch (JSONException e) {
-            // skip
+            parser.skipWhitespace();
+            parser.expect('{');
+            parser.parseObject("");
+            return parser.parts;
+        } catch (SyntaxException e) {
+            return new ArrayList<>();
         }
+    }
 
+    /**
+     * Extract the name/value pairs of a JSON object, including those of nested objects and arrays.
+     * @param jsonString The JSON object.
+     * @return The (name, value) pairs found, or an empty list if it wasn't valid JSON.
+     */
+    static List<Map.Entry<String, String>> parseObjectString(String jsonString){
+        List<Map.Entry<String, String>> paramList = new ArrayList<>();
+        for (Part part : parse(jsonString)) {
+            paramList.add(new AbstractMap.SimpleImmutableEntry<>(part.getName(), part.getValue()));
+        }
         return paramList;
+    }
 
+    // called with pos just past the '{'
+    private void parseObject(String path) throws SyntaxException {
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            int nameStart = pos;
+            expect('"');
+            String key = parseString();
+            int nameEnd = pos;
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            parseValue(path.isEmpty() ? key : path + "." + key, nameStart, nameEnd);
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return;
+            } else if (c != ',') {
+                throw new SyntaxException(pos - 1);
+            }
+        }
     }
 
-//    public static void main(String[] args) {
-//        parseObjectString("{\"foo\":\"bar\"}");
-//        parseObjectString("{\"foo\":-42}");
-//        parseObjectString("{\"foo\":[\"foo bar\", -42]}");
-//        parseObjectString("{\"foo\": true}");
-//        parseObjectString("{\"foo\": null}");
-//        parseObjectString("{\"foo\": {\"bar\": \"foo2\"}}");
-//        parseObjectString("{\"foo\":\"bar\" ,\"foo2\":\"bar2\",\"foo3\":\"bar3\",\"foo4\":\"bar4\"}");
-//        parseObjectString("not a json object");
-//    }
+    // called with pos just past the '['
+    private void parseArray(String path, int nameStart, int nameEnd) throws SyntaxException {
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            parseValue(path, nameStart, nameEnd);
+            skipWhitespace();
+            char c = next();
+            if (c == ']') {
+                return;
+            } else if (c != ',') {
+                throw new SyntaxException(pos - 1);
+            }
+        }
+    }
 
+    private void parseValue(String path, int nameStart, int nameEnd) throws SyntaxException {
+        int valueStart = pos;
+        String value;
+        char c = next();
+        switch (c) {
+            case '{':
+                parseObject(path);
+                value = json.substring(valueStart, pos);
+                break;
+            case '[':
+                parseArray(path, nameStart, nameEnd);
+                value = json.substring(valueStart, pos);
+                break;
+            case '"':
+                value = parseString();
+                break;
+            case 't':
+                expectWord("rue");
+                value = "true";
+                break;
+            case 'f':
+                expectWord("alse");
+                value = "false";
+                break;
+            case 'n':
+                expectWord("ull");
+                value = "null";
+                break;
+            default:
+                if (c != '-' && (c < '0' || c > '9')) {
+                    throw new SyntaxException(valueStart);
+                }
+                while (pos < json.length() && isNumberChar(json.charAt(pos))) {
+                    pos++;
+                }
+                value = json.substring(valueStart, pos);
+        }
+        parts.add(new Part(path, normalize(value), nameStart, nameEnd, valueStart, pos));
+    }
+
+    // called with pos just past the opening quote; leaves pos just past the closing one
+    private String parseString() throws SyntaxException {
+        int start = pos;
+        while (true) {
+            if (pos >= json.length()) {
+                throw new SyntaxException(pos);
+            }
+            char c = json.charAt(pos);
+            if (c == '"') {
+                return json.substring(start, pos++);
+            } else if (c == '\\') {
+                break;
+            } else if (c < ' ') {
+                throw new SyntaxException(pos);
+            }
+            pos++;
+        }
+        // slow path: the string has escapes
+        buf.setLength(0);
+        buf.append(json, start, pos);
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return buf.toString();
+            } else if (c == '\\') {
+                char escaped = next();
+                switch (escaped) {
+                    case 'b':
+                        buf.append('\b');
+                        break;
+                    case 'f':
+                        buf.append('\f');
+                        break;
+                    case 'n':
+                        buf.append('\n');
+                        break;
+                    case 'r':
+                        buf.append('\r');
+                        break;
+                    case 't':
+                        buf.append('\t');
+                        break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            throw new SyntaxException(pos);
+                        }
+                        try {
+                            buf.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new SyntaxException(pos);
+                        }
+                        pos += 4;
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        buf.append(escaped);
+                        break;
+                    default:
+                        throw new SyntaxException(pos - 1);
+                }
+            } else if (c < ' ') {
+                throw new SyntaxException(pos - 1);
+            } else {
+                buf.append(c);
+            }
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    private void expectWord(String rest) throws SyntaxException {
+        if (!json.startsWith(rest, pos)) {
+            throw new SyntaxException(pos);
+        }
+        pos += rest.length();
+    }
+
+    private void expect(char c) throws SyntaxException {
+        if (next() != c) {
+            throw new SyntaxException(pos - 1);
+        }
+    }
+
+    private char next() throws SyntaxException {
+        if (pos >= json.length()) {
+            throw new SyntaxException(pos);
+        }
+        return json.charAt(pos++);
+    }
+
+    private char peek() throws SyntaxException {
+        if (pos >= json.length()) {
+            throw new SyntaxException(pos);
+        }
+        return json.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+        while (pos < json.length()) {
+            char c = json.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    // values are shown one per line, so break up the (odd) LF-CR sequence as the tree-based parser did
+    private static String normalize(String value) {
+        return value.indexOf("\n\r") < 0 ? value : String.join(" ", value.split("\n\r"));
+    }
 }
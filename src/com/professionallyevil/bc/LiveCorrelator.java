@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+
+import javax.swing.*;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Feeds messages arriving through the proxy into a persistent set of parameters so the tables stay up to date without
+ * re-running the full analysis.  All changes to the parameters happen on a single background thread (so the
+ * CorrelationShard maps never need locking); the tables are then told which rows were added or changed on the EDT.
+ */
+class LiveCorrelator {
+    private final IBurpExtenderCallbacks callbacks;
+    private final ParametersTableModel paramsTableModel;
+    private final CookieStatisticsTableModel cookieStatisticsTableModel;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Paramalyzer live analysis");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private CorrelationShard results;
+    // hashes (with counts) of proxy messages dropped while paused, and of history messages caught up on whose proxy
+    // listener copy hasn't been seen yet
+    private final Map<Long, Integer> droppedWhilePaused = new HashMap<>();
+    private final Map<Long, Integer> caughtUp = new HashMap<>();
+    // copies of the cookie statistics last shown, since the EDT can't read the ones being added to
+    private final Map<String, CookieStatistics> shownCookieStatistics = new TreeMap<>();
+
+    LiveCorrelator(IBurpExtenderCallbacks callbacks, CorrelationShard results, ParametersTableModel paramsTableModel,
+                   CookieStatisticsTableModel cookieStatisticsTableModel) {
+        this.callbacks = callbacks;
+        this.results = results;
+        this.paramsTableModel = paramsTableModel;
+        this.cookieStatisticsTableModel = cookieStatisticsTableModel;
+    }
+
+    /**
+     * Switch to a new set of results, e.g. after a full analysis has completed or the tables were cleared.  Messages
+     * already queued are processed into the old results first.
+     * @param newResults The parameters that further messages should be added to, or null to pause while a full
+     *                   analysis is running.
+     */
+    void setResults(final CorrelationShard newResults) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                results = newResults;
+                droppedWhilePaused.clear();
+                caughtUp.clear();
+                shownCookieStatistics.clear();
+            }
+        });
+    }
+
+    /**
+     * Switch to the results of a full analysis, then analyze the messages added to the proxy history since it read
+     * the history (proxy messages arriving while it ran were dropped).  Proxy messages that turn up after this in the
+     * history read here are skipped, so each response is only added once.
+     * @param newResults The results of the analysis.
+     * @param from The length of the proxy history when the analysis read it.
+     */
+    void setResults(final CorrelationShard newResults, final int from) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                results = newResults;
+                caughtUp.clear();
+                shownCookieStatistics.clear();
+                IHttpRequestResponse[] history = callbacks.getProxyHistory();
+                for (int i = from; i < history.length; i++) {
+                    if (!removeHash(droppedWhilePaused, ResultsSnapshot.messageHash(history[i]))) {
+                        addHash(caughtUp, ResultsSnapshot.messageHash(history[i]));
+                    }
+                    processSafely(history[i], false);
+                }
+                droppedWhilePaused.clear();
+            }
+        });
+    }
+
+    /**
+     * Queue a message for analysis.  Safe to call from any thread.
+     * @param message A completed request/response.  It should already be saved to temp files by the caller.
+     */
+    void addMessage(final IHttpRequestResponse message) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                processSafely(message, true);
+            }
+        });
+    }
+
+    private void processSafely(IHttpRequestResponse message, boolean fromProxy) {
+        try {
+            process(message, fromProxy);
+        } catch (Throwable t) {
+            StringWriter sw = new StringWriter();
+            t.printStackTrace(new PrintWriter(sw));
+            callbacks.printError(sw.toString());
+        }
+    }
+
+    private void process(IHttpRequestResponse message, boolean fromProxy) {
+        if (fromProxy && (results == null || !caughtUp.isEmpty())) {
+            long hash = ResultsSnapshot.messageHash(message);
+            if (results == null) {
+                addHash(droppedWhilePaused, hash);
+                return;
+            } else if (removeHash(caughtUp, hash)) {
+                return;
+            }
+        }
+        if (results == null) {
+            return;
+        }
+        final Set<CorrelatedParam> touched = new LinkedHashSet<>();
+        results.processMessage(results.getMessages().add(message), touched);
+        if (touched.isEmpty() && message.getResponse() == null) {
+            return;
+        }
+
+        Set<CorrelatedParam> jsonParts = new LinkedHashSet<>();
+        for (CorrelatedParam cp : touched) {
+            cp.analyzeAll(callbacks);
+            results.processJSON(cp, jsonParts);
+        }
+        for (CorrelatedParam cp : jsonParts) {
+            cp.analyzeAll(callbacks);
+        }
+        touched.addAll(jsonParts);
+        results.getValueIndex().update(touched);
+        DigestIndex digestIndex = results.getDigestIndex();
+        if (digestIndex != null) {
+            digestIndex.update(null);
+        }
+
+        final List<ParamSummary> summaries = ParametersTableModel.summarize(touched);
+        for (CookieStatistics cs : results.cookieStatistics.values()) {
+            CookieStatistics shown = shownCookieStatistics.get(cs.getName());
+            if (shown == null || shown.getCount() != cs.getCount()) {
+                shownCookieStatistics.put(cs.getName(), cs.copy());
+            }
+        }
+        final Map<String, CookieStatistics> cookieStatistics = new TreeMap<>(shownCookieStatistics);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                paramsTableModel.addOrUpdateParameters(summaries);
+                cookieStatisticsTableModel.setCookieStatistics(cookieStatistics, callbacks);
+            }
+        });
+    }
+
+    private static void addHash(Map<Long, Integer> hashes, long hash) {
+        Integer count = hashes.get(hash);
+        hashes.put(hash, count == null ? 1 : count + 1);
+    }
+
+    private static boolean removeHash(Map<Long, Integer> hashes, long hash) {
+        Integer count = hashes.get(hash);
+        if (count == null) {
+            return false;
+        } else if (count == 1) {
+            hashes.remove(hash);
+        } else {
+            hashes.put(hash, count - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Run a task on the live analysis thread, between messages, so that it sees the results unchanging.
+     * @return The pending result of the task.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+
+import java.util.Arrays;
+
+/**
+ * The messages an analysis was built from, addressed by their position (ordinal) in the proxy history.  Parameter
+ * instances only store the ordinal, which is much smaller than holding a reference per instance and gives every
+ * message a stable identity.  Live analysis appends to the end.
+ * <p>
+ * Reads don't lock, so the parallel first pass doesn't contend on the table: an appended message is stored before
+ * the (possibly grown) array and then the size are published, and slots below the size are never written again.
+ */
+class MessageTable {
+    private final int historySize;
+    private volatile IHttpRequestResponse[] messages;
+    private volatile int size;
+
+    MessageTable() {
+        this(new IHttpRequestResponse[0]);
+    }
+
+    /**
+     * @param history The proxy history.  The array is not copied unless messages are later appended.
+     */
+    MessageTable(IHttpRequestResponse[] history) {
+        this.messages = history;
+        this.size = history.length;
+        this.historySize = history.length;
+    }
+
+    synchronized int add(IHttpRequestResponse message) {
+        int ordinal = size;
+        IHttpRequestResponse[] array = messages;
+        if (ordinal == array.length) {
+            array = Arrays.copyOf(array, Math.max(16, ordinal + (ordinal >> 1)));
+            array[ordinal] = message;
+            messages = array;
+        } else {
+            array[ordinal] = message;
+        }
+        size = ordinal + 1;
+        return ordinal;
+    }
+
+    IHttpRequestResponse get(int ordinal) {
+        return messages[ordinal];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of leading messages that came from the proxy history, so their ordinal is their position in
+     * it.  Messages appended later (by live analysis) are in the order they were analyzed.
+     */
+    int getHistorySize() {
+        return historySize;
+    }
+}
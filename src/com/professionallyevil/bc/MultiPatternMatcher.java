@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton for finding many fixed strings in a piece of text with a single scan.  Patterns are added
+ * first, then build() is called once, after which the matcher is read-only and can be shared between threads.
+ * State is kept in primitive arrays so that a dictionary of several hundred thousand values stays reasonably compact.
+ */
+class MultiPatternMatcher {
+
+    interface MatchHandler {
+        /**
+         * Called for every occurrence of a pattern in the scanned text.
+         * @param patternId The id returned by add() for the pattern that matched.
+         * @param end The index in the text just past the end of the match.
+         */
+        void match(int patternId, int end);
+    }
+
+    private static final int ROOT = 0;
+
+    // per-node state
+    private int nodeCount = 1;
+    private int[] firstChild = new int[1024];
+    private int[] nextSibling = new int[1024];
+    private char[] edge = new char[1024];
+    private int[] output = new int[1024];
+    private int[] fail;
+    private int[] dictLink;
+
+    // (node, char) -> child transitions, open addressing
+    private long[] transitionKeys = new long[2048];
+    private int[] transitionValues = new int[2048];
+    private int transitionCount = 0;
+
+    private final List<String> patterns = new ArrayList<>();
+    private boolean built = false;
+
+    MultiPatternMatcher() {
+        firstChild[ROOT] = -1;
+        output[ROOT] = -1;
+        Arrays.fill(transitionKeys, -1L);
+    }
+
+    /**
+     * Add a pattern to the dictionary.  Adding the same string twice returns the original id.
+     * @param pattern The (non-empty) string to look for.
+     * @return The id that will be reported to the MatchHandler for this pattern.
+     */
+    int add(String pattern) {
+        if (built) {
+            throw new IllegalStateException("Patterns cannot be added after the matcher has been built.");
+        }
+        int node = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int child = getTransition(node, c);
+            if (child < 0) {
+                child = newNode(node, c);
+            }
+            node = child;
+        }
+        if (output[node] < 0) {
+            output[node] = patterns.size();
+            patterns.add(pattern);
+        }
+        return output[node];
+    }
+
+    String getPattern(int patternId) {
+        return patterns.get(patternId);
+    }
+
+    int getPatternCount() {
+        return patterns.size();
+    }
+
+    /**
+     * Compute the failure links.  Must be called after the last pattern is added and before scanning.
+     */
+    void build() {
+        fail = new int[nodeCount];
+        dictLink = new int[nodeCount];
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        dictLink[ROOT] = -1;
+        for (int child = firstChild[ROOT]; child >= 0; child = nextSibling[child]) {
+            fail[child] = ROOT;
+            dictLink[child] = -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                char c = edge[child];
+                int f = fail[node];
+                int target = getTransition(f, c);
+                while (target < 0 && f != ROOT) {
+                    f = fail[f];
+                    target = getTransition(f, c);
+                }
+                fail[child] = target < 0 ? ROOT : target;
+                int suffix = fail[child];
+                dictLink[child] = output[suffix] >= 0 ? suffix : dictLink[suffix];
+                queue[tail++] = child;
+            }
+        }
+        built = true;
+    }
+
+    /**
+     * Report every occurrence of every pattern in the text, including overlapping ones.
+     * @param text The text to scan.
+     * @param handler Receives each match.
+     */
+    void scan(CharSequence text, MatchHandler handler) {
+        if (!built) {
+            throw new IllegalStateException("build() must be called before scanning.");
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = getTransition(state, c);
+            while (next < 0 && state != ROOT) {
+                state = fail[state];
+                next = getTransition(state, c);
+            }
+            state = next < 0 ? ROOT : next;
+            for (int n = output[state] >= 0 ? state : dictLink[state]; n >= 0; n = dictLink[n]) {
+                handler.match(output[n], i + 1);
+            }
+        }
+    }
+
+    private int newNode(int parent, char c) {
+        if (nodeCount == output.length) {
+            int capacity = output.length * 2;
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            edge = Arrays.copyOf(edge, capacity);
+            output = Arrays.copyOf(output, capacity);
+        }
+        int node = nodeCount++;
+        firstChild[node] = -1;
+        output[node] = -1;
+        edge[node] = c;
+        nextSibling[node] = firstChild[parent];
+        firstChild[parent] = node;
+        putTransition(parent, c, node);
+        return node;
+    }
+
+    private static long key(int node, char c) {
+        return ((long) node << 16) | c;
+    }
+
+    private int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private int getTransition(int node, char c) {
+        long key = key(node, c);
+        int mask = transitionKeys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long k = transitionKeys[i];
+            if (k == key) {
+                return transitionValues[i];
+            } else if (k == -1L) {
+                return -1;
+            }
+        }
+    }
+
+    private void putTransition(int node, char c, int child) {
+        if ((transitionCount + 1) * 2 > transitionKeys.length) {
+            rehash(transitionKeys.length * 2);
+        }
+        long key = key(node, c);
+        int mask = transitionKeys.length - 1;
+        int i = slot(key, mask);
+        while (transitionKeys[i] != -1L) {
+            i = (i + 1) & mask;
+        }
+        transitionKeys[i] = key;
+        transitionValues[i] = child;
+        transitionCount++;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = transitionKeys;
+        int[] oldValues = transitionValues;
+        transitionKeys = new long[capacity];
+        transitionValues = new int[capacity];
+        Arrays.fill(transitionKeys, -1L);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != -1L) {
+                int i = slot(oldKeys[j], mask);
+                while (transitionKeys[i] != -1L) {
+                    i = (i + 1) & mask;
+                }
+                transitionKeys[i] = oldKeys[j];
+                transitionValues[i] = oldValues[j];
+            }
+        }
+    }
+}
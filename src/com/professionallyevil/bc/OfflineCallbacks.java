@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.*;
+
+import java.awt.*;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * IBurpExtenderCallbacks for running the analysis without Burp.  Serves a fixed proxy history (e.g. loaded by
+ * ProxyHistoryLoader), applies simple scope rules and sends output to the given streams.  Anything the analysis does
+ * not use throws UnsupportedOperationException.
+ * <p>
+ * Scope rules are regular expressions matched against the full URL as Burp reports it, which always includes the port
+ * (e.g. https://example.com:443/path).  If there are no include rules, everything that is not excluded is in scope.
+ */
+class OfflineCallbacks implements IBurpExtenderCallbacks {
+    private final IExtensionHelpers helpers = new OfflineHelpers();
+    private final IHttpRequestResponse[] history;
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Map<String, String> settings = new HashMap<>();
+    // read by every analysis thread, rarely written
+    private final List<Pattern> includes = new CopyOnWriteArrayList<>();
+    private final List<Pattern> excludes = new CopyOnWriteArrayList<>();
+    private String extensionName;
+
+    OfflineCallbacks(IHttpRequestResponse[] history, PrintStream out, PrintStream err) {
+        this.history = history;
+        this.out = out;
+        this.err = err;
+    }
+
+    String getExtensionName() {
+        return extensionName;
+    }
+
+    void includeInScope(Pattern urlPattern) {
+        includes.add(urlPattern);
+    }
+
+    void excludeFromScope(Pattern urlPattern) {
+        excludes.add(urlPattern);
+    }
+
+    @Override
+    public void setExtensionName(String name) {
+        this.extensionName = name;
+    }
+
+    @Override
+    public IExtensionHelpers getHelpers() {
+        return helpers;
+    }
+
+    @Override
+    public OutputStream getStdout() {
+        return out;
+    }
+
+    @Override
+    public OutputStream getStderr() {
+        return err;
+    }
+
+    @Override
+    public void printOutput(String output) {
+        out.println(output);
+    }
+
+    @Override
+    public void printError(String error) {
+        err.println(error);
+    }
+
+    @Override
+    public void registerExtensionStateListener(IExtensionStateListener extensionStateListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IExtensionStateListener> getExtensionStateListeners() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeExtensionStateListener(IExtensionStateListener extensionStateListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerHttpListener(IHttpListener httpListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IHttpListener> getHttpListeners() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeHttpListener(IHttpListener httpListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerProxyListener(IProxyListener proxyListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IProxyListener> getProxyListeners() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeProxyListener(IProxyListener proxyListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerScannerListener(IScannerListener scannerListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IScannerListener> getScannerListeners() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeScannerListener(IScannerListener scannerListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerScopeChangeListener(IScopeChangeListener scopeChangeListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IScopeChangeListener> getScopeChangeListeners() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeScopeChangeListener(IScopeChangeListener scopeChangeListener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerContextMenuFactory(IContextMenuFactory contextMenuFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IContextMenuFactory> getContextMenuFactories() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeContextMenuFactory(IContextMenuFactory contextMenuFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerMessageEditorTabFactory(IMessageEditorTabFactory messageEditorTabFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IMessageEditorTabFactory> getMessageEditorTabFactories() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeMessageEditorTabFactory(IMessageEditorTabFactory messageEditorTabFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerScannerInsertionPointProvider(IScannerInsertionPointProvider scannerInsertionPointProvider) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IScannerInsertionPointProvider> getScannerInsertionPointProviders() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeScannerInsertionPointProvider(IScannerInsertionPointProvider scannerInsertionPointProvider) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerScannerCheck(IScannerCheck scannerCheck) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IScannerCheck> getScannerChecks() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeScannerCheck(IScannerCheck scannerCheck) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerIntruderPayloadGeneratorFactory(IIntruderPayloadGeneratorFactory intruderPayloadGeneratorFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IIntruderPayloadGeneratorFactory> getIntruderPayloadGeneratorFactories() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeIntruderPayloadGeneratorFactory(IIntruderPayloadGeneratorFactory intruderPayloadGeneratorFactory) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerIntruderPayloadProcessor(IIntruderPayloadProcessor intruderPayloadProcessor) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<IIntruderPayloadProcessor> getIntruderPayloadProcessors() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeIntruderPayloadProcessor(IIntruderPayloadProcessor intruderPayloadProcessor) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void registerSessionHandlingAction(ISessionHandlingAction sessionHandlingAction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<ISessionHandlingAction> getSessionHandlingActions() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeSessionHandlingAction(ISessionHandlingAction sessionHandlingAction) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unloadExtension() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addSuiteTab(ITab tab) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeSuiteTab(ITab tab) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void customizeUiComponent(Component component) {
+        // no UI
+    }
+
+    @Override
+    public IMessageEditor createMessageEditor(IMessageEditorController controller, boolean editable) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String[] getCommandLineArguments() {
+        return new String[0];
+    }
+
+    @Override
+    public void saveExtensionSetting(String name, String value) {
+        settings.put(name, value);
+    }
+
+    @Override
+    public String loadExtensionSetting(String name) {
+        return settings.get(name);
+    }
+
+    @Override
+    public ITextEditor createTextEditor() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToRepeater(String host, int port, boolean useHttps, byte[] request, String tabCaption) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToIntruder(String host, int port, boolean useHttps, byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToIntruder(String host, int port, boolean useHttps, byte[] request, List<int[]> payloadPositionOffsets) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToComparer(byte[] data) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendToSpider(URL url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IScanQueueItem doActiveScan(String host, int port, boolean useHttps, byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IScanQueueItem doActiveScan(String host, int port, boolean useHttps, byte[] request, List<int[]> insertionPointOffsets) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void doPassiveScan(String host, int port, boolean useHttps, byte[] request, byte[] response) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IHttpRequestResponse makeHttpRequest(IHttpService httpService, byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] makeHttpRequest(String host, int port, boolean useHttps, byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isInScope(URL url) {
+        String urlString = url.toString();
+        boolean included = includes.isEmpty();
+        for (int i = 0; !included && i < includes.size(); i++) {
+            included = includes.get(i).matcher(urlString).find();
+        }
+        for (int i = 0; included && i < excludes.size(); i++) {
+            included = !excludes.get(i).matcher(urlString).find();
+        }
+        return included;
+    }
+
+    @Override
+    public void includeInScope(URL url) {
+        includes.add(Pattern.compile("^" + Pattern.quote(url.toString())));
+    }
+
+    @Override
+    public void excludeFromScope(URL url) {
+        excludes.add(Pattern.compile("^" + Pattern.quote(url.toString())));
+    }
+
+    @Override
+    public void issueAlert(String message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IHttpRequestResponse[] getProxyHistory() {
+        return history;
+    }
+
+    @Override
+    public IHttpRequestResponse[] getSiteMap(String urlPrefix) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IScanIssue[] getScanIssues(String urlPrefix) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void generateScanReport(String format, IScanIssue[] issues, File file) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<ICookie> getCookieJarContents() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updateCookieJar(ICookie cookie) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addToSiteMap(IHttpRequestResponse item) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void restoreState(File file) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void saveState(File file) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> saveConfig() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void loadConfig(Map<String, String> config) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String saveConfigAsJson(String... configPaths) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void loadConfigFromJson(String config) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setProxyInterceptionEnabled(boolean enabled) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String[] getBurpVersion() {
+        return new String[]{"Burp Suite", "stub", "0"};
+    }
+
+    @Override
+    public String getExtensionFilename() {
+        return null;
+    }
+
+    @Override
+    public boolean isExtensionBapp() {
+        return false;
+    }
+
+    @Override
+    public void exitSuite(boolean promptUser) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ITempFile saveToTempFile(byte[] buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IHttpRequestResponsePersisted saveBuffersToTempFiles(IHttpRequestResponse httpRequestResponse) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IHttpRequestResponseWithMarkers applyMarkers(IHttpRequestResponse httpRequestResponse, List<int[]> requestMarkers, List<int[]> responseMarkers) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getToolName(int toolFlag) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addScanIssue(IScanIssue issue) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IBurpCollaboratorClientContext createBurpCollaboratorClientContext() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public String[][] getParameters(byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public String[] getHeaders(byte[] message) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public void registerMenuItem(String menuItemCaption, IMenuItemHandler menuItemHandler) {
+        throw new UnsupportedOperationException();
+    }
+}
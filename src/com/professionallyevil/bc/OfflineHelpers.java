@@ -0,0 +1,770 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.*;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A self-contained IExtensionHelpers that parses raw HTTP messages the way Burp does, closely enough for the analysis
+ * code: URL, cookie, url-encoded body and JSON body parameters with their offsets, and response headers.  Strings and
+ * bytes are converted as ISO-8859-1, as Burp does.  Anything the analysis does not use throws
+ * UnsupportedOperationException.
+ */
+class OfflineHelpers implements IExtensionHelpers {
+
+    @Override
+    public IRequestInfo analyzeRequest(IHttpRequestResponse request) {
+        return analyzeRequest(request.getHttpService(), request.getRequest());
+    }
+
+    @Override
+    public IRequestInfo analyzeRequest(IHttpService httpService, byte[] request) {
+        return new RequestInfo(httpService, request);
+    }
+
+    @Override
+    public IRequestInfo analyzeRequest(byte[] request) {
+        return new RequestInfo(null, request);
+    }
+
+    @Override
+    public IResponseInfo analyzeResponse(byte[] response) {
+        return new ResponseInfo(response);
+    }
+
+    @Override
+    public IParameter getRequestParameter(byte[] request, String parameterName) {
+        for (IParameter param : analyzeRequest(request).getParameters()) {
+            if (param.getName().equals(parameterName)) {
+                return param;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String urlDecode(String data) {
+        return bytesToString(urlDecode(stringToBytes(data)));
+    }
+
+    @Override
+    public String urlEncode(String data) {
+        return bytesToString(urlEncode(stringToBytes(data)));
+    }
+
+    @Override
+    public byte[] urlDecode(byte[] data) {
+        byte[] out = new byte[data.length];
+        int length = 0;
+        for (int i = 0; i < data.length; i++) {
+            byte b = data[i];
+            if (b == '+') {
+                out[length++] = ' ';
+            } else if (b == '%' && i + 2 < data.length && hexValue(data[i + 1]) >= 0 && hexValue(data[i + 2]) >= 0) {
+                out[length++] = (byte) (hexValue(data[i + 1]) << 4 | hexValue(data[i + 2]));
+                i += 2;
+            } else {
+                out[length++] = b;
+            }
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(out, 0, result, 0, length);
+        return result;
+    }
+
+    @Override
+    public byte[] urlEncode(byte[] data) {
+        StringBuilder buf = new StringBuilder();
+        for (byte b : data) {
+            int c = b & 0xff;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' ||
+                    c == '.' || c == '*') {
+                buf.append((char) c);
+            } else if (c == ' ') {
+                buf.append('+');
+            } else {
+                buf.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return stringToBytes(buf.toString());
+    }
+
+    @Override
+    public byte[] base64Decode(String data) {
+        return base64Decode(stringToBytes(data));
+    }
+
+    /**
+     * Lenient like Burp's: characters outside the alphabet are skipped and missing padding is tolerated.
+     */
+    @Override
+    public byte[] base64Decode(byte[] data) {
+        byte[] clean = new byte[data.length];
+        int length = 0;
+        for (byte b : data) {
+            if ((b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '+' || b == '/') {
+                clean[length++] = b;
+            } else if (b == '-') {
+                clean[length++] = '+';
+            } else if (b == '_') {
+                clean[length++] = '/';
+            }
+        }
+        if (length % 4 == 1) {
+            length--;  // a single trailing character can't be decoded
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(clean, 0, trimmed, 0, length);
+        return Base64.getDecoder().decode(trimmed);
+    }
+
+    @Override
+    public String base64Encode(String data) {
+        return base64Encode(stringToBytes(data));
+    }
+
+    @Override
+    public String base64Encode(byte[] data) {
+        return Base64.getEncoder().encodeToString(data);
+    }
+
+    @Override
+    public byte[] stringToBytes(String data) {
+        return data.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String bytesToString(byte[] data) {
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public int indexOf(byte[] data, byte[] pattern, boolean caseSensitive, int from, int to) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && (caseSensitive ? data[i + j] == pattern[j] :
+                    Character.toLowerCase(data[i + j]) == Character.toLowerCase(pattern[j]))) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public byte[] buildHttpMessage(List<String> headers, byte[] body) {
+        StringBuilder buf = new StringBuilder();
+        for (String header : headers) {
+            buf.append(header).append("\r\n");
+        }
+        buf.append("\r\n");
+        byte[] head = stringToBytes(buf.toString());
+        byte[] message = new byte[head.length + (body == null ? 0 : body.length)];
+        System.arraycopy(head, 0, message, 0, head.length);
+        if (body != null) {
+            System.arraycopy(body, 0, message, head.length, body.length);
+        }
+        return message;
+    }
+
+    @Override
+    public byte[] buildHttpRequest(URL url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] addParameter(byte[] request, IParameter parameter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] removeParameter(byte[] request, IParameter parameter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] updateParameter(byte[] request, IParameter parameter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public byte[] toggleRequestMethod(byte[] request) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IHttpService buildHttpService(String host, int port, String protocol) {
+        return new HttpService(host, port, protocol);
+    }
+
+    @Override
+    public IHttpService buildHttpService(String host, int port, boolean useHttps) {
+        return new HttpService(host, port, useHttps ? "https" : "http");
+    }
+
+    @Override
+    public IParameter buildParameter(String name, String value, byte type) {
+        return new Parameter(type, name, value, -1, -1, -1, -1);
+    }
+
+    @Override
+    public IScannerInsertionPoint makeScannerInsertionPoint(String insertionPointName, byte[] baseRequest, int from,
+                                                            int to) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IResponseVariations analyzeResponseVariations(byte[]... responses) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IResponseKeywords analyzeResponseKeywords(List<String> keywords, byte[]... responses) {
+        throw new UnsupportedOperationException();
+    }
+
+    private static int hexValue(byte b) {
+        return Character.digit(b, 16);
+    }
+
+    /**
+     * Split the header block of a message into lines (the first being the request or status line).
+     * @return The offset of the body.
+     */
+    private static int parseHeaders(String message, List<String> headers) {
+        int start = 0;
+        while (start < message.length()) {
+            int end = message.indexOf('\n', start);
+            if (end < 0) {
+                end = message.length();
+            }
+            int lineEnd = end > start && message.charAt(end - 1) == '\r' ? end - 1 : end;
+            if (lineEnd == start) {
+                return Math.min(end + 1, message.length());
+            }
+            headers.add(message.substring(start, lineEnd));
+            start = end + 1;
+        }
+        return message.length();
+    }
+
+    private static String getHeader(List<String> headers, String name) {
+        for (int i = 1; i < headers.size(); i++) {
+            String header = headers.get(i);
+            if (header.length() > name.length() && header.charAt(name.length()) == ':' &&
+                    header.regionMatches(true, 0, name, 0, name.length())) {
+                return header.substring(name.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    static class HttpService implements IHttpService {
+        private final String host;
+        private final int port;
+        private final String protocol;
+
+        HttpService(String host, int port, String protocol) {
+            this.host = host;
+            this.port = port;
+            this.protocol = protocol;
+        }
+
+        @Override
+        public String getHost() {
+            return host;
+        }
+
+        @Override
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public String getProtocol() {
+            return protocol;
+        }
+    }
+
+    static class Parameter implements IParameter {
+        private final byte type;
+        private final String name;
+        private final String value;
+        private final int nameStart;
+        private final int nameEnd;
+        private final int valueStart;
+        private final int valueEnd;
+
+        Parameter(byte type, String name, String value, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            this.type = type;
+            this.name = name;
+            this.value = value;
+            this.nameStart = nameStart;
+            this.nameEnd = nameEnd;
+            this.valueStart = valueStart;
+            this.valueEnd = valueEnd;
+        }
+
+        @Override
+        public byte getType() {
+            return type;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public int getNameStart() {
+            return nameStart;
+        }
+
+        @Override
+        public int getNameEnd() {
+            return nameEnd;
+        }
+
+        @Override
+        public int getValueStart() {
+            return valueStart;
+        }
+
+        @Override
+        public int getValueEnd() {
+            return valueEnd;
+        }
+    }
+
+    private static class RequestInfo implements IRequestInfo {
+        private final String method;
+        private final URL url;
+        private final List<String> headers = new ArrayList<>();
+        private final List<IParameter> parameters = new ArrayList<>();
+        private final int bodyOffset;
+        private final byte contentType;
+
+        RequestInfo(IHttpService service, byte[] request) {
+            String message = new String(request, StandardCharsets.ISO_8859_1);
+            bodyOffset = parseHeaders(message, headers);
+            String requestLine = headers.isEmpty() ? "" : headers.get(0);
+            int firstSpace = requestLine.indexOf(' ');
+            int secondSpace = requestLine.lastIndexOf(' ');
+            method = firstSpace < 0 ? requestLine : requestLine.substring(0, firstSpace);
+            int targetStart = firstSpace + 1;
+            int targetEnd = secondSpace > firstSpace ? secondSpace : requestLine.length();
+            String target = firstSpace < 0 ? "/" : requestLine.substring(targetStart, targetEnd);
+            url = buildURL(service, target);
+
+            // URL parameters, offsets are relative to the start of the request line
+            int queryStart = target.indexOf('?');
+            if (queryStart >= 0) {
+                int fragment = target.indexOf('#', queryStart);
+                parseUrlEncoded(message, targetStart + queryStart + 1,
+                        targetStart + (fragment < 0 ? target.length() : fragment), '&', IParameter.PARAM_URL);
+            }
+
+            // cookies
+            int offset = requestLine.length();
+            for (int i = 1; i < headers.size(); i++) {
+                offset = message.indexOf(headers.get(i), offset);
+                String header = headers.get(i);
+                if (header.regionMatches(true, 0, "Cookie:", 0, 7)) {
+                    parseCookies(message, offset + 7, offset + header.length());
+                }
+                offset += header.length();
+            }
+
+            String contentTypeHeader = getHeader(headers, "Content-Type");
+            String lowerContentType = contentTypeHeader == null ? "" : contentTypeHeader.toLowerCase();
+            if (bodyOffset >= message.length()) {
+                contentType = CONTENT_TYPE_NONE;
+            } else if (lowerContentType.contains("json")) {
+                contentType = CONTENT_TYPE_JSON;
+                new JsonScanner(message, bodyOffset, parameters).scanValue();
+            } else if (lowerContentType.contains("multipart")) {
+                contentType = CONTENT_TYPE_MULTIPART;
+            } else if (lowerContentType.contains("xml")) {
+                contentType = CONTENT_TYPE_XML;
+            } else if (lowerContentType.contains("amf")) {
+                contentType = CONTENT_TYPE_AMF;
+            } else if (lowerContentType.contains("x-www-form-urlencoded") || lowerContentType.isEmpty()) {
+                contentType = CONTENT_TYPE_URL_ENCODED;
+                parseUrlEncoded(message, bodyOffset, message.length(), '&', IParameter.PARAM_BODY);
+            } else {
+                contentType = CONTENT_TYPE_UNKNOWN;
+            }
+        }
+
+        private URL buildURL(IHttpService service, String target) {
+            try {
+                if (target.startsWith("http://") || target.startsWith("https://")) {
+                    URL absolute = new URL(target);
+                    if (absolute.getPort() == -1) {
+                        return new URL(absolute.getProtocol(), absolute.getHost(), absolute.getDefaultPort(),
+                                absolute.getFile());
+                    }
+                    return absolute;
+                }
+                String protocol = service == null ? "http" : service.getProtocol();
+                String host;
+                int port;
+                if (service != null) {
+                    host = service.getHost();
+                    port = service.getPort();
+                } else {
+                    String hostHeader = getHeader(headers, "Host");
+                    host = hostHeader == null ? "localhost" : hostHeader;
+                    port = protocol.equals("https") ? 443 : 80;
+                    int colon = host.lastIndexOf(':');
+                    if (colon > 0 && host.indexOf(']') < colon) {
+                        port = Integer.parseInt(host.substring(colon + 1));
+                        host = host.substring(0, colon);
+                    }
+                }
+                return new URL(protocol, host, port, target.startsWith("/") ? target : "/" + target);
+            } catch (MalformedURLException | NumberFormatException e) {
+                throw new IllegalArgumentException("Unable to build URL for " + target, e);
+            }
+        }
+
+        private void parseUrlEncoded(String message, int from, int to, char separator, byte type) {
+            int start = from;
+            while (start < to) {
+                int end = message.indexOf(separator, start);
+                if (end < 0 || end > to) {
+                    end = to;
+                }
+                if (end > start) {
+                    int equals = message.indexOf('=', start);
+                    if (equals < 0 || equals > end) {
+                        parameters.add(new Parameter(type, message.substring(start, end), "", start, end, end,
+                                end));
+                    } else {
+                        parameters.add(new Parameter(type, message.substring(start, equals),
+                                message.substring(equals + 1, end), start, equals, equals + 1, end));
+                    }
+                }
+                start = end + 1;
+            }
+        }
+
+        private void parseCookies(String message, int from, int to) {
+            int start = from;
+            while (start < to) {
+                int end = message.indexOf(';', start);
+                if (end < 0 || end > to) {
+                    end = to;
+                }
+                int nameStart = start;
+                while (nameStart < end && message.charAt(nameStart) == ' ') {
+                    nameStart++;
+                }
+                int equals = message.indexOf('=', nameStart);
+                if (equals > nameStart && equals < end) {
+                    parameters.add(new Parameter(IParameter.PARAM_COOKIE, message.substring(nameStart, equals),
+                            message.substring(equals + 1, end), nameStart, equals, equals + 1, end));
+                }
+                start = end + 1;
+            }
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public List<IParameter> getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public int getBodyOffset() {
+            return bodyOffset;
+        }
+
+        @Override
+        public byte getContentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Records every "name": scalar pair of a JSON body as a PARAM_JSON parameter, descending into nested objects and
+     * arrays.  String values are reported without their quotes or unescaping, which is what Burp does.
+     */
+    private static class JsonScanner {
+        private final String text;
+        private final List<IParameter> parameters;
+        private int pos;
+
+        JsonScanner(String text, int pos, List<IParameter> parameters) {
+            this.text = text;
+            this.pos = pos;
+            this.parameters = parameters;
+        }
+
+        void scanValue() {
+            scanValue(null, -1, -1);
+        }
+
+        private void scanValue(String name, int nameStart, int nameEnd) {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return;
+            }
+            char c = text.charAt(pos);
+            if (c == '{') {
+                pos++;
+                while (pos < text.length()) {
+                    skipWhitespace();
+                    if (pos >= text.length() || text.charAt(pos) == '}') {
+                        pos++;
+                        return;
+                    } else if (text.charAt(pos) == ',') {
+                        pos++;
+                        continue;
+                    } else if (text.charAt(pos) != '"') {
+                        pos = text.length();  // not JSON we understand
+                        return;
+                    }
+                    int keyStart = pos + 1;
+                    int keyEnd = skipString();
+                    skipWhitespace();
+                    if (pos < text.length() && text.charAt(pos) == ':') {
+                        pos++;
+                    }
+                    scanValue(text.substring(keyStart, keyEnd), keyStart, keyEnd);
+                }
+            } else if (c == '[') {
+                pos++;
+                while (pos < text.length()) {
+                    skipWhitespace();
+                    if (pos >= text.length() || text.charAt(pos) == ']') {
+                        pos++;
+                        return;
+                    } else if (text.charAt(pos) == ',') {
+                        pos++;
+                        continue;
+                    }
+                    int before = pos;
+                    scanValue(name, nameStart, nameEnd);
+                    if (pos == before) {
+                        pos++;
+                    }
+                }
+            } else if (c == '"') {
+                int valueStart = pos + 1;
+                int valueEnd = skipString();
+                addParameter(name, nameStart, nameEnd, valueStart, valueEnd);
+            } else {
+                int valueStart = pos;
+                while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                    pos++;
+                }
+                addParameter(name, nameStart, nameEnd, valueStart, pos);
+            }
+        }
+
+        private void addParameter(String name, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            if (name != null) {
+                parameters.add(new Parameter(IParameter.PARAM_JSON, name, text.substring(valueStart, valueEnd),
+                        nameStart, nameEnd, valueStart, valueEnd));
+            }
+        }
+
+        /**
+         * @return The index of the closing quote; pos is left just past it.
+         */
+        private int skipString() {
+            pos++;
+            while (pos < text.length() && text.charAt(pos) != '"') {
+                pos += text.charAt(pos) == '\\' ? 2 : 1;
+            }
+            int end = Math.min(pos, text.length());
+            pos++;
+            return end;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+
+    private static class ResponseInfo implements IResponseInfo {
+        private final List<String> headers = new ArrayList<>();
+        private final int bodyOffset;
+        private final short statusCode;
+        private final String statedMimeType;
+
+        ResponseInfo(byte[] response) {
+            String message = new String(response, StandardCharsets.ISO_8859_1);
+            bodyOffset = parseHeaders(message, headers);
+            short status = 0;
+            if (!headers.isEmpty()) {
+                String[] statusLine = headers.get(0).split(" ", 3);
+                try {
+                    status = statusLine.length > 1 ? Short.parseShort(statusLine[1]) : 0;
+                } catch (NumberFormatException e) {
+                    // leave as 0
+                }
+            }
+            statusCode = status;
+            String contentType = getHeader(headers, "Content-Type");
+            statedMimeType = contentType == null ? "" : mimeType(contentType.toLowerCase());
+        }
+
+        private static String mimeType(String contentType) {
+            if (contentType.contains("html")) {
+                return "HTML";
+            } else if (contentType.contains("json")) {
+                return "JSON";
+            } else if (contentType.contains("javascript")) {
+                return "script";
+            } else if (contentType.contains("xml")) {
+                return "XML";
+            } else if (contentType.contains("css")) {
+                return "CSS";
+            } else if (contentType.startsWith("image/")) {
+                return "image";
+            } else if (contentType.startsWith("text/")) {
+                return "text";
+            }
+            return "";
+        }
+
+        @Override
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        @Override
+        public int getBodyOffset() {
+            return bodyOffset;
+        }
+
+        @Override
+        public short getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public List<ICookie> getCookies() {
+            List<ICookie> cookies = new ArrayList<>();
+            for (int i = 1; i < headers.size(); i++) {
+                String header = headers.get(i);
+                if (header.regionMatches(true, 0, "Set-Cookie:", 0, 11)) {
+                    String[] attributes = header.substring(11).split(";");
+                    int equals = attributes[0].indexOf('=');
+                    if (equals > 0) {
+                        String domain = null;
+                        String path = null;
+                        for (int a = 1; a < attributes.length; a++) {
+                            String attribute = attributes[a].trim();
+                            if (attribute.regionMatches(true, 0, "domain=", 0, 7)) {
+                                domain = attribute.substring(7);
+                            } else if (attribute.regionMatches(true, 0, "path=", 0, 5)) {
+                                path = attribute.substring(5);
+                            }
+                        }
+                        cookies.add(new Cookie(attributes[0].substring(0, equals).trim(),
+                                attributes[0].substring(equals + 1).trim(), domain, path));
+                    }
+                }
+            }
+            return Collections.unmodifiableList(cookies);
+        }
+
+        @Override
+        public String getStatedMimeType() {
+            return statedMimeType;
+        }
+
+        @Override
+        public String getInferredMimeType() {
+            return statedMimeType;
+        }
+    }
+
+    private static class Cookie implements ICookie {
+        private final String name;
+        private final String value;
+        private final String domain;
+        private final String path;
+
+        Cookie(String name, String value, String domain, String path) {
+            this.name = name;
+            this.value = value;
+            this.domain = domain;
+            this.path = path;
+        }
+
+        @Override
+        public String getDomain() {
+            return domain;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public java.util.Date getExpiration() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+    }
+}
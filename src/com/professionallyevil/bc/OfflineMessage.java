@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+
+/**
+ * A plain in-memory IHttpRequestResponse, used for proxy history loaded from a file and for synthetic traffic.
+ */
+class OfflineMessage implements IHttpRequestResponse {
+    private byte[] request;
+    private byte[] response;
+    private String comment;
+    private String highlight;
+    private IHttpService httpService;
+
+    OfflineMessage(byte[] request, byte[] response) {
+        this(null, request, response);
+    }
+
+    OfflineMessage(IHttpService httpService, byte[] request, byte[] response) {
+        this.httpService = httpService;
+        this.request = request;
+        this.response = response;
+    }
+
+    @Override
+    public byte[] getRequest() {
+        return request;
+    }
+
+    @Override
+    public void setRequest(byte[] request) {
+        this.request = request;
+    }
+
+    @Override
+    public byte[] getResponse() {
+        return response;
+    }
+
+    @Override
+    public void setResponse(byte[] response) {
+        this.response = response;
+    }
+
+    @Override
+    public String getComment() {
+        return comment;
+    }
+
+    @Override
+    public void setComment(String comment) {
+        this.comment = comment;
+    }
+
+    @Override
+    public String getHighlight() {
+        return highlight;
+    }
+
+    @Override
+    public void setHighlight(String highlight) {
+        this.highlight = highlight;
+    }
+
+    @Override
+    public IHttpService getHttpService() {
+        return httpService;
+    }
+
+    @Override
+    public void setHttpService(IHttpService httpService) {
+        this.httpService = httpService;
+    }
+}
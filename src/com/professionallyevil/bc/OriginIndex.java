@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers where values were issued by the server, so that finding the origin of a value is a lookup rather than a
+ * scan of the proxy history.  Cookie origins (every response that set a given name and value) are recorded while
+ * messages are processed, including by live analysis.  Other values are mapped to the first in-scope response whose
+ * body contained them, as found by the reflection pass of a full analysis.
+ * Updates come from one thread at a time; readers on other threads always see complete posting lists.
+ */
+class OriginIndex {
+    private static final int[] NO_ORIGINS = new int[0];
+
+    private final MessageTable messages;
+    private final ConcurrentHashMap<String, int[]> cookieOrigins = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, IHttpRequestResponse> valueOrigins = new ConcurrentHashMap<>();
+
+    /**
+     * @param messages The messages that ordinals recorded in this index refer to.
+     */
+    OriginIndex(MessageTable messages) {
+        this.messages = messages;
+    }
+
+    /**
+     * Record a cookie set by a response.
+     * @param messageOrdinal The position of the response's message in the MessageTable.
+     */
+    void addCookie(String name, String value, int messageOrdinal) {
+        addCookie(key(name, value), messageOrdinal);
+    }
+
+    private void addCookie(String key, int messageOrdinal) {
+        int[] existing = cookieOrigins.get(key);
+        if (existing == null) {
+            cookieOrigins.put(key, new int[]{messageOrdinal});
+        } else if (existing[existing.length - 1] != messageOrdinal) {
+            // copied rather than appended in place so that readers never see a half-updated list
+            int[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = messageOrdinal;
+            cookieOrigins.put(key, updated);
+        }
+    }
+
+    /**
+     * Record that a value was found in a response body.  Only the first response recorded for a value is kept.
+     */
+    void addValueOrigin(String value, IHttpRequestResponse message) {
+        valueOrigins.putIfAbsent(value, message);
+    }
+
+    /**
+     * @return The ordinals of every response that set the cookie to this value, in history order.
+     */
+    int[] getCookieOrigins(String name, String value) {
+        int[] origins = cookieOrigins.get(key(name, value));
+        return origins == null ? NO_ORIGINS : origins;
+    }
+
+    /**
+     * @return The first response that set the cookie to this value, or null if none did.
+     */
+    IHttpRequestResponse getCookieOrigin(String name, String value) {
+        int[] origins = getCookieOrigins(name, value);
+        return origins.length == 0 ? null : messages.get(origins[0]);
+    }
+
+    /**
+     * @return The first response whose body contained the value, or null if it was never seen in a response.
+     */
+    IHttpRequestResponse getValueOrigin(String value) {
+        return valueOrigins.get(value);
+    }
+
+    /**
+     * Fold in the index of a later shard.  Its messages must come after the ones in this index.
+     */
+    void merge(OriginIndex other) {
+        for (Map.Entry<String, int[]> entry : other.cookieOrigins.entrySet()) {
+            for (int messageOrdinal : entry.getValue()) {
+                addCookie(entry.getKey(), messageOrdinal);
+            }
+        }
+        for (Map.Entry<String, IHttpRequestResponse> entry : other.valueOrigins.entrySet()) {
+            addValueOrigin(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write the index to a snapshot.
+     */
+    void write(ResultsSnapshot.Output out) throws IOException {
+        out.writeVarInt(cookieOrigins.size());
+        for (Map.Entry<String, int[]> entry : cookieOrigins.entrySet()) {
+            out.writeString(entry.getKey());
+            int[] origins = entry.getValue();
+            out.writeVarInt(origins.length);
+            int last = 0;
+            for (int messageOrdinal : origins) {
+                out.writeVarInt(messageOrdinal - last);
+                last = messageOrdinal;
+            }
+        }
+        out.writeVarInt(valueOrigins.size());
+        for (Map.Entry<String, IHttpRequestResponse> entry : valueOrigins.entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeMessage(entry.getValue());
+        }
+    }
+
+    /**
+     * Add the entries written by write().
+     */
+    void read(ResultsSnapshot.Input in) throws IOException {
+        for (int i = in.readVarInt(); i > 0; i--) {
+            String key = in.readString();
+            int[] origins = new int[in.readVarInt()];
+            int last = 0;
+            for (int j = 0; j < origins.length; j++) {
+                last += in.readVarInt();
+                origins[j] = last;
+            }
+            cookieOrigins.put(key, origins);
+        }
+        for (int i = in.readVarInt(); i > 0; i--) {
+            String value = in.readString();
+            IHttpRequestResponse message = in.readMessage();
+            if (message != null) {
+                valueOrigins.put(value, message);
+            }
+        }
+    }
+
+    private static String key(String name, String value) {
+        return name + '=' + value;
+    }
+}
@@ -30,9 +30,20 @@ public class OriginSearcher extends SwingWorker<IHttpRequestResponse, Object> {
     IParameter param;
     WorkerStatusListener statusListener;
     IBurpExtenderCallbacks callbacks;
+    OriginIndex originIndex;
 
     OriginSearcher(IParameter param, IBurpExtenderCallbacks callbacks, WorkerStatusListener listener){
+        this(param, null, callbacks, listener);
+    }
+
+    /**
+     * @param originIndex The index of the current analysis results, which is checked before scanning the proxy
+     *                    history.  May be null.
+     */
+    OriginSearcher(IParameter param, OriginIndex originIndex, IBurpExtenderCallbacks callbacks,
+                   WorkerStatusListener listener){
         this.param = param;
+        this.originIndex = originIndex;
         this.statusListener = listener;
         this.callbacks = callbacks;
     }
@@ -42,6 +53,14 @@ public class OriginSearcher extends SwingWorker<IHttpRequestResponse, Object> {
         publish(0);
         String cookieName = param.getName();
         publish("Looking for "+cookieName+"...");
+        if (originIndex != null) {
+            IHttpRequestResponse origin = originIndex.getCookieOrigin(cookieName, param.getValue());
+            if (origin != null) {
+                publish(100);
+                return origin;
+            }
+        }
+        // not in the analyzed messages, so it may only be in history that arrived since
         IHttpRequestResponse[] messages = callbacks.getProxyHistory();
         for (int i = 0; i < messages.length; i++) {
             publish(100 * i / messages.length);
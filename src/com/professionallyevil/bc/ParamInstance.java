@@ -21,7 +21,8 @@ import burp.IHttpRequestResponse;
 import burp.IParameter;
 
 /**
- * Wrapper for IParam  so it can be used as a key in a Set properly
+ * A single observation of a parameter, so it can be used as a key in a Set properly.  The data itself lives in a
+ * ParamInstanceStore; this is just a view of one row.
  **/
 public class ParamInstance implements IParameter, Comparable<ParamInstance> {
     enum Format {
@@ -69,123 +70,155 @@ public class ParamInstance implements IParameter, Comparable<ParamInstance> {
         }
     }
 
-    IParameter wrappedParam;
-    IHttpRequestResponse message;
-    int hashCode = 0;
-    Format format = Format.UNKNOWN;
+    final ParamInstanceStore store;
+    final int index;
+
+    /**
+     * Create a view of one instance held in a ParamInstanceStore.  Views are cheap and are created on demand, so two
+     * views of the same instance are different objects that compare as equal.
+     * @param store The store holding the instance.
+     * @param index The index of the instance within the store.
+     */
+    ParamInstance(ParamInstanceStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
 
     public String getDecodedValue() {
+        String decodedValue = store.getDecodedValue(index);
         return decodedValue==null?getValue():decodedValue;
     }
 
     public void setDecodedValue(String decodedValue) {
-        this.decodedValue = decodedValue;
-    }
-
-    String decodedValue;
-
-
-    public ParamInstance(IParameter param, IHttpRequestResponse message) {
-        this.wrappedParam = param;
-        this.message = message;
+        store.setDecodedValue(index, decodedValue);
     }
 
-
     @Override
     public byte getType() {
-        return wrappedParam.getType();
+        return store.getType();
     }
 
     @Override
     public String getName() {
-        return wrappedParam.getName();
+        return store.getName();
     }
 
     @Override
     public String getValue() {
-        String value = wrappedParam.getValue();
+        String value = store.getValue(index);
         return value.isEmpty()?"[EMPTY]":value;
     }
 
     @Override
     public int getNameStart() {
-        return wrappedParam.getNameStart();
+        return store.getNameStart(index);
     }
 
     @Override
     public int getNameEnd() {
-        return wrappedParam.getNameEnd();
+        return store.getNameEnd(index);
     }
 
     @Override
     public int getValueStart() {
-        return wrappedParam.getValueStart();
+        return store.getValueStart(index);
     }
 
     @Override
     public int getValueEnd() {
-        return wrappedParam.getValueEnd();
+        return store.getValueEnd(index);
     }
 
     public IHttpRequestResponse getMessage() {
-        return message;
+        return store.getMessage(index);
     }
 
+    /**
+     * @return The position of this instance's message in the MessageTable (normally the proxy history index).
+     */
+    public int getMessageOrdinal() {
+        return store.getMessageOrdinal(index);
+    }
+
+    /**
+     * @return A 64-bit hash of the type, name, value and offsets, computed once when the instance was recorded.
+     */
+    long getFingerprint() {
+        return store.getFingerprint(index);
+    }
+
+    /**
+     * Two instances are equal if they are the same parameter, with the same value at the same position, in the same
+     * message.  The fingerprint and ordinal are compared first so that the full comparison only runs on a match.
+     */
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof ParamInstance &&
-                this.message.equals(((ParamInstance) obj).getMessage()) &&
-                this.getType() == ((ParamInstance) obj).getType() &&
-                this.getName().equals(((ParamInstance) obj).getName()) &&
-                this.getValue().equals(((ParamInstance) obj).getValue()) &&
-                this.getValueStart() == ((ParamInstance) obj).getValueStart() &&
-                this.getValueEnd() == ((ParamInstance) obj).getValueEnd() &&
-                this.getNameStart() == ((ParamInstance) obj).getNameStart() &&
-                this.getNameEnd() == ((ParamInstance) obj).getNameEnd();
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof ParamInstance)) {
+            return false;
+        }
+        ParamInstance other = (ParamInstance) obj;
+        if (store == other.store && index == other.index) {
+            return true;
+        }
+        return getFingerprint() == other.getFingerprint() &&
+                getMessageOrdinal() == other.getMessageOrdinal() &&
+                store.getMessages() == other.store.getMessages() &&
+                compareContents(other) == 0;
     }
 
     @Override
     public int hashCode() {
-        StringBuilder buf = new StringBuilder();
-        if (this.hashCode == 0) {
-            buf.append(ParamInstance.class)
-                    .append(':')
-                    .append(getMessage().toString())
-                    .append(':')
-                    .append(getType())
-                    .append(':')
-                    .append(getName())
-                    .append(':')
-                    .append(getValue())
-                    .append(':')
-                    .append(getValueStart())
-                    .append(':')
-                    .append(getValueEnd())
-                    .append(':')
-                    .append(getNameStart())
-                    .append(':')
-                    .append(getNameEnd());
-            this.hashCode = buf.hashCode();
-        }
-        return hashCode;
+        long h = getFingerprint() ^ (getMessageOrdinal() * 0x9E3779B97F4A7C15L);
+        return (int) (h ^ (h >>> 32));
     }
 
-
+    /**
+     * Orders by fingerprint, then message ordinal.  This is not a meaningful order for display, but it is cheap,
+     * stable and consistent with equals (instances from different MessageTables should not be mixed in one set).
+     */
     @Override
     public int compareTo(ParamInstance o) {
-        if(this.hashCode() == o.hashCode()) {
-            return 0;
-        } else {
-            return (this.getName() + ':' + this.getValue()).compareTo(o.getName() + ':' + o.getValue())==-1?-1:1;
+        int result = Long.compare(getFingerprint(), o.getFingerprint());
+        if (result == 0) {
+            result = Integer.compare(getMessageOrdinal(), o.getMessageOrdinal());
+        }
+        if (result == 0 && !(store == o.store && index == o.index)) {
+            result = compareContents(o);  // fingerprint collision
+        }
+        return result;
+    }
+
+    private int compareContents(ParamInstance o) {
+        int result = Byte.compare(getType(), o.getType());
+        if (result == 0) {
+            result = getName().compareTo(o.getName());
+        }
+        if (result == 0) {
+            result = store.getValue(index).compareTo(o.store.getValue(o.index));
+        }
+        if (result == 0) {
+            result = Integer.compare(getNameStart(), o.getNameStart());
+        }
+        if (result == 0) {
+            result = Integer.compare(getNameEnd(), o.getNameEnd());
+        }
+        if (result == 0) {
+            result = Integer.compare(getValueStart(), o.getValueStart());
+        }
+        if (result == 0) {
+            result = Integer.compare(getValueEnd(), o.getValueEnd());
         }
+        return result;
     }
 
     public Format getFormat(){
-        return format;
+        return store.getFormat(index);
     }
 
     public void setFormat(Format f){
-        format = f;
+        store.setFormat(index, f);
     }
 
     public String describe() {
@@ -194,7 +227,7 @@ public class ParamInstance implements IParameter, Comparable<ParamInstance> {
         buf.append("\nType: ");
         appendType(buf);
         buf.append("\nValue: ").append(getValue());
-        if(!getValue().equals(decodedValue)){
+        if(!getValue().equals(getDecodedValue())){
             buf.append("\nDecoded Value: ").append(getDecodedValue());
         }
         buf.append("\nFormat: ").append(getFormat().getTitle());
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Column-oriented storage for every observed instance of one parameter.  Instead of an object per observation, each
+ * instance is a row across a handful of primitive arrays (message ordinal, value id, offsets, format) and values are
+ * interned in a per-parameter dictionary, so a cookie seen 50,000 times with the same value stores that value once.
+ * ParamInstance objects are lightweight views created on demand by view().
+ * <p>
+ * Each row also gets a 64-bit fingerprint of its type, name, value and offsets when it is added.  Together with the
+ * message ordinal this gives ParamInstance a cheap, allocation-free equals/hashCode/compareTo.
+ */
+class ParamInstanceStore {
+    private static final int INITIAL_CAPACITY = 4;
+    private static final ParamInstance.Format[] FORMATS = ParamInstance.Format.values();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MessageTable messages;
+    private final String name;
+    private final byte type;
+    private final long nameHash;
+
+    private int size = 0;
+    private int[] messageOrdinals = new int[INITIAL_CAPACITY];
+    private int[] valueIds = new int[INITIAL_CAPACITY];
+    private int[] decodedIds = new int[INITIAL_CAPACITY];
+    private int[] nameStarts = new int[INITIAL_CAPACITY];
+    private int[] nameEnds = new int[INITIAL_CAPACITY];
+    private int[] valueStarts = new int[INITIAL_CAPACITY];
+    private int[] valueEnds = new int[INITIAL_CAPACITY];
+    private byte[] formats = new byte[INITIAL_CAPACITY];
+    private long[] fingerprints = new long[INITIAL_CAPACITY];
+    private List<ParamInstance> parents;  // only used for JSON parts
+
+    // value dictionary: raw and decoded values share ids
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> dictionaryIds = new HashMap<>();
+    private long[] valueHashes = new long[INITIAL_CAPACITY];
+    private final BitSet seenAsRawValue = new BitSet();
+    private int[] uniqueInstances = new int[INITIAL_CAPACITY];
+    private int uniqueCount = 0;
+
+    ParamInstanceStore(String name, byte type, MessageTable messages) {
+        this.name = name;
+        this.type = type;
+        this.messages = messages;
+        this.nameHash = hash(mix(FNV_OFFSET_BASIS, type), name);
+        if (type == JSONParamInstance.TYPE) {
+            parents = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Record a new instance.
+     * @return The index of the new instance.
+     */
+    int add(int messageOrdinal, String value, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        ensureCapacity(size + 1);
+        int valueId = intern(value);
+        messageOrdinals[size] = messageOrdinal;
+        valueIds[size] = valueId;
+        decodedIds[size] = -1;
+        nameStarts[size] = nameStart;
+        nameEnds[size] = nameEnd;
+        valueStarts[size] = valueStart;
+        valueEnds[size] = valueEnd;
+        formats[size] = (byte) ParamInstance.Format.UNKNOWN.ordinal();
+        indexRow(size);
+        return size++;
+    }
+
+    // fingerprint a row whose columns have been filled in, and note whether it is the first with its value
+    private void indexRow(int index) {
+        int valueId = valueIds[index];
+        long fingerprint = nameHash ^ valueHashes[valueId];
+        fingerprint = mix(fingerprint, nameStarts[index]);
+        fingerprint = mix(fingerprint, nameEnds[index]);
+        fingerprint = mix(fingerprint, valueStarts[index]);
+        fingerprints[index] = mix(fingerprint, valueEnds[index]);
+        if (!seenAsRawValue.get(valueId)) {
+            seenAsRawValue.set(valueId);
+            if (uniqueCount == uniqueInstances.length) {
+                uniqueInstances = Arrays.copyOf(uniqueInstances, uniqueCount * 2);
+            }
+            uniqueInstances[uniqueCount++] = index;
+        }
+    }
+
+    /**
+     * Record a value extracted from a JSON object.  If the parent's value is the JSON text exactly as it appears in the
+     * request, the part's own offsets within it are used; otherwise (e.g. the JSON was encoded) it shares the parent's.
+     */
+    int addJSONPart(JSONParamParser.Part part, ParamInstance parent) {
+        int index;
+        int base = parent.getValueStart();
+        String parentValue = parent.getValue();
+        if (parent.getDecodedValue().equals(parentValue) && parent.getValueEnd() - base == parentValue.length()) {
+            index = add(parent.getMessageOrdinal(), part.getValue(), base + part.getNameStart(),
+                    base + part.getNameEnd(), base + part.getValueStart(), base + part.getValueEnd());
+        } else {
+            index = add(parent.getMessageOrdinal(), part.getValue(), parent.getNameStart(), parent.getNameEnd(),
+                    parent.getValueStart(), parent.getValueEnd());
+        }
+        parents.add(parent);
+        return index;
+    }
+
+    /**
+     * Append every instance of another store for the same parameter.
+     * @return The index that the other store's first instance was given.
+     */
+    int addAll(ParamInstanceStore other) {
+        int offset = size;
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            add(other.messageOrdinals[i], other.dictionary.get(other.valueIds[i]), other.nameStarts[i],
+                    other.nameEnds[i], other.valueStarts[i], other.valueEnds[i]);
+            int index = offset + i;
+            decodedIds[index] = other.decodedIds[i] < 0 ? -1 : intern(other.dictionary.get(other.decodedIds[i]));
+            formats[index] = other.formats[i];
+        }
+        if (parents != null) {
+            parents.addAll(other.parents);
+        }
+        return offset;
+    }
+
+    /**
+     * Write the dictionary and columns to a snapshot.  Ordinals and offsets are written as differences, which are
+     * small for instances seen in history order.  Fingerprints and unique values are recomputed when read.
+     */
+    void write(ResultsSnapshot.Output out) throws IOException {
+        out.writeVarInt(dictionary.size());
+        for (String value : dictionary) {
+            out.writeString(value);
+        }
+        out.writeVarInt(size);
+        int lastOrdinal = 0;
+        for (int i = 0; i < size; i++) {
+            out.writeSignedVarInt(messageOrdinals[i] - lastOrdinal);
+            lastOrdinal = messageOrdinals[i];
+            out.writeVarInt(valueIds[i]);
+            out.writeVarInt(decodedIds[i] + 1);
+            out.writeSignedVarInt(nameStarts[i]);
+            out.writeSignedVarInt(nameEnds[i] - nameStarts[i]);
+            out.writeSignedVarInt(valueStarts[i] - nameEnds[i]);
+            out.writeSignedVarInt(valueEnds[i] - valueStarts[i]);
+            out.writeByte(formats[i]);
+            if (parents != null) {
+                ParamInstance parent = parents.get(i);
+                out.writeByte(parent.store.type);
+                out.writeString(parent.store.name);
+                out.writeVarInt(parent.index);
+            }
+        }
+    }
+
+    /**
+     * Read what write() wrote.
+     * @param results The results being read, which must already hold the parents of any JSON parts.
+     */
+    static ParamInstanceStore read(ResultsSnapshot.Input in, String name, byte type, CorrelationShard results)
+            throws IOException {
+        ParamInstanceStore store = new ParamInstanceStore(name, type, in.getMessages());
+        for (int i = in.readVarInt(); i > 0; i--) {
+            store.intern(in.readString());
+        }
+        int size = in.readVarInt();
+        store.ensureCapacity(size);
+        int ordinal = 0;
+        for (int i = 0; i < size; i++) {
+            ordinal += in.readSignedVarInt();
+            store.messageOrdinals[i] = in.historyOrdinal(ordinal);
+            store.valueIds[i] = in.readVarInt();
+            store.decodedIds[i] = in.readVarInt() - 1;
+            store.nameStarts[i] = in.readSignedVarInt();
+            store.nameEnds[i] = store.nameStarts[i] + in.readSignedVarInt();
+            store.valueStarts[i] = store.nameEnds[i] + in.readSignedVarInt();
+            store.valueEnds[i] = store.valueStarts[i] + in.readSignedVarInt();
+            store.formats[i] = (byte) in.readByte();
+            if (store.parents != null) {
+                byte parentType = (byte) in.readByte();
+                CorrelatedParam parent = results.getParameter(parentType, in.readString());
+                if (parent == null) {
+                    throw new IOException("The snapshot refers to a missing parameter.");
+                }
+                store.parents.add(parent.instances.view(in.readVarInt()));
+            }
+            store.indexRow(i);
+        }
+        store.size = size;
+        return store;
+    }
+
+    ParamInstance view(int index) {
+        switch (type) {
+            case RestParamInstance.TYPE:
+                return new RestParamInstance(this, index);
+            case JSONParamInstance.TYPE:
+                return new JSONParamInstance(this, index);
+            default:
+                return new ParamInstance(this, index);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int uniqueCount() {
+        return uniqueCount;
+    }
+
+    /**
+     * @param n Position in first-seen order of a unique value.
+     * @return The index of the first instance that had that value.
+     */
+    int uniqueInstance(int n) {
+        return uniqueInstances[n];
+    }
+
+    String getName() {
+        return name;
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    String getValue(int index) {
+        return dictionary.get(valueIds[index]);
+    }
+
+    int getValueId(int index) {
+        return valueIds[index];
+    }
+
+    String getDecodedValue(int index) {
+        int id = decodedIds[index];
+        return id < 0 ? null : dictionary.get(id);
+    }
+
+    void setDecodedValue(int index, String decodedValue) {
+        decodedIds[index] = decodedValue == null ? -1 : intern(decodedValue);
+    }
+
+    ParamInstance.Format getFormat(int index) {
+        return FORMATS[formats[index]];
+    }
+
+    void setFormat(int index, ParamInstance.Format format) {
+        formats[index] = (byte) format.ordinal();
+    }
+
+    long getFingerprint(int index) {
+        return fingerprints[index];
+    }
+
+    int getMessageOrdinal(int index) {
+        return messageOrdinals[index];
+    }
+
+    IHttpRequestResponse getMessage(int index) {
+        return messages.get(messageOrdinals[index]);
+    }
+
+    MessageTable getMessages() {
+        return messages;
+    }
+
+    int getNameStart(int index) {
+        return nameStarts[index];
+    }
+
+    int getNameEnd(int index) {
+        return nameEnds[index];
+    }
+
+    int getValueStart(int index) {
+        return valueStarts[index];
+    }
+
+    int getValueEnd(int index) {
+        return valueEnds[index];
+    }
+
+    ParamInstance getParent(int index) {
+        return parents == null ? null : parents.get(index);
+    }
+
+    private int intern(String value) {
+        Integer id = dictionaryIds.get(value);
+        if (id == null) {
+            id = dictionary.size();
+            if (id == valueHashes.length) {
+                valueHashes = Arrays.copyOf(valueHashes, id * 2);
+            }
+            // rotated so that swapping the name and value does not give the same fingerprint
+            valueHashes[id] = Long.rotateLeft(hash(FNV_OFFSET_BASIS, value), 29);
+            dictionary.add(value);
+            dictionaryIds.put(value, id);
+        }
+        return id;
+    }
+
+    private static long hash(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h, int v) {
+        h = (h ^ v) * FNV_PRIME;
+        return h ^ (h >>> 31);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > messageOrdinals.length) {
+            int newCapacity = Math.max(capacity, messageOrdinals.length * 2);
+            messageOrdinals = Arrays.copyOf(messageOrdinals, newCapacity);
+            valueIds = Arrays.copyOf(valueIds, newCapacity);
+            decodedIds = Arrays.copyOf(decodedIds, newCapacity);
+            nameStarts = Arrays.copyOf(nameStarts, newCapacity);
+            nameEnds = Arrays.copyOf(nameEnds, newCapacity);
+            valueStarts = Arrays.copyOf(valueStarts, newCapacity);
+            valueEnds = Arrays.copyOf(valueEnds, newCapacity);
+            formats = Arrays.copyOf(formats, newCapacity);
+            fingerprints = Arrays.copyOf(fingerprints, newCapacity);
+        }
+    }
+}
@@ -34,7 +34,7 @@ public class ParamListModel extends AbstractListModel<String> {
         int originalLength = params.length;
         this.correlatedParam = param;
         this.showDecoded = showDecodedValues;
-        this.params = correlatedParam.getParamInstances(withDuplicateValues).toArray(new ParamInstance[correlatedParam.getParamInstances(withDuplicateValues).size()]);
+        this.params = correlatedParam.getParamInstanceArray(withDuplicateValues);
         fireContentsChanged(this, 0, Math.max(params.length, originalLength));
     }
 
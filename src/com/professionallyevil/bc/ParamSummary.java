@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+/**
+ * An immutable snapshot of one row of the parameters table.  Summaries are taken off the EDT (when an analysis
+ * finishes, or on the live analysis thread) so that painting and sorting the table never touch the instances of a
+ * parameter.  Only the Interesting flag, which the user can change, is read from the parameter itself.
+ */
+class ParamSummary {
+    private final CorrelatedParam param;
+    private final String name;
+    private final String typeName;
+    private final int requests;
+    private final int uniqueURLs;
+    private final int uniqueValues;
+    private final String format;
+    private final int reflectPercent;
+    private final String value;
+    private final String decodedValue;
+
+    private ParamSummary(CorrelatedParam param) {
+        this.param = param;
+        ParamInstance sample = param.getSample();
+        name = sample.getName();
+        typeName = sample.getTypeName();
+        requests = param.getInstanceCount(true);
+        uniqueURLs = param.getUniqueURLs().size();
+        uniqueValues = param.getInstanceCount(false);
+        format = param.getFormatString();
+        int count = param.getReflectedCount();
+        reflectPercent = count == 0 ? 0 : 100 * count / requests;
+        value = sample.getValue();
+        decodedValue = sample.getDecodedValue();
+    }
+
+    /**
+     * @param param A parameter with at least one instance.  It may still be receiving instances on another thread.
+     */
+    static ParamSummary of(CorrelatedParam param) {
+        synchronized (param) {
+            return new ParamSummary(param);
+        }
+    }
+
+    CorrelatedParam getParam() {
+        return param;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getTypeName() {
+        return typeName;
+    }
+
+    int getRequests() {
+        return requests;
+    }
+
+    int getUniqueURLs() {
+        return uniqueURLs;
+    }
+
+    int getUniqueValues() {
+        return uniqueValues;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    int getReflectPercent() {
+        return reflectPercent;
+    }
+
+    boolean isInteresting() {
+        return param.isInteresting();
+    }
+
+    boolean isDecodeable() {
+        return decodedValue != null && !decodedValue.equals(value);
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    String getDecodedValue() {
+        return decodedValue;
+    }
+}
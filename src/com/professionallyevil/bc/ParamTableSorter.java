@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sorts and filters the parameters table on a background thread, so that large tables stay responsive.  The view is
+ * kept as int arrays mapping view rows to model rows and back.  Until a sort finishes the previous order is shown,
+ * with rows added since then at the end; changes that arrive while a sort is running are picked up by one more sort
+ * when it finishes.  A finished sort is still shown if rows were only added or updated meanwhile (so a busy proxy
+ * doesn't keep the table unsorted), and the events of one model change are handled by a single sort.  All methods
+ * must be called on the EDT.
+ */
+class ParamTableSorter extends RowSorter<ParametersTableModel> {
+    private static final int MAX_SORT_KEYS = 3;
+
+    private final ParametersTableModel model;
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private String filter = "";
+    private int[] viewToModel = null;  // null: every model row, in model order
+    private int[] modelToView = null;
+    private int generation = 0;       // bumped on every change
+    private int orderGeneration = 0;  // bumped when a finished sort no longer applies: new keys, filter or model rows
+    private boolean updateQueued = false;
+    private SortWorker worker = null;
+
+    ParamTableSorter(ParametersTableModel model) {
+        this.model = model;
+    }
+
+    @Override
+    public ParametersTableModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column &&
+                sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        List<SortKey> keys = new ArrayList<>();
+        keys.add(new SortKey(column, order));
+        for (SortKey key : sortKeys) {
+            if (key.getColumn() != column && keys.size() < MAX_SORT_KEYS) {
+                keys.add(key);
+            }
+        }
+        setSortKeys(keys);
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> newKeys = new ArrayList<>();
+        if (keys != null) {
+            for (SortKey key : keys) {
+                if (key.getSortOrder() != SortOrder.UNSORTED) {
+                    newKeys.add(key);
+                }
+            }
+        }
+        if (!newKeys.equals(sortKeys)) {
+            sortKeys = Collections.unmodifiableList(newKeys);
+            fireSortOrderChanged();
+            orderGeneration++;
+            resort();
+        }
+    }
+
+    /**
+     * Only show parameters whose name, type, format or example value contains the text (ignoring case).
+     * @param text The text to look for; empty to show every parameter.
+     */
+    void setFilter(String text) {
+        String newFilter = text == null ? "" : text.trim().toLowerCase();
+        if (!newFilter.equals(filter)) {
+            filter = newFilter;
+            orderGeneration++;
+            resort();
+        }
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("Invalid index");
+            }
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (modelToView == null) {
+            if (index < 0 || index >= model.getRowCount()) {
+                throw new IndexOutOfBoundsException("Invalid index");
+            }
+            return index;
+        }
+        return modelToView[index];
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel == null ? model.getRowCount() : viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        fireSortOrderChanged();
+        allRowsChanged();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        orderGeneration++;
+        if (viewToModel != null) {
+            int[] previous = viewToModel;
+            viewToModel = null;
+            modelToView = null;
+            fireRowSorterChanged(previous);
+        }
+        resort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        if (viewToModel != null) {
+            // show the new rows at the end until they can be sorted in
+            int[] previous = viewToModel;
+            int added = endRow - firstRow + 1;
+            viewToModel = new int[previous.length + added];
+            System.arraycopy(previous, 0, viewToModel, 0, previous.length);
+            int[] newModelToView = new int[model.getRowCount()];
+            System.arraycopy(modelToView, 0, newModelToView, 0, Math.min(modelToView.length, firstRow));
+            for (int i = 0; i < added; i++) {
+                viewToModel[previous.length + i] = firstRow + i;
+                newModelToView[firstRow + i] = previous.length + i;
+            }
+            modelToView = newModelToView;
+            fireRowSorterChanged(previous);
+        }
+        resort();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        allRowsChanged();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        resort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        resort();
+    }
+
+    private void resort() {
+        generation++;
+        if (!updateQueued) {
+            // wait for the rest of the events from the same change
+            updateQueued = true;
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    updateQueued = false;
+                    update();
+                }
+            });
+        }
+    }
+
+    private void update() {
+        if (sortKeys.isEmpty() && filter.isEmpty()) {
+            if (viewToModel != null) {
+                int[] previous = viewToModel;
+                viewToModel = null;
+                modelToView = null;
+                fireRowSorterChanged(previous);
+            }
+        } else if (worker == null) {
+            worker = new SortWorker(model.getSummaries(), sortKeys, filter, model.isShowDecodedValues(), generation,
+                    orderGeneration);
+            worker.execute();
+        }
+    }
+
+    private void finished(SortWorker finishedWorker, int[] rows) {
+        worker = null;
+        int rowCount = model.getRowCount();
+        int sortedCount = finishedWorker.summaries.length;
+        if (rows != null && finishedWorker.orderGeneration == orderGeneration && sortedCount <= rowCount) {
+            if (sortedCount < rowCount) {
+                // rows added while sorting go at the end until the next sort
+                int filtered = rows.length;
+                rows = Arrays.copyOf(rows, filtered + rowCount - sortedCount);
+                for (int i = filtered; i < rows.length; i++) {
+                    rows[i] = sortedCount + i - filtered;
+                }
+            }
+            int[] previous = viewToModel;
+            viewToModel = rows;
+            modelToView = new int[model.getRowCount()];
+            Arrays.fill(modelToView, -1);
+            for (int i = 0; i < rows.length; i++) {
+                modelToView[rows[i]] = i;
+            }
+            fireRowSorterChanged(previous);
+        }
+        if (finishedWorker.generation != generation) {
+            // the table or the sort changed while sorting
+            update();
+        }
+    }
+
+    private interface RowComparator {
+        int compare(int row1, int row2);
+    }
+
+    private class SortWorker extends SwingWorker<int[], Object> {
+        private final ParamSummary[] summaries;
+        private final List<SortKey> keys;
+        private final String filter;
+        private final boolean showDecodedValues;
+        private final int generation;
+        private final int orderGeneration;
+
+        SortWorker(ParamSummary[] summaries, List<SortKey> keys, String filter, boolean showDecodedValues,
+                   int generation, int orderGeneration) {
+            this.summaries = summaries;
+            this.keys = keys;
+            this.filter = filter;
+            this.showDecodedValues = showDecodedValues;
+            this.generation = generation;
+            this.orderGeneration = orderGeneration;
+        }
+
+        @Override
+        protected int[] doInBackground() {
+            int[] rows = new int[summaries.length];
+            int count = 0;
+            for (int row = 0; row < summaries.length; row++) {
+                if (matches(summaries[row])) {
+                    rows[count++] = row;
+                }
+            }
+            if (count < rows.length) {
+                rows = Arrays.copyOf(rows, count);
+            }
+            if (!keys.isEmpty()) {
+                final RowComparator[] comparators = new RowComparator[keys.size()];
+                for (int k = 0; k < comparators.length; k++) {
+                    comparators[k] = comparator(keys.get(k));
+                }
+                sort(rows, new RowComparator() {
+                    @Override
+                    public int compare(int row1, int row2) {
+                        for (RowComparator comparator : comparators) {
+                            int result = comparator.compare(row1, row2);
+                            if (result != 0) {
+                                return result;
+                            }
+                        }
+                        return 0;
+                    }
+                });
+            }
+            return rows;
+        }
+
+        private boolean matches(ParamSummary summary) {
+            if (filter.isEmpty()) {
+                return true;
+            }
+            Object value = ParametersTableModel.getValue(summary, 9, showDecodedValues);
+            return summary.getName().toLowerCase().contains(filter) ||
+                    summary.getTypeName().toLowerCase().contains(filter) ||
+                    summary.getFormat().toLowerCase().contains(filter) ||
+                    (value != null && value.toString().toLowerCase().contains(filter));
+        }
+
+        // the column values are copied into primitive arrays first, so comparisons are plain array reads
+        private RowComparator comparator(SortKey key) {
+            final int sign = key.getSortOrder() == SortOrder.DESCENDING ? -1 : 1;
+            int column = key.getColumn();
+            Class<?> columnClass = model.getColumnClass(column);
+            if (columnClass == Integer.class || columnClass == Boolean.class) {
+                final int[] values = new int[summaries.length];
+                for (int row = 0; row < summaries.length; row++) {
+                    Object value = ParametersTableModel.getValue(summaries[row], column, showDecodedValues);
+                    values[row] = value instanceof Boolean ? ((Boolean) value ? 1 : 0) : (Integer) value;
+                }
+                return new RowComparator() {
+                    @Override
+                    public int compare(int row1, int row2) {
+                        return sign * Integer.compare(values[row1], values[row2]);
+                    }
+                };
+            } else {
+                final String[] values = new String[summaries.length];
+                for (int row = 0; row < summaries.length; row++) {
+                    Object value = ParametersTableModel.getValue(summaries[row], column, showDecodedValues);
+                    values[row] = value == null ? "" : value.toString();
+                }
+                return new RowComparator() {
+                    @Override
+                    public int compare(int row1, int row2) {
+                        int result = values[row1].compareToIgnoreCase(values[row2]);
+                        return sign * (result != 0 ? result : values[row1].compareTo(values[row2]));
+                    }
+                };
+            }
+        }
+
+        @Override
+        protected void done() {
+            int[] rows = null;
+            try {
+                rows = get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+            finished(this, rows);
+        }
+    }
+
+    /**
+     * A stable merge sort of row indexes, so that rows that compare equal stay in model order.
+     */
+    private static void sort(int[] rows, RowComparator comparator) {
+        mergeSort(rows.clone(), rows, 0, rows.length, comparator);
+    }
+
+    // src and dest hold the same rows on entry; the sorted rows end up in dest
+    private static void mergeSort(int[] src, int[] dest, int low, int high, RowComparator comparator) {
+        if (high - low < 7) {
+            for (int i = low + 1; i < high; i++) {
+                for (int j = i; j > low && comparator.compare(dest[j - 1], dest[j]) > 0; j--) {
+                    int swap = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = swap;
+                }
+            }
+            return;
+        }
+        int middle = (low + high) >>> 1;
+        mergeSort(dest, src, low, middle, comparator);
+        mergeSort(dest, src, middle, high, comparator);
+        if (comparator.compare(src[middle - 1], src[middle]) <= 0) {
+            System.arraycopy(src, low, dest, low, high - low);
+            return;
+        }
+        for (int i = low, p = low, q = middle; i < high; i++) {
+            if (q >= high || (p < middle && comparator.compare(src[p], src[q]) <= 0)) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+}
@@ -22,6 +22,8 @@ import com.intellij.uiDesigner.core.GridLayoutManager;
 import com.intellij.uiDesigner.core.Spacer;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.text.Caret;
@@ -37,11 +39,14 @@ import java.awt.event.MouseEvent;
 import java.io.*;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Main class for the Correlator burp extension.
  */
-public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, ClipboardOwner, IContextMenuFactory {
+public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, ClipboardOwner, IContextMenuFactory,
+        IProxyListener, IExtensionStateListener {
     private JPanel mainPanel;
     private JButton beginAnalysisButton;
     private JTextField textFieldStatus;
@@ -49,6 +54,8 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
     protected JTable parametersTable;
     private JButton clearButton;
     private JButton exportButton;
+    private JButton saveSnapshotButton;
+    private JButton loadSnapshotButton;
     private JList<String> listValues;
     private JTextArea textAreaRequest;
     private JTextArea textAreaResponse;
@@ -57,6 +64,7 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
     private JButton highlightValueButton;
     private JTextArea ignore;
     private JCheckBox showDecodedValuesCheckBox;
+    private JTextField filterField;
     private JTable cookieTable;
     private JButton saveCookieStatsButton;
     protected JTabbedPane tabPane;
@@ -65,9 +73,14 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
     private JCheckBox showEncodedValues;
     private JCheckBox showFormatPrefix;
     private JCheckBox showDuplicates;
+    private JCheckBox liveAnalysisCheckBox;
+    private JCheckBox indexHashesCheckBox;
     private IBurpExtenderCallbacks callbacks;
     private CorrelatorEngine engine = null;
+    private volatile LiveCorrelator liveCorrelator = null;
+    private CorrelationShard shownResults = null;  // the results in the table, whose indexes deep analysis shares
     private ParametersTableModel paramsTableModel = new ParametersTableModel();
+    private ParamTableSorter paramsTableSorter = new ParamTableSorter(paramsTableModel);
     private CookieStatisticsTableModel cookieStatisticsTableModel = new CookieStatisticsTableModel();
     private ParamListModel paramListModel = new ParamListModel();
     private int lastSelectedRow = -1;
@@ -80,19 +93,57 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
 
     public Paramalyzer() {
         parametersTable.setModel(paramsTableModel);
+        parametersTable.setRowSorter(paramsTableSorter);
         parametersTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                paramsTableSorter.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                paramsTableSorter.setFilter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                paramsTableSorter.setFilter(filterField.getText());
+            }
+        });
         beginAnalysisButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                paramsTableModel.setShowDecodedValues(showDecodedValuesCheckBox.isSelected());
-                paramsTableModel.clear();
-                lastSelectedRow = -1;
-                textFieldStatus.setText("Analyzing...");
-                progressBar.setIndeterminate(false);
-                progressBar.setValue(0);
-                progressBar.setStringPainted(true);
-                engine = new CorrelatorEngine(callbacks, Paramalyzer.this, ignoreEmptyCheckBox.isSelected(), ignore.getText());
-                engine.execute();
+                beginAnalysis(null);
+            }
+        });
+
+        saveSnapshotButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (shownResults == null || (engine != null && !engine.isDone())) {
+                    setStatus("There are no results to save yet.");
+                    return;
+                }
+                JFileChooser chooser = new JFileChooser();
+                if (chooser.showSaveDialog(mainPanel) == JFileChooser.APPROVE_OPTION) {
+                    new SnapshotSaver(shownResults, chooser.getSelectedFile(), liveCorrelator, callbacks,
+                            Paramalyzer.this).execute();
+                }
+            }
+        });
+
+        loadSnapshotButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (engine != null && !engine.isDone()) {
+                    setStatus("Wait for the analysis to finish before loading a snapshot.");
+                    return;
+                }
+                JFileChooser chooser = new JFileChooser();
+                if (chooser.showOpenDialog(mainPanel) == JFileChooser.APPROVE_OPTION) {
+                    beginAnalysis(chooser.getSelectedFile());
+                }
             }
         });
 
@@ -119,6 +170,39 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
                 textAreaResponse.setText("");
                 analysisTextArea.setText("");
                 cookieStatisticsTableModel.clear();
+                ParamAnalyzer.getCache().clear();
+                if (liveCorrelator != null) {
+                    shownResults = newLiveResults();
+                    liveCorrelator.setResults(shownResults);
+                } else {
+                    shownResults = null;
+                }
+            }
+        });
+
+        liveAnalysisCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (liveAnalysisCheckBox.isSelected()) {
+                    CorrelationShard results = engine != null && engine.isDone() && engine.getResults() != null ?
+                            engine.getResults() : newLiveResults();
+                    shownResults = results;
+                    liveCorrelator = new LiveCorrelator(callbacks, results, paramsTableModel, cookieStatisticsTableModel);
+                    setStatus("Live analysis enabled.");
+                } else if (liveCorrelator != null) {
+                    liveCorrelator.shutdown();
+                    liveCorrelator = null;
+                    setStatus("Live analysis disabled.");
+                }
+            }
+        });
+
+        indexHashesCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (engine == null || engine.isDone()) {
+                    indexHashes();
+                }
             }
         });
 
@@ -128,32 +212,8 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
                 JFileChooser chooser = new JFileChooser();
                 int result = chooser.showSaveDialog(mainPanel);
                 if (result == JFileChooser.APPROVE_OPTION) {
-                    File f = chooser.getSelectedFile();
-                    try {
-                        PrintWriter w = new PrintWriter(new FileWriter(f));
-                        StringBuilder buf = new StringBuilder();
-                        for (int col = 0; col < paramsTableModel.getColumnCount(); col++) {
-                            buf.append(paramsTableModel.getColumnName(col));
-                            buf.append(';');
-                        }
-                        buf.deleteCharAt(buf.length() - 1);
-                        w.println(buf.toString());
-
-                        for (int row = 0; row < paramsTableModel.getRowCount(); row++) {
-                            buf = new StringBuilder();
-                            for (int col = 0; col < paramsTableModel.getColumnCount(); col++) {
-                                buf.append(paramsTableModel.getValueAt(row, col));
-                                buf.append(';');
-                            }
-                            buf.deleteCharAt(buf.length() - 1);
-                            w.println(buf.toString());
-                        }
-
-                        w.flush();
-                        w.close();
-                    } catch (IOException e1) {
-                        callbacks.printError("Unable to write to file: " + e1.getMessage());
-                    }
+                    new ResultsExporter(chooser.getSelectedFile(), paramsTableModel.getSummaries(),
+                            cookieStatisticsTableModel, callbacks, Paramalyzer.this).execute();
                 }
 
             }
@@ -177,7 +237,7 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
                         textAreaResponse.setText("");
                     }
 
-                    analysisTextArea.setText(ParamAnalyzer.analyze(pi, callbacks));
+                    analysisTextArea.setText(ParamAnalyzer.describe(pi, callbacks));
                 } else {
                     callbacks.printOutput("Message was null for: " + listValues.getSelectedIndex());
                     textAreaResponse.setText("");
@@ -272,43 +332,29 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
                         }
                     });
 
-                    menu.add(new AbstractAction() {
-                        @Override
-                        public void actionPerformed(ActionEvent e) {
-                            try {
-                                int selected = listValues.getSelectedIndex();
-                                if (selected > -1) {
-                                    ParamInstance pi = paramListModel.getParamInstance(selected);
-                                    setProgress(0);
-                                    setStatus("Starting deep analysis of " + pi.getDecodedValue() + "...");
-                                    String label = pi.getName();
-                                    if (label.length() > 20) {
-                                        label = label.substring(0, 17) + "...";
-                                    }
-                                    callbacks.printOutput("Starting deep analysis...");
-                                    DeepAnalysisTab tab = new DeepAnalysisTab(pi, Paramalyzer.this, callbacks);
-                                    tabPane.add(label, tab.getMainPanel());
-                                    tab.setTitle(label);
-                                    tabPane.setSelectedIndex(tabPane.getTabCount() - 1);
-                                    tabPane.setToolTipTextAt(tabPane.getTabCount() - 1, pi.getName() + "=" + pi.getDecodedValue());
-                                    callbacks.customizeUiComponent(tab.getMainPanel());
-                                    tab.begin();
+                    menu.add(new DeepAnalysisAction("Deep Analysis", false));
+                    int selected = listValues.getSelectedIndex();
+                    if (selected > -1 && getOriginIndex() != null) {
+                        final ParamInstance pi = paramListModel.getParamInstance(selected);
+                        menu.add(new AbstractAction() {
+                            @Override
+                            public Object getValue(String key) {
+                                if (Action.NAME.equals(key)) {
+                                    return "Find Origin Response";
+                                } else {
+                                    return super.getValue(key);
                                 }
-                            } catch (Throwable t) {
-                                callbacks.printError(t.getMessage());
                             }
-                        }
 
-                        @Override
-                        public Object getValue(String key) {
-                            if (Action.NAME.equals(key)) {
-                                return "Deep Analysis";
-                            } else {
-                                return super.getValue(key);
+                            @Override
+                            public void actionPerformed(ActionEvent e) {
+                                showOrigin(pi);
                             }
-                        }
-                    });
-
+                        });
+                    }
+                    if (selected > -1 && DigestIndex.Algorithm.forFormat(paramListModel.getParamInstance(selected).getFormat()) != null) {
+                        menu.add(new DeepAnalysisAction("Deep Analysis (Thorough Hash Search)", true));
+                    }
 
                     menu.show(listValues, e.getX(), e.getY());
                 }
@@ -339,10 +385,7 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
             @Override
             public void actionPerformed(ActionEvent e) {
                 updateParamInstanceList();
-                int row = parametersTable.getSelectedRow();
                 paramsTableModel.setShowDecodedValues(showDecodedValuesCheckBox.isSelected());
-                paramsTableModel.fireTableDataChanged();
-                parametersTable.setRowSelectionInterval(row, row);
             }
         });
 
@@ -352,32 +395,8 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
                 JFileChooser chooser = new JFileChooser();
                 int result = chooser.showSaveDialog(mainPanel);
                 if (result == JFileChooser.APPROVE_OPTION) {
-                    File f = chooser.getSelectedFile();
-                    try {
-                        PrintWriter w = new PrintWriter(new FileWriter(f));
-                        StringBuilder buf = new StringBuilder();
-                        for (int col = 0; col < cookieStatisticsTableModel.getColumnCount(); col++) {
-                            buf.append(cookieStatisticsTableModel.getColumnName(col));
-                            buf.append(',');
-                        }
-                        buf.deleteCharAt(buf.length() - 1);
-                        w.println(buf.toString());
-
-                        for (int row = 0; row < cookieStatisticsTableModel.getRowCount(); row++) {
-                            buf = new StringBuilder();
-                            for (int col = 0; col < cookieStatisticsTableModel.getColumnCount(); col++) {
-                                buf.append(cookieStatisticsTableModel.getValueAt(row, col));
-                                buf.append(',');
-                            }
-                            buf.deleteCharAt(buf.length() - 1);
-                            w.println(buf.toString());
-                        }
-
-                        w.flush();
-                        w.close();
-                    } catch (IOException e1) {
-                        callbacks.printError("Unable to write to file: " + e1.getMessage());
-                    }
+                    new ResultsExporter(chooser.getSelectedFile(), null, cookieStatisticsTableModel, callbacks,
+                            Paramalyzer.this).execute();
                 }
 
             }
@@ -409,6 +428,10 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
             lastSelectedRow = selectedRow;
             //DetailsWorker worker = new DetailsWorker(paramsTableModel.getParameter(selectedRow), Correlator.this);
             //worker.execute();
+            if (selectedRow == -1) {
+                paramListModel.clear();
+                return;
+            }
             CorrelatedParam selectedParam = paramsTableModel.getParameter(selectedRow);
             textAreaRequest.setText("");
             textAreaResponse.setText("");
@@ -432,16 +455,126 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
     }
 
 
+    /**
+     * @return The value index of the results currently shown.
+     */
+    ValueIndex getValueIndex() {
+        return shownResults == null ? new ValueIndex() : shownResults.getValueIndex();
+    }
+
+    /**
+     * @return The digest index of the results currently shown, or null if hashes are not (yet) indexed.
+     */
+    DigestIndex getDigestIndex() {
+        return shownResults == null ? null : shownResults.getDigestIndex();
+    }
+
+    /**
+     * Pop up the response that first issued a value: the Set-Cookie response for a cookie value, otherwise the first
+     * in-scope response whose body contained it.
+     */
+    private void showOrigin(ParamInstance pi) {
+        OriginIndex originIndex = getOriginIndex();
+        IHttpRequestResponse origin = null;
+        if (pi.getType() == IParameter.PARAM_COOKIE) {
+            origin = originIndex.getCookieOrigin(pi.getName(), pi.getValue());
+        }
+        if (origin == null) {
+            origin = originIndex.getValueOrigin(pi.getValue());
+        }
+        if (origin == null && !pi.getDecodedValue().equals(pi.getValue())) {
+            origin = originIndex.getValueOrigin(pi.getDecodedValue());
+        }
+        if (origin == null) {
+            setStatus("Could not find an origin response for " + pi.getName());
+        } else {
+            setStatus("Found origin response for " + pi.getName());
+            new PopupRequestResponseDialog(origin, callbacks, mainPanel, "Origin Request/Response");
+        }
+    }
+
+    /**
+     * @return The origin index of the results currently shown, or null if there are none.
+     */
+    OriginIndex getOriginIndex() {
+        return shownResults == null ? null : shownResults.getOriginIndex();
+    }
+
+    private void indexHashes() {
+        if (indexHashesCheckBox.isSelected() && shownResults != null && shownResults.getDigestIndex() == null) {
+            new DigestIndexer(shownResults, callbacks, this).execute();
+        }
+    }
+
+    private CorrelationShard newLiveResults() {
+        Set<String> ignoreList = new HashSet<>();
+        for (String s : ignore.getText().split("\n")) {
+            ignoreList.add(s.trim());
+        }
+        return new CorrelationShard(callbacks, new MessageTable(), ignoreEmptyCheckBox.isSelected(), ignoreList);
+    }
+
+    /**
+     * Clear the tables and start a new analysis in the background.
+     * @param snapshot A snapshot to start from, or null to analyze the whole proxy history.
+     */
+    private void beginAnalysis(File snapshot) {
+        paramsTableModel.setShowDecodedValues(showDecodedValuesCheckBox.isSelected());
+        paramsTableModel.clear();
+        lastSelectedRow = -1;
+        textFieldStatus.setText(snapshot == null ? "Analyzing..." : "Loading snapshot...");
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(0);
+        progressBar.setStringPainted(true);
+        if (liveCorrelator != null) {
+            liveCorrelator.setResults(null);
+        }
+        engine = new CorrelatorEngine(callbacks, this, ignoreEmptyCheckBox.isSelected(), ignore.getText());
+        engine.setSnapshot(snapshot);
+        engine.execute();
+    }
+
+    @Override
+    public void processProxyMessage(boolean messageIsRequest, IInterceptedProxyMessage message) {
+        LiveCorrelator live = liveCorrelator;
+        if (!messageIsRequest && live != null) {
+            live.addMessage(callbacks.saveBuffersToTempFiles(message.getMessageInfo()));
+        }
+    }
+
+    @Override
+    public void extensionUnloaded() {
+        if (liveCorrelator != null) {
+            liveCorrelator.shutdown();
+        }
+    }
+
     @Override
     public void done(Object result) {
-        setStatus("Analysis complete.");
+        if (engine.getSnapshot() == null) {
+            setStatus("Analysis complete.");
+        } else {
+            setStatus("Loaded " + engine.getSnapshot().getName() + " (" + engine.getSnapshotMessageCount() +
+                    " messages) and analyzed " + (engine.getResults().getMessages().size() -
+                    engine.getSnapshotMessageCount()) + " newer messages.");
+        }
+        callbacks.printOutput(ParamAnalyzer.getCache().toString());
         progressBar.setValue(100);
-        paramsTableModel.addParameters(engine.getUrlParameters());
-        paramsTableModel.addParameters(engine.getBodyParameters());
-        paramsTableModel.addParameters(engine.getCookieParameters());
-        paramsTableModel.addParameters(engine.getJSONParameters());
-        paramsTableModel.addParameters(engine.getRestParameters());
-        cookieStatisticsTableModel.setCookieStatistics(engine.getCookieStatistics(), callbacks);
+        paramsTableModel.addOrUpdateParameters(engine.getSummaries());
+        // copies, since live analysis may go on to add to the statistics
+        cookieStatisticsTableModel.setCookieStatistics(CookieStatistics.copyAll(engine.getCookieStatistics()),
+                callbacks);
+        if (engine.getResults() != null) {
+            shownResults = engine.getResults();
+            indexHashes();
+        }
+        if (liveCorrelator != null) {
+            if (engine.getResults() != null) {
+                liveCorrelator.setResults(engine.getResults(), engine.getHistorySize());
+            } else {
+                liveCorrelator.setResults(null);
+            }
+        }
     }
 
 
@@ -452,6 +585,8 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         callbacks.setExtensionName(EXTENSION_NAME);
         callbacks.printOutput("Started " + EXTENSION_NAME + " version " + VERSION);
         callbacks.registerContextMenuFactory(this);
+        callbacks.registerProxyListener(this);
+        callbacks.registerExtensionStateListener(this);
         callbacks.customizeUiComponent(mainPanel);
         callbacks.customizeUiComponent(sessionsHelpTextPane);
     }
@@ -549,7 +684,6 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         scrollPane1.setMinimumSize(new Dimension(21, 180));
         splitPane1.setLeftComponent(scrollPane1);
         parametersTable = new JTable();
-        parametersTable.setAutoCreateRowSorter(true);
         parametersTable.setFillsViewportHeight(true);
         scrollPane1.setViewportView(parametersTable);
         final JPanel panel3 = new JPanel();
@@ -629,7 +763,7 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         scrollPane6.setViewportView(cookieTable);
         saveCookieStatsButton = new JButton();
         saveCookieStatsButton.setText("Save...");
-        saveCookieStatsButton.setToolTipText("Save these results to a CSV file.");
+        saveCookieStatsButton.setToolTipText("Save these results to a CSV or JSON Lines (.jsonl) file, optionally gzipped (.gz).");
         panel10.add(saveCookieStatsButton, new GridConstraints(1, 2, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         final Spacer spacer2 = new Spacer();
         panel10.add(spacer2, new GridConstraints(1, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, 1, null, null, null, 0, false));
@@ -659,7 +793,7 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         progressBar = new JProgressBar();
         panel13.add(progressBar, new GridConstraints(1, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         final JPanel panel14 = new JPanel();
-        panel14.setLayout(new GridLayoutManager(5, 2, new Insets(0, 0, 0, 0), -1, -1));
+        panel14.setLayout(new GridLayoutManager(8, 2, new Insets(0, 0, 0, 0), -1, -1));
         mainPanel.add(panel14, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, 1, null, null, null, 0, false));
         final JScrollPane scrollPane8 = new JScrollPane();
         panel14.add(scrollPane8, new GridConstraints(1, 0, 3, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, null, null, null, 0, false));
@@ -678,15 +812,36 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         panel14.add(clearButton, new GridConstraints(3, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         exportButton = new JButton();
         exportButton.setText("Export");
+        exportButton.setToolTipText("Save all parameters, their values and the cookie statistics to CSV or JSON Lines (.jsonl) files, optionally gzipped (.gz).");
         panel14.add(exportButton, new GridConstraints(4, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         beginAnalysisButton = new JButton();
         beginAnalysisButton.setText("Analyze");
         beginAnalysisButton.setToolTipText("Begin analysis of all requests in scope.");
         panel14.add(beginAnalysisButton, new GridConstraints(0, 0, 1, 2, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        liveAnalysisCheckBox = new JCheckBox();
+        liveAnalysisCheckBox.setText("Live Analysis");
+        liveAnalysisCheckBox.setToolTipText("Keep adding new in-scope proxy traffic to the results as it arrives.");
+        panel14.add(liveAnalysisCheckBox, new GridConstraints(4, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        indexHashesCheckBox = new JCheckBox();
+        indexHashesCheckBox.setText("Index Hashes");
+        indexHashesCheckBox.setToolTipText("After analysis, precompute the MD5/SHA digests of every value so hash parameters can be traced back to them instantly.");
+        panel14.add(indexHashesCheckBox, new GridConstraints(5, 0, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        saveSnapshotButton = new JButton();
+        saveSnapshotButton.setText("Save Snapshot...");
+        saveSnapshotButton.setToolTipText("Save the results to a file that can be loaded again later, e.g. after restarting Burp.");
+        panel14.add(saveSnapshotButton, new GridConstraints(5, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        loadSnapshotButton = new JButton();
+        loadSnapshotButton.setText("Load Snapshot...");
+        loadSnapshotButton.setToolTipText("Load saved results, then analyze only the proxy history added since they were saved.");
+        panel14.add(loadSnapshotButton, new GridConstraints(6, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         showDecodedValuesCheckBox = new JCheckBox();
         showDecodedValuesCheckBox.setSelected(true);
         showDecodedValuesCheckBox.setText("Show Decoded Values");
         panel14.add(showDecodedValuesCheckBox, new GridConstraints(2, 1, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        filterField = new JTextField();
+        filterField.setToolTipText("Only show parameters whose name, type, format or example value contains this text.");
+        panel14.add(filterField, new GridConstraints(7, 0, 1, 2, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_FIXED, null, new Dimension(150, -1), null, 0, false));
+        filterField.setBorder(BorderFactory.createTitledBorder("Filter"));
     }
 
     /**
@@ -696,6 +851,53 @@ public class Paramalyzer implements IBurpExtender, ITab, WorkerStatusListener, C
         return mainPanel;
     }
 
+    class DeepAnalysisAction extends AbstractAction {
+        private static final long serialVersionUID = 1L;
+
+        String name;
+        boolean thoroughHashSearch;
+
+        DeepAnalysisAction(String name, boolean thoroughHashSearch) {
+            this.name = name;
+            this.thoroughHashSearch = thoroughHashSearch;
+        }
+
+        @Override
+        public Object getValue(String key) {
+            if (Action.NAME.equals(key)) {
+                return name;
+            } else {
+                return super.getValue(key);
+            }
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            try {
+                int selected = listValues.getSelectedIndex();
+                if (selected > -1) {
+                    ParamInstance pi = paramListModel.getParamInstance(selected);
+                    setProgress(0);
+                    setStatus("Starting deep analysis of " + pi.getDecodedValue() + "...");
+                    String label = pi.getName();
+                    if (label.length() > 20) {
+                        label = label.substring(0, 17) + "...";
+                    }
+                    callbacks.printOutput("Starting deep analysis...");
+                    DeepAnalysisTab tab = new DeepAnalysisTab(pi, Paramalyzer.this, callbacks, thoroughHashSearch);
+                    tabPane.add(label, tab.getMainPanel());
+                    tab.setTitle(label);
+                    tabPane.setSelectedIndex(tabPane.getTabCount() - 1);
+                    tabPane.setToolTipTextAt(tabPane.getTabCount() - 1, pi.getName() + "=" + pi.getDecodedValue());
+                    callbacks.customizeUiComponent(tab.getMainPanel());
+                    tab.begin();
+                }
+            } catch (Throwable t) {
+                callbacks.printError(t.getMessage());
+            }
+        }
+    }
+
     class HighlighterAction extends AbstractAction {
         String color;
 
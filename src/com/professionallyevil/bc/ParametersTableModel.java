@@ -17,18 +17,19 @@
 package com.professionallyevil.bc;
 
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * The parameters table.  Each row is a ParamSummary taken when the parameter was added or last updated, so cells are
+ * plain field reads; see ParamTableSorter for sorting and filtering.
+ */
 public class ParametersTableModel extends AbstractTableModel {
 
     boolean showDecodedValues = true;
-    List<CorrelatedParam> entries = new ArrayList<>();
+    List<ParamSummary> entries = new ArrayList<>();
     String[] columns = {"Name", "Type", "Requests", "Unique URLs", "Unique Values" , "Format", "Reflect %", "Interesting", "Decodeable", "Example Value"};
     Class[] columnClasses = {String.class, String.class, Integer.class, Integer.class, Integer.class, String.class, Integer.class, Boolean.class, Boolean.class, String.class};
-    Map<CorrelatedParam, ParamInstance> samples = new HashMap<>();
+    Map<CorrelatedParam, Integer> rows = new HashMap<>();
 
     @Override
     public String getColumnName(int column) {
@@ -40,25 +41,70 @@ public class ParametersTableModel extends AbstractTableModel {
         return columnClasses[columnIndex];
     }
 
+    /**
+     * Summarize parameters for the table.  This reads every parameter, so call it off the EDT.
+     */
+    static List<ParamSummary> summarize(Collection<CorrelatedParam> params) {
+        List<ParamSummary> summaries = new ArrayList<>(params.size());
+        for (CorrelatedParam param : params) {
+            summaries.add(ParamSummary.of(param));
+        }
+        return summaries;
+    }
+
     public void addParameters(Map<String, CorrelatedParam> parametersToAdd) {
-        entries.addAll(parametersToAdd.values());
-        fireTableDataChanged();
+        addOrUpdateParameters(summarize(parametersToAdd.values()));
+    }
+
+    /**
+     * Add new parameters and refresh existing ones without rebuilding the whole table.  Must be called on the EDT.
+     * @param changedParameters Summaries of parameters that were created or updated since the last call.
+     */
+    public void addOrUpdateParameters(Collection<ParamSummary> changedParameters) {
+        int firstNewRow = entries.size();
+        int firstUpdatedRow = Integer.MAX_VALUE;
+        int lastUpdatedRow = -1;
+        for (ParamSummary summary : changedParameters) {
+            Integer row = rows.get(summary.getParam());
+            if (row == null) {
+                rows.put(summary.getParam(), entries.size());
+                entries.add(summary);
+            } else {
+                entries.set(row, summary);
+                firstUpdatedRow = Math.min(firstUpdatedRow, row);
+                lastUpdatedRow = Math.max(lastUpdatedRow, row);
+            }
+        }
+        // one event for the updated rows, rather than one per row (each of which would resort the table)
+        if (lastUpdatedRow >= 0) {
+            fireTableRowsUpdated(firstUpdatedRow, lastUpdatedRow);
+        }
+        if (entries.size() > firstNewRow) {
+            fireTableRowsInserted(firstNewRow, entries.size() - 1);
+        }
     }
 
     public CorrelatedParam getParameter(int row) {
+        return entries.get(row).getParam();
+    }
+
+    ParamSummary getSummary(int row) {
         return entries.get(row);
     }
 
+    /**
+     * @return The rows as they are now; later changes to the table don't affect the array.
+     */
+    ParamSummary[] getSummaries() {
+        return entries.toArray(new ParamSummary[0]);
+    }
+
     public void clear() {
         entries.clear();
-        samples.clear();
+        rows.clear();
         fireTableDataChanged();
     }
 
-    public List<CorrelatedParam> getEntries(){
-        return entries;
-    }
-
     @Override
     public int getRowCount() {
         return entries.size();
@@ -71,39 +117,34 @@ public class ParametersTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        CorrelatedParam param = entries.get(rowIndex);
-        if (!samples.keySet().contains(param)) {
-            ParamInstance sample = param.getSample();
-            samples.put(param, sample);
-        }
-
-        ParamInstance sample = samples.get(param);
+        return getValue(entries.get(rowIndex), columnIndex, showDecodedValues);
+    }
 
+    static Object getValue(ParamSummary summary, int columnIndex, boolean showDecodedValues) {
         switch (columnIndex){
             case 0:
-                return sample.getName();
+                return summary.getName();
             case 1:
-                return sample.getTypeName();
+                return summary.getTypeName();
             case 2:
-                return param.getParamInstances(true).size();
+                return summary.getRequests();
             case 3:
-                return param.getUniqueURLs().size();
+                return summary.getUniqueURLs();
             case 4:
-                return param.getParamInstances(false).size();
+                return summary.getUniqueValues();
             case 5:
-                return param.getFormatString();
+                return summary.getFormat();
             case 6:
-                int count = param.getReflectedCount();
-                return count == 0?0:(100 * count / param.getParamInstances(true).size());
+                return summary.getReflectPercent();
             case 7:
-                return param.isInteresting() ;
+                return summary.isInteresting();
             case 8:
-                return !(sample.getDecodedValue() == null) && !sample.getDecodedValue().equals(sample.getValue());
+                return summary.isDecodeable();
             case 9:
                 if(showDecodedValues) {
-                    return sample.getDecodedValue();
+                    return summary.getDecodedValue();
                 }  else {
-                    return sample.getValue();
+                    return summary.getValue();
                 }
             default:
                 return "";
@@ -118,14 +159,22 @@ public class ParametersTableModel extends AbstractTableModel {
     @Override
     public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
         if(columnIndex == 7) {
-            CorrelatedParam param = entries.get(rowIndex);
+            CorrelatedParam param = getParameter(rowIndex);
             param.setInteresting(!param.isInteresting());
+            fireTableCellUpdated(rowIndex, columnIndex);
         }
     }
 
-    public void setShowDecodedValues(boolean decoded) {
-        showDecodedValues = decoded;
+    public boolean isShowDecodedValues() {
+        return showDecodedValues;
     }
 
-
+    public void setShowDecodedValues(boolean decoded) {
+        if (decoded != showDecodedValues) {
+            showDecodedValues = decoded;
+            if (!entries.isEmpty()) {
+                fireTableRowsUpdated(0, entries.size() - 1);
+            }
+        }
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads proxy history saved outside of Burp so it can be analyzed headless.  Two formats are supported:
+ * <ul>
+ *     <li>Burp's XML export ("Save items" in the proxy history), read with a streaming parser.</li>
+ *     <li>HAR files as saved by browsers and most other proxies.</li>
+ * </ul>
+ * Either may be gzipped (.gz).
+ */
+class ProxyHistoryLoader {
+
+    /**
+     * Load a history file, choosing the format from the file name (.har or .har.gz for HAR, anything else is taken to
+     * be Burp XML).
+     */
+    static List<IHttpRequestResponse> load(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            if (name.endsWith(".gz")) {
+                in = new GZIPInputStream(in, 1 << 16);
+                name = name.substring(0, name.length() - 3);
+            }
+            if (name.endsWith(".har")) {
+                return loadHar(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } else {
+                return loadBurpXml(in);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static List<IHttpRequestResponse> loadBurpXml(InputStream in) throws IOException {
+        List<IHttpRequestResponse> history = new ArrayList<>();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Burp includes an internal DTD; it is never needed and external entities must not be resolved
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            String host = null;
+            int port = -1;
+            String protocol = null;
+            byte[] request = null;
+            byte[] response = null;
+            String comment = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("item") &&
+                        request != null) {
+                    history.add(message(host, port, protocol, request, response, comment));
+                    continue;
+                } else if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "item":
+                        host = null;
+                        port = -1;
+                        protocol = null;
+                        request = null;
+                        response = null;
+                        comment = null;
+                        break;
+                    case "host":
+                        host = reader.getElementText();
+                        break;
+                    case "port":
+                        port = Integer.parseInt(reader.getElementText().trim());
+                        break;
+                    case "protocol":
+                        protocol = reader.getElementText();
+                        break;
+                    case "comment":
+                        comment = reader.getElementText();
+                        break;
+                    case "request":
+                    case "response":
+                        boolean isRequest = reader.getLocalName().equals("request");
+                        boolean base64 = "true".equals(reader.getAttributeValue(null, "base64"));
+                        String text = reader.getElementText();
+                        byte[] bytes = base64 ? Base64.getMimeDecoder().decode(text) :
+                                text.getBytes(StandardCharsets.ISO_8859_1);
+                        if (isRequest) {
+                            request = bytes;
+                        } else {
+                            response = bytes.length == 0 ? null : bytes;
+                        }
+                        break;
+                    default:
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Unable to read Burp XML: " + e.getMessage(), e);
+        }
+        return history;
+    }
+
+    /**
+     * Read a HAR file one entry at a time, so that only the messages (and not the whole JSON tree) are held in memory.
+     */
+    static List<IHttpRequestResponse> loadHar(Reader in) throws IOException {
+        List<IHttpRequestResponse> history = new ArrayList<>();
+        try {
+            JSONTokener tokener = new JSONTokener(in);
+            if (!findMember(tokener, "log") || !findMember(tokener, "entries") || tokener.nextClean() != '[') {
+                throw tokener.syntaxError("No log.entries array");
+            }
+            if (tokener.nextClean() != ']') {
+                tokener.back();
+                while (true) {
+                    Object entry = tokener.nextValue();
+                    if (!(entry instanceof JSONObject)) {
+                        throw tokener.syntaxError("Expected an entry object");
+                    }
+                    history.add(harMessage((JSONObject) entry));
+                    char c = tokener.nextClean();
+                    if (c == ']') {
+                        break;
+                    } else if (c != ',') {
+                        throw tokener.syntaxError("Expected a ',' or ']'");
+                    }
+                }
+            }
+        } catch (JSONException | MalformedURLException e) {
+            throw new IOException("Unable to read HAR: " + e.getMessage(), e);
+        }
+        return history;
+    }
+
+    /**
+     * Read the members of an object until the named one is found, skipping the values of the others.
+     * @return true with the tokener positioned at the value of the member, or false if the object doesn't have it.
+     */
+    private static boolean findMember(JSONTokener tokener, String name) {
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("Expected an object");
+        }
+        if (tokener.nextClean() == '}') {
+            return false;
+        }
+        tokener.back();
+        while (true) {
+            Object key = tokener.nextValue();
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':'");
+            }
+            if (name.equals(key)) {
+                return true;
+            }
+            tokener.nextValue();
+            char c = tokener.nextClean();
+            if (c == '}') {
+                return false;
+            } else if (c != ',') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private static IHttpRequestResponse harMessage(JSONObject entry) throws MalformedURLException {
+        JSONObject request = entry.getJSONObject("request");
+        URL url = new URL(request.getString("url"));
+        String protocol = url.getProtocol();
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return message(url.getHost(), port, protocol, harRequest(request, url),
+                harResponse(entry.optJSONObject("response")), entry.optString("comment", null));
+    }
+
+    private static byte[] harRequest(JSONObject request, URL url) {
+        StringBuilder buf = new StringBuilder();
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        buf.append(request.getString("method")).append(' ').append(target).append(' ')
+                .append(httpVersion(request)).append("\r\n");
+        boolean hasHost = false;
+        JSONArray headers = request.optJSONArray("headers");
+        for (int i = 0; headers != null && i < headers.length(); i++) {
+            hasHost |= headers.getJSONObject(i).getString("name").equalsIgnoreCase("host");
+        }
+        if (!hasHost) {
+            buf.append("Host: ").append(url.getAuthority()).append("\r\n");
+        }
+        appendHeaders(buf, headers);
+        buf.append("\r\n");
+        byte[] body = new byte[0];
+        JSONObject postData = request.optJSONObject("postData");
+        if (postData != null) {
+            body = postData.optString("text", "").getBytes(StandardCharsets.UTF_8);
+        }
+        return concat(buf.toString().getBytes(StandardCharsets.ISO_8859_1), body);
+    }
+
+    private static byte[] harResponse(JSONObject response) {
+        if (response == null || response.optInt("status", 0) <= 0) {
+            return null;  // no response was received
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append(httpVersion(response)).append(' ').append(response.getInt("status")).append(' ')
+                .append(response.optString("statusText", "")).append("\r\n");
+        appendHeaders(buf, response.optJSONArray("headers"));
+        buf.append("\r\n");
+        byte[] head = buf.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] body = new byte[0];
+        JSONObject content = response.optJSONObject("content");
+        if (content != null && content.has("text")) {
+            String text = content.getString("text");
+            body = "base64".equals(content.optString("encoding")) ? Base64.getMimeDecoder().decode(text) :
+                    text.getBytes(StandardCharsets.UTF_8);
+        }
+        return concat(head, body);
+    }
+
+    private static byte[] concat(byte[] head, byte[] body) {
+        byte[] message = new byte[head.length + body.length];
+        System.arraycopy(head, 0, message, 0, head.length);
+        System.arraycopy(body, 0, message, head.length, body.length);
+        return message;
+    }
+
+    private static String httpVersion(JSONObject requestOrResponse) {
+        String version = requestOrResponse.optString("httpVersion", "");
+        // HTTP/2 captures are rebuilt as HTTP/1.1 messages, which is what the analysis understands
+        return version.toUpperCase().startsWith("HTTP/1") ? version.toUpperCase() : "HTTP/1.1";
+    }
+
+    private static void appendHeaders(StringBuilder buf, JSONArray headers) {
+        for (int i = 0; headers != null && i < headers.length(); i++) {
+            JSONObject header = headers.getJSONObject(i);
+            String name = header.getString("name");
+            if (!name.startsWith(":")) {  // HTTP/2 pseudo-headers
+                buf.append(name).append(": ").append(header.optString("value", "")).append("\r\n");
+            }
+        }
+    }
+
+    private static IHttpRequestResponse message(String host, int port, String protocol, byte[] request,
+                                                 byte[] response, String comment) {
+        IHttpService service = new OfflineHelpers.HttpService(host, port, protocol);
+        OfflineMessage message = new OfflineMessage(service, request, response);
+        message.setComment(comment);
+        return message;
+    }
+}
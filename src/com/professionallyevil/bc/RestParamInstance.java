@@ -16,115 +16,19 @@
 
 package com.professionallyevil.bc;
 
-import burp.IHttpRequestResponse;
-
+/**
+ * An instance of a REST-style path parameter, where one path segment is treated as the name of the segment after it.
+ */
 public class RestParamInstance extends ParamInstance {
 
-    private String paramName;
-    private String paramValue;
-    private int nameStart;
-    private int nameEnd = -1;
-    private int valueStart;
-    private int valueEnd = -1;
     static final byte TYPE = 32;
 
-    public RestParamInstance(String name, String value, IHttpRequestResponse message) {
-        super(null, message);
-        this.paramName = name;
-        this.paramValue = value;
-        String requestString = new String(message.getRequest());
-        nameStart = requestString.indexOf(name);
-        if (nameStart > -1) {
-            nameEnd = nameStart + name.length();
-        }
-        valueStart = requestString.indexOf(value);
-        if (valueStart > -1) {
-            valueEnd = valueStart + value.length();
-        }
-    }
-
-    @Override
-    public String getDecodedValue() {
-        return super.getDecodedValue();
-    }
-
-    @Override
-    public void setDecodedValue(String decodedValue) {
-        super.setDecodedValue(decodedValue);
-    }
-
-    @Override
-    public byte getType() {
-        return TYPE;
-    }
-
-    @Override
-    public String getName() {
-        return this.paramName;
+    RestParamInstance(ParamInstanceStore store, int index) {
+        super(store, index);
     }
 
     @Override
     public String getValue() {
-        return this.paramValue;
-    }
-
-    @Override
-    public int getNameStart() {
-        return nameStart;
-    }
-
-    @Override
-    public int getNameEnd() {
-        return nameEnd;
-    }
-
-    @Override
-    public int getValueStart() {
-        return valueStart;
-    }
-
-    @Override
-    public int getValueEnd() {
-        return valueEnd;
-    }
-
-    @Override
-    public IHttpRequestResponse getMessage() {
-        return super.getMessage();
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-        return super.equals(obj);
-    }
-
-    @Override
-    public int hashCode() {
-        return super.hashCode();
-    }
-
-    @Override
-    public int compareTo(ParamInstance o) {
-        return super.compareTo(o);
-    }
-
-    @Override
-    public Format getFormat() {
-        return super.getFormat();
-    }
-
-    @Override
-    public void setFormat(Format f) {
-        super.setFormat(f);
-    }
-
-    @Override
-    public String describe() {
-        return super.describe();
-    }
-
-    @Override
-    public String summarize() {
-        return super.summarize();
+        return store.getValue(index);
     }
 }
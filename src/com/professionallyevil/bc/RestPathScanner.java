@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Walks the path of a raw request's request line, pairing each path segment with the one after it (REST-style
+ * parameters).  Offsets are found in the same pass, so the request is never copied into a String and the size of the
+ * body does not matter.  A scanner is positioned on one pair at a time by next(); it is not thread-safe.
+ */
+class RestPathScanner {
+    private final byte[] request;
+    private int pathEnd;
+
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+
+    /**
+     * @param request A raw HTTP request.  It is read in place and must not be changed while it is being scanned.
+     */
+    RestPathScanner(byte[] request) {
+        this.request = request;
+        int lineEnd = 0;
+        while (lineEnd < request.length && request[lineEnd] != '\r' && request[lineEnd] != '\n') {
+            lineEnd++;
+        }
+        int targetStart = indexOf((byte) ' ', 0, lineEnd);
+        while (targetStart < lineEnd && request[targetStart] == ' ') {
+            targetStart++;
+        }
+        int targetEnd = indexOf((byte) ' ', targetStart, lineEnd);
+        int pathStart = targetStart;
+        if (pathStart < targetEnd && request[pathStart] != '/') {
+            // absolute-form (e.g. sent to a proxy): skip the scheme and authority
+            int authority = indexOf((byte) ':', targetStart, targetEnd) + 3;
+            pathStart = authority <= targetEnd ? indexOf((byte) '/', authority, targetEnd) : targetEnd;
+        }
+        if (pathStart >= targetEnd) {
+            pathEnd = -1;
+            return;
+        }
+        pathEnd = Math.min(indexOf((byte) '?', pathStart, targetEnd), indexOf((byte) '#', pathStart, targetEnd));
+        // trailing empty segments are not parameters
+        while (pathEnd > pathStart + 1 && request[pathEnd - 1] == '/') {
+            pathEnd--;
+        }
+        valueStart = pathStart + 1;
+        valueEnd = indexOf((byte) '/', valueStart, pathEnd);
+    }
+
+    /**
+     * Move to the next pair of adjacent path segments.  The value of one pair is the name of the next.
+     * @return False once the last segment has been reached.
+     */
+    boolean next() {
+        if (valueEnd >= pathEnd) {
+            return false;
+        }
+        nameStart = valueStart;
+        nameEnd = valueEnd;
+        valueStart = nameEnd + 1;
+        valueEnd = indexOf((byte) '/', valueStart, pathEnd);
+        return true;
+    }
+
+    String getName() {
+        return string(nameStart, nameEnd);
+    }
+
+    String getValue() {
+        return string(valueStart, valueEnd);
+    }
+
+    /** @return The offset in the request of the name segment. */
+    int getNameStart() {
+        return nameStart;
+    }
+
+    int getNameEnd() {
+        return nameEnd;
+    }
+
+    /** @return The offset in the request of the value segment. */
+    int getValueStart() {
+        return valueStart;
+    }
+
+    int getValueEnd() {
+        return valueEnd;
+    }
+
+    private String string(int from, int to) {
+        return new String(request, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (request[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
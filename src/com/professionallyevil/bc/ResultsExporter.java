@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+
+import javax.swing.*;
+import javax.swing.table.TableModel;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the full results of an analysis (every parameter, every instance of it and the cookie statistics) to a file in
+ * the background.  Rows are streamed out as they are read, so the size of an export is not limited by memory.
+ * <p>
+ * A file ending in .jsonl, .ndjson or .json (optionally followed by .gz) gets one JSON object per line, each with a
+ * "record" field of "parameter", "instance" or "cookie".  Anything else is written as CSV, one file per kind of record
+ * alongside the chosen one (e.g. results-parameters.csv, results-instances.csv and results-cookies.csv).  A .gz suffix
+ * compresses the output.
+ */
+class ResultsExporter extends SwingWorker<Long, Object> {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_SIZE = 512;
+    private static final int URL_CACHE_SIZE = 4096;
+    private static final char SEPARATOR = ',';
+    private static final String[] PARAMETER_COLUMNS = {"Name", "Type", "Requests", "Unique URLs", "Unique Values",
+            "Format", "Reflect %", "Interesting", "Decodeable", "Example Value", "Decoded Example Value"};
+    private static final String[] INSTANCE_COLUMNS = {"Name", "Type", "Value", "Decoded Value", "Format", "URL",
+            "Message"};
+
+    private final File file;
+    private final ParamSummary[] parameters;
+    private final String[] cookieColumns;
+    private final Object[][] cookieRows;
+    private final IBurpExtenderCallbacks callbacks;
+    private final WorkerStatusListener statusListener;
+    private final boolean jsonLines;
+    private final boolean compressed;
+    private final int[] urlCacheKeys = new int[URL_CACHE_SIZE];
+    private final String[] urlCacheValues = new String[URL_CACHE_SIZE];
+    private final StringBuilder buf = new StringBuilder();
+
+    /**
+     * Must be created on the EDT (or wherever the cookie table is updated), since the cookie statistics are copied.
+     * @param file The file to write, whose name selects the format.
+     * @param parameters The parameters to export with all their instances, or null to export only the cookies.
+     * @param cookies The cookie statistics table.
+     */
+    ResultsExporter(File file, ParamSummary[] parameters, TableModel cookies, IBurpExtenderCallbacks callbacks,
+                    WorkerStatusListener listener) {
+        this.file = file;
+        this.parameters = parameters;
+        this.callbacks = callbacks;
+        this.statusListener = listener;
+        cookieColumns = new String[cookies.getColumnCount()];
+        for (int col = 0; col < cookieColumns.length; col++) {
+            cookieColumns[col] = cookies.getColumnName(col);
+        }
+        cookieRows = new Object[cookies.getRowCount()][];
+        for (int row = 0; row < cookieRows.length; row++) {
+            cookieRows[row] = new Object[cookieColumns.length];
+            for (int col = 0; col < cookieColumns.length; col++) {
+                cookieRows[row][col] = cookies.getValueAt(row, col);
+            }
+        }
+
+        String name = file.getName().toLowerCase();
+        compressed = name.endsWith(".gz");
+        if (compressed) {
+            name = name.substring(0, name.length() - 3);
+        }
+        jsonLines = name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json");
+        for (int i = 0; i < URL_CACHE_SIZE; i++) {
+            urlCacheKeys[i] = -1;
+        }
+    }
+
+    @Override
+    protected Long doInBackground() throws Exception {
+        long records = 0;
+        if (parameters == null) {
+            publish("Exporting " + cookieRows.length + " cookies...");
+            try (Writer out = open(file)) {
+                records += writeCookies(out);
+            }
+        } else if (jsonLines) {
+            publish("Exporting " + parameters.length + " parameters...");
+            try (Writer out = open(file)) {
+                records += writeParameters(out);
+                records += writeInstances(out);
+                records += writeCookies(out);
+            }
+        } else {
+            publish("Exporting " + parameters.length + " parameters...");
+            try (Writer out = open(sibling("parameters"))) {
+                records += writeParameters(out);
+            }
+            try (Writer out = open(sibling("instances"))) {
+                records += writeInstances(out);
+            }
+            try (Writer out = open(sibling("cookies"))) {
+                records += writeCookies(out);
+            }
+        }
+        return records;
+    }
+
+    private Writer open(File f) throws IOException {
+        OutputStream out = Channels.newOutputStream(FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        try {
+            out = compressed ? new GZIPOutputStream(out, BUFFER_SIZE) : new BufferedOutputStream(out, BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * @return The names of the files written: the chosen file, or the three CSV files beside it, e.g.
+     * "results-parameters.csv, results-instances.csv and results-cookies.csv".
+     */
+    String getFileNames() {
+        if (parameters == null || jsonLines) {
+            return file.getName();
+        }
+        return sibling("parameters").getName() + ", " + sibling("instances").getName() + " and " +
+                sibling("cookies").getName();
+    }
+
+    /**
+     * @return e.g. results-instances.csv.gz for a kind of "instances" and a chosen file of results.csv.gz.
+     */
+    File sibling(String kind) {
+        String name = file.getName();
+        String suffix = compressed ? ".csv.gz" : ".csv";
+        int end = name.length() - (compressed ? 3 : 0);
+        if (name.regionMatches(true, end - 4, ".csv", 0, 4)) {
+            end -= 4;
+        }
+        return new File(file.getParentFile(), name.substring(0, end) + "-" + kind + suffix);
+    }
+
+    private long writeParameters(Writer out) throws IOException {
+        if (!jsonLines) {
+            writeRow(out, null, PARAMETER_COLUMNS, PARAMETER_COLUMNS);
+        }
+        Object[] row = new Object[PARAMETER_COLUMNS.length];
+        for (ParamSummary summary : parameters) {
+            for (int col = 0; col < PARAMETER_COLUMNS.length - 2; col++) {
+                row[col] = ParametersTableModel.getValue(summary, col, false);
+            }
+            row[PARAMETER_COLUMNS.length - 2] = summary.getValue();
+            row[PARAMETER_COLUMNS.length - 1] = summary.getDecodedValue();
+            writeRow(out, "parameter", PARAMETER_COLUMNS, row);
+        }
+        return parameters.length;
+    }
+
+    private long writeInstances(Writer out) throws IOException {
+        if (!jsonLines) {
+            writeRow(out, null, INSTANCE_COLUMNS, INSTANCE_COLUMNS);
+        }
+        long total = 0;
+        for (ParamSummary summary : parameters) {
+            total += summary.getRequests();
+        }
+        publish("Exporting " + total + " parameter instances...");
+        publish(0);
+
+        Object[][] rows = new Object[CHUNK_SIZE][INSTANCE_COLUMNS.length];
+        IHttpRequestResponse[] messages = new IHttpRequestResponse[CHUNK_SIZE];
+        int[] ordinals = new int[CHUNK_SIZE];
+        long written = 0;
+        int lastPercent = 0;
+        for (ParamSummary summary : parameters) {
+            CorrelatedParam param = summary.getParam();
+            int count = summary.getRequests();
+            for (int start = 0; start < count; start += CHUNK_SIZE) {
+                if (isCancelled()) {
+                    throw new CancellationException();
+                }
+                int n = Math.min(CHUNK_SIZE, count - start);
+                // live analysis may be adding to (and re-analyzing) this parameter, so copy a chunk at a time
+                synchronized (param) {
+                    List<ParamInstance> instances = param.getParamInstances(true);
+                    for (int i = 0; i < n; i++) {
+                        ParamInstance pi = instances.get(start + i);
+                        Object[] row = rows[i];
+                        row[0] = pi.getName();
+                        row[1] = pi.getTypeName();
+                        row[2] = pi.getValue();
+                        row[3] = pi.getDecodedValue();
+                        row[4] = pi.getFormat() == null ? null : pi.getFormat().getTitle();
+                        messages[i] = pi.getMessage();
+                        ordinals[i] = pi.getMessageOrdinal();
+                    }
+                }
+                for (int i = 0; i < n; i++) {
+                    rows[i][5] = getURL(ordinals[i], messages[i]);
+                    rows[i][6] = ordinals[i] + 1;
+                    messages[i] = null;
+                    writeRow(out, "instance", INSTANCE_COLUMNS, rows[i]);
+                }
+                written += n;
+                int percent = (int) (written * 100 / total);
+                if (percent != lastPercent) {
+                    lastPercent = percent;
+                    publish(percent);
+                }
+            }
+        }
+        return written;
+    }
+
+    private long writeCookies(Writer out) throws IOException {
+        if (!jsonLines) {
+            writeRow(out, null, cookieColumns, cookieColumns);
+        }
+        for (Object[] row : cookieRows) {
+            writeRow(out, "cookie", cookieColumns, row);
+        }
+        return cookieRows.length;
+    }
+
+    private void writeRow(Writer out, String record, String[] columns, Object[] row) throws IOException {
+        buf.setLength(0);
+        if (jsonLines) {
+            buf.append("{\"record\":\"").append(record).append('"');
+            for (int col = 0; col < columns.length; col++) {
+                buf.append(',');
+                TableExporter.appendJSON(buf, key(columns[col]));
+                buf.append(':');
+                TableExporter.appendJSON(buf, row[col]);
+            }
+            buf.append('}');
+        } else {
+            for (int col = 0; col < columns.length; col++) {
+                if (col > 0) {
+                    buf.append(SEPARATOR);
+                }
+                TableExporter.appendField(buf, row[col], SEPARATOR);
+            }
+        }
+        buf.append('\n');
+        out.append(buf);
+    }
+
+    /**
+     * @return A column name as a JSON key, e.g. "unique_urls" for "Unique URLs" and "reflect" for "Reflect %".
+     */
+    static String key(String column) {
+        StringBuilder key = new StringBuilder(column.length());
+        for (int i = 0; i < column.length(); i++) {
+            char c = Character.toLowerCase(column.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                key.append(c);
+            } else if (key.length() > 0 && key.charAt(key.length() - 1) != '_') {
+                key.append('_');
+            }
+        }
+        if (key.length() > 0 && key.charAt(key.length() - 1) == '_') {
+            key.setLength(key.length() - 1);
+        }
+        return key.toString();
+    }
+
+    /**
+     * The URL of a message in the form https://host:443/path?query, built from the request line rather than a full
+     * analysis of the request.  Instances of a message are usually exported together, so recent URLs are cached.
+     */
+    private String getURL(int ordinal, IHttpRequestResponse message) {
+        int slot = ordinal & (URL_CACHE_SIZE - 1);
+        if (urlCacheKeys[slot] == ordinal) {
+            return urlCacheValues[slot];
+        }
+        String url = null;
+        if (message != null) {
+            url = buildURL(message.getHttpService(), message.getRequest());
+        }
+        urlCacheKeys[slot] = ordinal;
+        urlCacheValues[slot] = url;
+        return url;
+    }
+
+    static String buildURL(IHttpService service, byte[] request) {
+        if (request == null) {
+            return null;
+        }
+        int start = 0;
+        while (start < request.length && request[start] != ' ' && request[start] != '\r' && request[start] != '\n') {
+            start++;
+        }
+        start++;
+        int end = start;
+        while (end < request.length && request[end] != ' ' && request[end] != '\r' && request[end] != '\n') {
+            end++;
+        }
+        String target = end > start ? new String(request, start, end - start, StandardCharsets.ISO_8859_1) : "/";
+        if (service == null || !target.startsWith("/")) {
+            return target;  // absolute-form (or unknown service)
+        }
+        return service.getProtocol() + "://" + service.getHost() + ":" + service.getPort() + target;
+    }
+
+    @Override
+    protected void process(List<Object> chunks) {
+        String lastMessage = null;
+        int lastPercent = -1;
+
+        for (Object chunk : chunks) {
+            if (chunk instanceof String) {
+                lastMessage = (String) chunk;
+            } else if (chunk instanceof Integer) {
+                lastPercent = (Integer) chunk;
+            }
+        }
+
+        if (lastMessage != null) {
+            statusListener.setStatus(lastMessage);
+        }
+        if (lastPercent > -1) {
+            statusListener.setProgress(lastPercent);
+        }
+    }
+
+    @Override
+    protected void done() {
+        try {
+            long records = get();
+            statusListener.setProgress(100);
+            statusListener.setStatus("Exported " + records + " records to " + getFileNames() + ".");
+        } catch (CancellationException e) {
+            statusListener.setStatus("Export cancelled.");
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            callbacks.printError("Unable to write to file: " + cause.getMessage());
+            statusListener.setStatus("Export failed: " + cause.getMessage());
+        }
+    }
+}
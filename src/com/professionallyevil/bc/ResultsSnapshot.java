@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the results of an analysis to a compact binary file so they can be loaded again (e.g. after restarting Burp)
+ * instead of re-analyzing the proxy history.  Each class writes its own state: parameter instances as their columns
+ * with the value dictionary, and messages as proxy history ordinals.  Numbers are written as variable-length integers
+ * and every string is written once, then referred to by its position in the file, and the whole file is gzipped.
+ * <p>
+ * A snapshot records a hash of the requests and responses of a sample of the messages the analysis read from the
+ * proxy history, and is only loaded if they still match the current proxy history.  Messages that live analysis added
+ * afterwards are not in history order, so each is recorded by its hash and found again further along the history.
+ * Messages added to the history since the snapshot was taken can then be analyzed on top of it.
+ */
+class ResultsSnapshot {
+    private static final int MAGIC = 0x50524d53;  // "PRMS"
+    private static final int VERSION = 1;
+    private static final int HISTORY_SAMPLES = 256;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Write a snapshot of a set of results.  The file is replaced only once the snapshot is complete.
+     * @param results The results, which must not change while they are written (see LiveCorrelator.submit()).
+     * @param file The file to write.
+     * @return The number of messages covered by the snapshot.
+     * @throws IOException If the file can't be written, or the results weren't analyzed from the proxy history (e.g.
+     * live analysis was started without a full analysis).
+     */
+    static int save(CorrelationShard results, File file) throws IOException {
+        MessageTable messages = results.getMessages();
+        int historySize = messages.getHistorySize();
+        int messageCount = messages.size();
+        if (historySize == 0) {
+            throw new IOException("The results were not analyzed from the proxy history; run the analysis first.");
+        }
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (Output out = new Output(new GZIPOutputStream(new FileOutputStream(temp), BUFFER_SIZE), messages)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeVarInt(historySize);
+            int[] samples = sampleOrdinals(historySize);
+            out.writeVarInt(samples.length);
+            for (int ordinal : samples) {
+                out.writeVarInt(ordinal);
+                out.writeLong(messageHash(messages.get(ordinal)));
+            }
+            out.writeVarInt(messageCount - historySize);
+            for (int ordinal = historySize; ordinal < messageCount; ordinal++) {
+                out.writeLong(messageHash(messages.get(ordinal)));
+            }
+            out.writeBoolean(results.isIgnoreEmpty());
+            out.writeVarInt(results.getIgnoreList().size());
+            for (String name : results.getIgnoreList()) {
+                out.writeString(name);
+            }
+            results.write(out);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return messageCount;
+    }
+
+    /**
+     * Load a snapshot, after checking that it was taken from the same proxy history.  The ignore settings it was taken
+     * with are used for any further messages.
+     * @param history The current proxy history, which may have had messages added since the snapshot was taken.
+     * @return The results, whose MessageTable holds the whole history.  Messages that Loaded.covers() is false for
+     * have not been analyzed.
+     * @throws IOException If the file can't be read or does not match the history.
+     */
+    static Loaded load(File file, IBurpExtenderCallbacks callbacks, IHttpRequestResponse[] history)
+            throws IOException {
+        MessageTable messages = new MessageTable(history);
+        InputStream stream = new FileInputStream(file);
+        try {
+            stream = new GZIPInputStream(stream, BUFFER_SIZE);
+        } catch (IOException e) {
+            stream.close();
+            throw new IOException(file.getName() + " is not a Paramalyzer snapshot.");
+        }
+        try (Input in = new Input(stream, messages)) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getName() + " is not a Paramalyzer snapshot.");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file.getName() + " is a version " + version + " snapshot, this version of " +
+                        "Paramalyzer reads version " + VERSION + ".");
+            }
+            int historySize = in.readVarInt();
+            if (historySize > history.length) {
+                throw new IOException("The snapshot covers " + historySize + " messages but the proxy history only " +
+                        "has " + history.length + ".");
+            }
+            int sampleCount = in.readVarInt();
+            for (int i = 0; i < sampleCount; i++) {
+                int ordinal = in.readVarInt();
+                if (in.readLong() != messageHash(history[ordinal])) {
+                    throw new IOException("The snapshot does not match the proxy history (message " + (ordinal + 1) +
+                            " differs).");
+                }
+            }
+            int[] liveOrdinals = new int[in.readVarInt()];
+            BitSet covered = new BitSet(history.length);
+            covered.set(0, historySize);
+            Map<Long, Deque<Integer>> laterMessages = liveOrdinals.length == 0 ? null :
+                    hashMessages(history, historySize);
+            for (int i = 0; i < liveOrdinals.length; i++) {
+                Deque<Integer> ordinals = laterMessages.get(in.readLong());
+                if (ordinals == null || ordinals.isEmpty()) {
+                    throw new IOException("The snapshot does not match the proxy history (a message added by live " +
+                            "analysis is missing).");
+                }
+                liveOrdinals[i] = ordinals.poll();
+                covered.set(liveOrdinals[i]);
+            }
+            in.setOrdinals(historySize, liveOrdinals);
+            boolean ignoreEmpty = in.readBoolean();
+            Set<String> ignoreList = new HashSet<>();
+            for (int i = in.readVarInt(); i > 0; i--) {
+                ignoreList.add(in.readString());
+            }
+            CorrelationShard results = new CorrelationShard(callbacks, messages, ignoreEmpty, ignoreList);
+            results.read(in);
+            return new Loaded(results, covered);
+        } catch (RuntimeException e) {
+            throw new IOException("The snapshot is damaged: " + e, e);
+        }
+    }
+
+    /**
+     * @return The ordinals of the messages from a point in the history on, by hash, in history order.
+     */
+    private static Map<Long, Deque<Integer>> hashMessages(IHttpRequestResponse[] history, int from) {
+        Map<Long, Deque<Integer>> ordinals = new HashMap<>();
+        for (int i = from; i < history.length; i++) {
+            long hash = messageHash(history[i]);
+            Deque<Integer> list = ordinals.get(hash);
+            if (list == null) {
+                list = new ArrayDeque<>();
+                ordinals.put(hash, list);
+            }
+            list.add(i);
+        }
+        return ordinals;
+    }
+
+    /**
+     * The results read from a snapshot, and which messages of the history they cover.
+     */
+    static class Loaded {
+        private final CorrelationShard results;
+        private final BitSet covered;
+
+        Loaded(CorrelationShard results, BitSet covered) {
+            this.results = results;
+            this.covered = covered;
+        }
+
+        CorrelationShard getResults() {
+            return results;
+        }
+
+        /**
+         * @return The number of messages that were analyzed when the snapshot was taken.
+         */
+        int getMessageCount() {
+            return covered.cardinality();
+        }
+
+        /**
+         * @return true if the message at this position in the history was analyzed when the snapshot was taken.
+         */
+        boolean covers(int ordinal) {
+            return covered.get(ordinal);
+        }
+    }
+
+    /**
+     * @return Up to HISTORY_SAMPLES ordinals spread evenly over the messages, including the first and last.
+     */
+    private static int[] sampleOrdinals(int messageCount) {
+        int count = Math.min(messageCount, HISTORY_SAMPLES);
+        int[] ordinals = new int[count];
+        for (int i = 0; i < count; i++) {
+            ordinals[i] = count == 1 ? 0 : (int) ((long) i * (messageCount - 1) / (count - 1));
+        }
+        return ordinals;
+    }
+
+    static long messageHash(IHttpRequestResponse message) {
+        long h = FNV_OFFSET_BASIS;
+        h = hash(h, message.getRequest());
+        h = (h ^ 0xff) * FNV_PRIME;  // so a request ending with the response's bytes doesn't give the same hash
+        return hash(h, message.getResponse());
+    }
+
+    private static long hash(long h, byte[] bytes) {
+        if (bytes != null) {
+            for (byte b : bytes) {
+                h = (h ^ (b & 0xff)) * FNV_PRIME;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Buffered writer of the snapshot encoding.  Strings are numbered in the order they are first written, and
+     * messages are written as their ordinal in the MessageTable of the results.
+     */
+    static class Output implements Closeable {
+        private final OutputStream out;
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos = 0;
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final Map<IHttpRequestResponse, Integer> messageOrdinals = new IdentityHashMap<>();
+
+        Output(OutputStream out, MessageTable messages) {
+            this.out = out;
+            for (int i = 0; i < messages.size(); i++) {
+                messageOrdinals.put(messages.get(i), i);
+            }
+        }
+
+        void writeByte(int b) throws IOException {
+            if (pos == buf.length) {
+                flushBuffer();
+            }
+            buf[pos++] = (byte) b;
+        }
+
+        void writeBoolean(boolean b) throws IOException {
+            writeByte(b ? 1 : 0);
+        }
+
+        void writeInt(int v) throws IOException {
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(v >>> shift);
+            }
+        }
+
+        void writeLong(long v) throws IOException {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (v >>> shift));
+            }
+        }
+
+        /**
+         * Write an int in 1 to 5 bytes, 7 bits at a time.  Negative numbers take 5 bytes; see writeSignedVarInt().
+         */
+        void writeVarInt(int v) throws IOException {
+            while ((v & ~0x7f) != 0) {
+                writeByte((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            writeByte(v);
+        }
+
+        /**
+         * Write an int that may be negative (e.g. a difference), so that numbers close to zero take a single byte.
+         */
+        void writeSignedVarInt(int v) throws IOException {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+
+        void writeVarLong(long v) throws IOException {
+            while ((v & ~0x7fL) != 0) {
+                writeByte((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            writeByte((int) v);
+        }
+
+        /**
+         * Write a string (or null).  A string written before is written as a reference to the first copy.
+         */
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer id = stringIds.get(s);
+            if (id != null) {
+                writeVarInt(id + 2);
+                return;
+            }
+            stringIds.put(s, stringIds.size());
+            writeVarInt(1);
+            writeVarInt(s.length());
+            // one to three bytes per char, as in DataOutput.writeUTF(), so unpaired surrogates survive
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    writeByte(c);
+                } else if (c < 0x800) {
+                    writeByte(0xc0 | (c >> 6));
+                    writeByte(0x80 | (c & 0x3f));
+                } else {
+                    writeByte(0xe0 | (c >> 12));
+                    writeByte(0x80 | ((c >> 6) & 0x3f));
+                    writeByte(0x80 | (c & 0x3f));
+                }
+            }
+        }
+
+        /**
+         * Write a reference to a message of the results (or null, or a message that isn't in the results).
+         */
+        void writeMessage(IHttpRequestResponse message) throws IOException {
+            Integer ordinal = message == null ? null : messageOrdinals.get(message);
+            writeVarInt(ordinal == null ? 0 : ordinal + 1);
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Buffered reader of what Output writes.  Ordinals are translated from those of the results that were written to
+     * those of the current history (see setOrdinals()).
+     */
+    static class Input implements Closeable {
+        private final InputStream in;
+        private final MessageTable messages;
+        private int historySize = 0;
+        private int[] liveOrdinals = new int[0];
+        private final byte[] buf = new byte[BUFFER_SIZE];
+        private int pos = 0;
+        private int limit = 0;
+        private final List<String> strings = new ArrayList<>();
+        private char[] chars = new char[256];
+
+        Input(InputStream in, MessageTable messages) {
+            this.in = in;
+            this.messages = messages;
+        }
+
+        MessageTable getMessages() {
+            return messages;
+        }
+
+        /**
+         * @param historySize The number of messages the written results read from the proxy history, whose ordinals
+         *                    are unchanged.
+         * @param liveOrdinals The ordinals in the history of the messages that live analysis added after those.
+         */
+        void setOrdinals(int historySize, int[] liveOrdinals) {
+            this.historySize = historySize;
+            this.liveOrdinals = liveOrdinals;
+        }
+
+        /**
+         * @return The ordinal in the history of a message with this ordinal in the written results.
+         */
+        int historyOrdinal(int ordinal) {
+            return ordinal < historySize ? ordinal : liveOrdinals[ordinal - historySize];
+        }
+
+        int readByte() throws IOException {
+            if (pos == limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    throw new EOFException("The snapshot is truncated.");
+                }
+            }
+            return buf[pos++] & 0xff;
+        }
+
+        boolean readBoolean() throws IOException {
+            return readByte() != 0;
+        }
+
+        int readInt() throws IOException {
+            int v = 0;
+            for (int i = 0; i < 4; i++) {
+                v = (v << 8) | readByte();
+            }
+            return v;
+        }
+
+        long readLong() throws IOException {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | readByte();
+            }
+            return v;
+        }
+
+        int readVarInt() throws IOException {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+
+        int readSignedVarInt() throws IOException {
+            int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readVarLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = readByte();
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+
+        String readString() throws IOException {
+            int id = readVarInt();
+            if (id == 0) {
+                return null;
+            } else if (id > 1) {
+                return strings.get(id - 2);
+            }
+            int length = readVarInt();
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                int b = readByte();
+                if (b < 0x80) {
+                    chars[i] = (char) b;
+                } else if (b < 0xe0) {
+                    chars[i] = (char) (((b & 0x1f) << 6) | (readByte() & 0x3f));
+                } else {
+                    chars[i] = (char) (((b & 0x0f) << 12) | ((readByte() & 0x3f) << 6) | (readByte() & 0x3f));
+                }
+            }
+            String s = new String(chars, 0, length);
+            strings.add(s);
+            return s;
+        }
+
+        /**
+         * @return The message written by Output.writeMessage(), which is null if it was null (or not in the results).
+         */
+        IHttpRequestResponse readMessage() throws IOException {
+            int ordinal = readVarInt() - 1;
+            return ordinal < 0 ? null : messages.get(historyOrdinal(ordinal));
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
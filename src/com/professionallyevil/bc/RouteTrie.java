@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A trie of the URL paths in the history, used to tell the variable segments of REST routes (ids, hashes, user names)
+ * from the fixed ones, e.g. to infer /api/v1/users/{}/orders from /api/v1/users/123/orders.  A segment is treated as
+ * variable if it looks like an identifier, or if its position in the route has many distinct values that are each
+ * seen only a few times; popular literals at such a position (e.g. /users/me) keep their own route.  Paths are added
+ * in time linear in their length; the cardinality rule is applied by infer().  Not thread-safe.
+ */
+class RouteTrie {
+    // a position needs this many distinct literal segments, seen on average at most twice each, to become variable
+    static final int MIN_VARIABLE_CARDINALITY = 10;
+    // a position with this many distinct literal segments is variable however often they are seen
+    static final int HIGH_CARDINALITY = 50;
+    // at a variable position, a literal seen in at least 1 in this many of the requests keeps its own route
+    static final int LITERAL_SHARE = 10;
+
+    private final Node root = new Node();
+
+    private static class Node {
+        Map<String, Node> children = new HashMap<>();
+        Node wildcard;
+        boolean folded;  // segments at this position are variable unless kept as a literal child
+        int count;
+
+        Node wildcard() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+    }
+
+    /**
+     * @param segments The segments of a URL path, e.g. {"api", "v1", "users", "123"}.
+     */
+    void add(List<String> segments) {
+        Node node = root;
+        node.count++;
+        for (String segment : segments) {
+            Node next = node.children.get(segment);
+            if (next == null) {
+                if (node.folded || isIdentifier(segment)) {
+                    next = node.wildcard();
+                } else {
+                    next = new Node();
+                    node.children.put(segment, next);
+                }
+            }
+            next.count++;
+            node = next;
+        }
+    }
+
+    /**
+     * Fold the paths of another trie into this one.
+     */
+    void merge(RouteTrie other) {
+        merge(root, other.root);
+    }
+
+    private static void merge(Node target, Node source) {
+        target.count += source.count;
+        if (source.wildcard != null) {
+            if (target.wildcard == null) {
+                target.wildcard = source.wildcard;
+            } else {
+                merge(target.wildcard, source.wildcard);
+            }
+        }
+        for (Map.Entry<String, Node> entry : source.children.entrySet()) {
+            Node existing = target.children.get(entry.getKey());
+            if (existing == null) {
+                target.children.put(entry.getKey(), entry.getValue());
+            } else {
+                merge(existing, entry.getValue());
+            }
+        }
+        target.folded |= source.folded;
+    }
+
+    /**
+     * Treat every position that has many distinct, rarely repeated literal segments as variable.  The routes below
+     * those segments are merged, so that e.g. /users/alice/orders and /users/bob/orders become one route.
+     */
+    void infer() {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            inferAt(node);
+            pending.addAll(node.children.values());
+            if (node.wildcard != null) {
+                pending.push(node.wildcard);
+            }
+        }
+    }
+
+    /**
+     * Like infer(), but only for the positions along one path (e.g. one that has just been added).
+     */
+    void infer(List<String> segments) {
+        Node node = root;
+        for (String segment : segments) {
+            inferAt(node);
+            node = next(node, segment);
+            if (node == null) {
+                return;
+            }
+        }
+    }
+
+    private static void inferAt(Node node) {
+        if (node.children.isEmpty() || (!node.folded && node.children.size() < MIN_VARIABLE_CARDINALITY)) {
+            return;
+        }
+        int total = 0;
+        for (Node child : node.children.values()) {
+            total += child.count;
+        }
+        // popular literals are left out of the decision, so that e.g. /users/me doesn't hide /users/{}
+        List<Node> rare = new ArrayList<>();
+        int rareTotal = 0;
+        for (Node child : node.children.values()) {
+            if (child.count * LITERAL_SHARE < total) {
+                rare.add(child);
+                rareTotal += child.count;
+            }
+        }
+        if (!node.folded && (rare.size() < MIN_VARIABLE_CARDINALITY ||
+                (rare.size() < HIGH_CARDINALITY && rare.size() * 2 < rareTotal))) {
+            return;
+        }
+        node.folded = true;
+        Iterator<Node> children = node.children.values().iterator();
+        while (children.hasNext()) {
+            Node child = children.next();
+            if (child.count * LITERAL_SHARE < total) {
+                merge(node.wildcard(), child);
+                children.remove();
+            }
+        }
+    }
+
+    private static Node next(Node node, String segment) {
+        Node child = node.children.get(segment);
+        if (child != null) {
+            return child;
+        }
+        return node.folded || isIdentifier(segment) ? node.wildcard : null;
+    }
+
+    /**
+     * @param segments The segments of a path that has been added.
+     * @return For each segment, whether it is variable in the inferred route.
+     */
+    boolean[] match(List<String> segments) {
+        boolean[] variable = new boolean[segments.size()];
+        Node node = root;
+        for (int i = 0; i < variable.length && node != null; i++) {
+            Node child = node.children.get(segments.get(i));
+            if (child != null) {
+                node = child;
+            } else {
+                node = next(node, segments.get(i));
+                variable[i] = node != null;
+            }
+        }
+        return variable;
+    }
+
+    /**
+     * @return Each inferred route (with variable segments shown as {}) and how many requests followed it, sorted by
+     * route.  Only complete paths are listed, not their prefixes.
+     */
+    SortedMap<String, Integer> getRoutes() {
+        SortedMap<String, Integer> routes = new TreeMap<>();
+        addRoutes(root, "", routes);
+        return routes;
+    }
+
+    private static void addRoutes(Node node, String prefix, Map<String, Integer> routes) {
+        int ending = node.count;
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            addRoutes(entry.getValue(), prefix + "/" + entry.getKey(), routes);
+            ending -= entry.getValue().count;
+        }
+        if (node.wildcard != null) {
+            addRoutes(node.wildcard, prefix + "/{}", routes);
+            ending -= node.wildcard.count;
+        }
+        if (ending > 0 && !prefix.isEmpty()) {
+            routes.merge(prefix, ending, Integer::sum);
+        }
+    }
+
+    /**
+     * Write the trie, including what has been inferred so far, to a snapshot.
+     */
+    void write(ResultsSnapshot.Output out) throws IOException {
+        write(root, out);
+    }
+
+    private static void write(Node node, ResultsSnapshot.Output out) throws IOException {
+        out.writeVarInt(node.count);
+        out.writeBoolean(node.folded);
+        out.writeVarInt(node.children.size());
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            out.writeString(entry.getKey());
+            write(entry.getValue(), out);
+        }
+        out.writeBoolean(node.wildcard != null);
+        if (node.wildcard != null) {
+            write(node.wildcard, out);
+        }
+    }
+
+    /**
+     * Add the paths written by write().
+     */
+    void read(ResultsSnapshot.Input in) throws IOException {
+        Node node = new Node();
+        read(node, in);
+        merge(root, node);
+    }
+
+    private static void read(Node node, ResultsSnapshot.Input in) throws IOException {
+        node.count = in.readVarInt();
+        node.folded = in.readBoolean();
+        for (int i = in.readVarInt(); i > 0; i--) {
+            Node child = new Node();
+            node.children.put(in.readString(), child);
+            read(child, in);
+        }
+        if (in.readBoolean()) {
+            read(node.wildcard(), in);
+        }
+    }
+
+    /**
+     * @return True if the segment looks like a generated identifier: a number, a hex string or UUID of at least 8
+     * characters, or a long token containing digits.
+     */
+    static boolean isIdentifier(String segment) {
+        int length = segment.length();
+        if (length == 0) {
+            return false;
+        }
+        int digits = 0;
+        boolean hex = true;
+        for (int i = 0; i < length; i++) {
+            char c = segment.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (!((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '-')) {
+                hex = false;
+            }
+        }
+        return digits == length || (digits > 0 && ((hex && length >= 8) || length >= 20));
+    }
+}
@@ -35,8 +35,12 @@ public class SessionAnalysisTab implements WorkerStatusListener {
     private JTextArea textAreaBaselineResponse;
     private JTable resultsTable;
     private JButton analyzeButton;
+    private JButton minimizeButton;
     private JSplitPane horizontalSplitPane;
     private JButton closeButton;
+    private JSpinner threadsSpinner;
+    private JSpinner rateLimitSpinner;
+    private JSpinner trialsSpinner;
     private IHttpService service;
     private byte[] requestBytes;
     private Paramalyzer parent;
@@ -60,6 +64,9 @@ public class SessionAnalysisTab implements WorkerStatusListener {
         }
         sessionTableModel = new SessionAnalysisTableModel(callbacks, service, request);
         resultsTable.setModel(sessionTableModel);
+        threadsSpinner.setModel(new SpinnerNumberModel(SessionAnalyzer.DEFAULT_THREADS, 1, 50, 1));
+        rateLimitSpinner.setModel(new SpinnerNumberModel(0, 0, 1000, 1));
+        trialsSpinner.setModel(new SpinnerNumberModel(SessionAnalyzer.DEFAULT_TRIALS, 1, 100, 1));
         buttonVerifyBaseline.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -70,10 +77,20 @@ public class SessionAnalysisTab implements WorkerStatusListener {
         analyzeButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                SessionAnalyzer analyzer = new SessionAnalyzer(sessionTableModel, callbacks, SessionAnalysisTab.this);
+                SessionAnalyzer analyzer = new SessionAnalyzer(sessionTableModel, callbacks, SessionAnalysisTab.this,
+                        (Integer) threadsSpinner.getValue(), (Integer) rateLimitSpinner.getValue(),
+                        (Integer) trialsSpinner.getValue());
                 analyzer.execute();
             }
         });
+        minimizeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                SessionMinimizer minimizer = new SessionMinimizer(sessionTableModel, callbacks, SessionAnalysisTab.this,
+                        (Integer) threadsSpinner.getValue(), (Integer) rateLimitSpinner.getValue());
+                minimizer.execute();
+            }
+        });
         resultsTable.addMouseListener(new MouseAdapter() {
             @Override
             public void mousePressed(MouseEvent e) {
@@ -91,7 +108,7 @@ public class SessionAnalysisTab implements WorkerStatusListener {
                 if (e.isPopupTrigger()) {
                     int selectedRow = resultsTable.getSelectedRow();
                     if (selectedRow > -1) {
-                        SessionTestCase testCase = sessionTableModel.getSessionTestCase(selectedRow);
+                        SessionTestCase testCase = sessionTableModel.getSessionTestCase(resultsTable.convertRowIndexToModel(selectedRow));
 
                         JPopupMenu menu = new JPopupMenu();
                         if (testCase.getTestRequest() != null) {
@@ -129,6 +146,42 @@ public class SessionAnalysisTab implements WorkerStatusListener {
                             });
                         }
 
+                        if (sessionTableModel.getMinimalRequest() != null) {
+                            menu.add(new AbstractAction() {
+                                @Override
+                                public Object getValue(String key) {
+                                    if (Action.NAME.equals(key)) {
+                                        return "Send Minimal Request to Repeater";
+                                    } else {
+                                        return super.getValue(key);
+                                    }
+                                }
+
+                                @Override
+                                public void actionPerformed(ActionEvent e) {
+                                    callbacks.sendToRepeater(service.getHost(), service.getPort(), "https".equals(service.getProtocol()), sessionTableModel.getMinimalRequest(), "minimal session");
+                                }
+                            });
+                        }
+
+                        if (testCase.getTrialCount() > 0) {
+                            menu.add(new AbstractAction() {
+                                @Override
+                                public Object getValue(String key) {
+                                    if (Action.NAME.equals(key)) {
+                                        return "Show Trial Details";
+                                    } else {
+                                        return super.getValue(key);
+                                    }
+                                }
+
+                                @Override
+                                public void actionPerformed(ActionEvent e) {
+                                    showTrialDetails(testCase);
+                                }
+                            });
+                        }
+
                         if (testCase.getParameter() != null && testCase.getParameter().getType() == IParameter.PARAM_COOKIE) {
                             menu.add(new AbstractAction() {
                                 @Override
@@ -142,7 +195,7 @@ public class SessionAnalysisTab implements WorkerStatusListener {
 
                                 @Override
                                 public void actionPerformed(ActionEvent e) {
-                                    OriginSearcher originSearcher = new OriginSearcher(testCase.getParameter(), callbacks, SessionAnalysisTab.this);
+                                    OriginSearcher originSearcher = new OriginSearcher(testCase.getParameter(), parent.getOriginIndex(), callbacks, SessionAnalysisTab.this);
                                     originSearcher.execute();
                                 }
                             });
@@ -162,6 +215,26 @@ public class SessionAnalysisTab implements WorkerStatusListener {
         });
     }
 
+    private void showTrialDetails(SessionTestCase testCase) {
+        SessionTestCase baseline = sessionTableModel.getSessionTestCase(0);
+        StringBuilder buf = new StringBuilder();
+        buf.append("Trials: ").append(testCase.getTrialCount()).append("\n\n");
+        buf.append("Response sizes:\n").append(TrialStatistics.histogram(testCase.getResponseSizes(), 10));
+        buf.append("\nResponse times (ms):\n").append(TrialStatistics.histogram(testCase.getResponseTimes(), 10));
+        if (testCase != baseline) {
+            buf.append(String.format("\nSize vs. baseline: p = %.4f", TrialStatistics.rankSumPValue(
+                    baseline.getResponseSizes(), testCase.getResponseSizes())));
+            buf.append(String.format("\nTime vs. baseline: p = %.4f", TrialStatistics.rankSumPValue(
+                    baseline.getResponseTimes(), testCase.getResponseTimes())));
+            buf.append("\nSession relevant: ").append(testCase.isSessionRelevant(baseline)).append("\n");
+        }
+        JTextArea textArea = new JTextArea(buf.toString());
+        textArea.setEditable(false);
+        textArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, textArea.getFont().getSize()));
+        JOptionPane.showMessageDialog(sessionTabPanel, new JScrollPane(textArea), "Trials: " + testCase.getName(),
+                JOptionPane.PLAIN_MESSAGE);
+    }
+
     void initializeTab() {
         horizontalSplitPane.setDividerLocation(0.35);
     }
@@ -268,13 +341,35 @@ public class SessionAnalysisTab implements WorkerStatusListener {
         resultsTable.setFillsViewportHeight(true);
         scrollPane3.setViewportView(resultsTable);
         final JPanel panel6 = new JPanel();
-        panel6.setLayout(new GridLayoutManager(1, 2, new Insets(0, 0, 0, 0), -1, -1));
+        panel6.setLayout(new GridLayoutManager(1, 9, new Insets(0, 0, 0, 0), -1, -1));
         panel4.add(panel6, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_BOTH, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
         analyzeButton = new JButton();
         analyzeButton.setText("Analyze");
         panel6.add(analyzeButton, new GridConstraints(0, 0, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
         final Spacer spacer3 = new Spacer();
-        panel6.add(spacer3, new GridConstraints(0, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, 1, null, null, null, 0, false));
+        panel6.add(spacer3, new GridConstraints(0, 8, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, 1, null, null, null, 0, false));
+        final JLabel label1 = new JLabel();
+        label1.setText("Threads:");
+        panel6.add(label1, new GridConstraints(0, 1, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        threadsSpinner = new JSpinner();
+        threadsSpinner.setToolTipText("The number of test requests to send at once.");
+        panel6.add(threadsSpinner, new GridConstraints(0, 2, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        final JLabel label2 = new JLabel();
+        label2.setText("Max Requests/sec:");
+        panel6.add(label2, new GridConstraints(0, 3, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        rateLimitSpinner = new JSpinner();
+        rateLimitSpinner.setToolTipText("The maximum rate of requests to this host, or 0 for no limit.");
+        panel6.add(rateLimitSpinner, new GridConstraints(0, 4, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        final JLabel label3 = new JLabel();
+        label3.setText("Trials:");
+        panel6.add(label3, new GridConstraints(0, 5, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_NONE, GridConstraints.SIZEPOLICY_FIXED, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        trialsSpinner = new JSpinner();
+        trialsSpinner.setToolTipText("The number of times to send each test case.");
+        panel6.add(trialsSpinner, new GridConstraints(0, 6, 1, 1, GridConstraints.ANCHOR_WEST, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
+        minimizeButton = new JButton();
+        minimizeButton.setText("Minimize");
+        minimizeButton.setToolTipText("Find the smallest set of cookies and headers that keeps the session alive.");
+        panel6.add(minimizeButton, new GridConstraints(0, 7, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, GridConstraints.SIZEPOLICY_FIXED, null, null, null, 0, false));
     }
 
     /**
@@ -24,6 +24,7 @@ import burp.IRequestInfo;
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class SessionAnalysisTableModel extends AbstractTableModel {
 
@@ -31,8 +32,12 @@ public class SessionAnalysisTableModel extends AbstractTableModel {
     IBurpExtenderCallbacks callbacks;
     private IHttpService service;
     private List<SessionTestCase> tests = new ArrayList<>();
-    private String[] columns = {"Name", "Type", "Test?", "Response Code", "Size", "Time (ms)"};
-    private Class[] columnClasses = {String.class, String.class, Boolean.class, String.class, Integer.class, Integer.class};
+    private volatile Set<SessionTestCase> requiredTests = null;
+    private volatile byte[] minimalRequest = null;
+    private String[] columns = {"Name", "Type", "Test?", "Response Code", "Size", "Time (ms)", "Time p90 (ms)",
+            "Trials", "Session Relevant?", "Required?"};
+    private Class[] columnClasses = {String.class, String.class, Boolean.class, String.class, Integer.class,
+            Integer.class, Integer.class, Integer.class, Boolean.class, Boolean.class};
     private static byte[] SUPPORTED_PARAM_TYPES = {IParameter.PARAM_COOKIE};
 
 
@@ -57,6 +62,8 @@ public class SessionAnalysisTableModel extends AbstractTableModel {
         IRequestInfo requestInfo = this.callbacks.getHelpers().analyzeRequest(request);
         List<IParameter> params = requestInfo.getParameters();
         tests.clear();
+        requiredTests = null;
+        minimalRequest = null;
         tests.add(new SessionTestCase());  // add null entry for baseline.
         for (IParameter param:params){
             if(isSupportedType(param)) {
@@ -77,6 +84,23 @@ public class SessionAnalysisTableModel extends AbstractTableModel {
         return baselineRequestBytes;
     }
 
+    /**
+     * Record the result of a session minimization.
+     * @param required The test cases whose cookie or header must be kept for the session to survive.
+     * @param request The baseline request with every other test case's cookie or header removed.
+     */
+    void setMinimalSession(Set<SessionTestCase> required, byte[] request) {
+        this.requiredTests = required;
+        this.minimalRequest = request;
+    }
+
+    /**
+     * @return The request from the last session minimization, or null if there hasn't been one.
+     */
+    byte[] getMinimalRequest() {
+        return minimalRequest;
+    }
+
     List<SessionTestCase> getSessionTestCases(){
         return tests;
     }
@@ -121,6 +145,14 @@ public class SessionAnalysisTableModel extends AbstractTableModel {
                 return test.getResponseSize();
             case 5:
                 return test.getResponseTime();
+            case 6:
+                return test.getResponseTimeP90();
+            case 7:
+                return test.getTrialCount();
+            case 8:
+                return test.isSessionRelevant(tests.get(0));
+            case 9:
+                return requiredTests != null && requiredTests.contains(test);
             default:
                 return "?";
         }
@@ -18,51 +18,160 @@ package com.professionallyevil.bc;
 
 import burp.IBurpExtenderCallbacks;
 import burp.IHttpRequestResponse;
+import burp.IHttpService;
 import burp.IResponseInfo;
 
 import javax.swing.*;
-import javax.swing.event.TableModelEvent;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
-public class SessionAnalyzer extends SwingWorker {
+/**
+ * Sends the session test cases of a SessionAnalysisTableModel.  Test cases run concurrently on a bounded pool so the
+ * total time approaches that of the slowest request rather than the sum of all of them, and each row of the table is
+ * updated as soon as one of its trials completes.  Every test case (including the baseline) is sent several times so
+ * that it can be compared to the baseline statistically.  Requests to the same host can optionally be rate limited; the
+ * limit is shared by every analyzer that is running against that host.
+ */
+public class SessionAnalyzer extends SwingWorker<Object, Object> {
+
+    static final int DEFAULT_THREADS = 5;
+    static final int DEFAULT_TRIALS = 5;
+
+    private static final ConcurrentMap<String, HostThrottle> throttles = new ConcurrentHashMap<>();
 
     private final IBurpExtenderCallbacks callbacks;
     private final SessionAnalysisTableModel model;
     private final WorkerStatusListener l;
+    private final int threads;
+    private final int requestsPerSecond;
+    private final int trials;
 
     SessionAnalyzer(SessionAnalysisTableModel model, IBurpExtenderCallbacks callbacks, WorkerStatusListener l) {
+        this(model, callbacks, l, DEFAULT_THREADS, 0, DEFAULT_TRIALS);
+    }
+
+    /**
+     * @param threads The maximum number of test requests in flight at once.
+     * @param requestsPerSecond The maximum rate of requests to the model's host, or 0 for no limit.
+     * @param trials The number of times to send each test case.
+     */
+    SessionAnalyzer(SessionAnalysisTableModel model, IBurpExtenderCallbacks callbacks, WorkerStatusListener l,
+                    int threads, int requestsPerSecond, int trials) {
         this.model = model;
         this.callbacks = callbacks;
         this.l = l;
+        this.threads = Math.max(1, threads);
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+        this.trials = Math.max(1, trials);
     }
 
     @Override
     protected Object doInBackground() throws Exception {
-        byte[] baselineRequest = model.getBaselineRequest();
+        final byte[] baselineRequest = model.getBaselineRequest();
+        final IHttpService service = model.getService();
+        final HostThrottle throttle = getThrottle(service, requestsPerSecond);
 
         List<SessionTestCase> testCases = model.getSessionTestCases();
-        int row = 0;
+        final List<byte[]> testRequests = new ArrayList<>(testCases.size());
+        for (SessionTestCase testCase : testCases) {
+            testCase.clearTrials();
+            testRequests.add(testCase.generateTestRequest(baselineRequest, callbacks));
+        }
+        publish(testCases.get(0));
         publish(0);
-        for(SessionTestCase testCase:testCases){
-            byte[] testRequest = testCase.generateTestRequest(baselineRequest, callbacks);
-            publish("Testcase "+testCase.getName());
-            long startTime = System.currentTimeMillis();
-            IHttpRequestResponse message = callbacks.makeHttpRequest(model.getService(), testRequest);
-            testCase.setResponseTime((int) (System.currentTimeMillis() - startTime));
-            IResponseInfo responseInfo = callbacks.getHelpers().analyzeResponse(message.getResponse());
-            testCase.analyzeResults(responseInfo, message.getResponse());
-            TableModelEvent ev = new TableModelEvent(model, row);
-            model.fireTableChanged(ev);
-            row = row + 1;
-            publish(100 * row / testCases.size());
+        int total = testCases.size() * trials;
+        ExecutorService executor = newExecutor(Math.min(threads, total));
+        CompletionService<SessionTestCase> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            // Interleave the trials so the baseline and every test case are sampled under similar load.
+            for (int trial = 0; trial < trials; trial++) {
+                for (int i = 0; i < testCases.size(); i++) {
+                    final SessionTestCase testCase = testCases.get(i);
+                    final byte[] testRequest = testRequests.get(i);
+                    completionService.submit(new Callable<SessionTestCase>() {
+                        @Override
+                        public SessionTestCase call() throws Exception {
+                            runTrial(testCase, testRequest, service, throttle);
+                            return testCase;
+                        }
+                    });
+                }
+            }
+
+            for (int completed = 1; completed <= total; completed++) {
+                try {
+                    SessionTestCase testCase = completionService.take().get();
+                    publish(testCase);
+                    if (testCase.getTrialCount() == trials) {
+                        publish("Testcase " + testCase.getName() + ": median " + testCase.getResponseTime() + " ms");
+                    }
+                } catch (ExecutionException e) {
+                    StringWriter sw = new StringWriter();
+                    e.getCause().printStackTrace(new PrintWriter(sw));
+                    callbacks.printError(sw.toString());
+                }
+                publish(100 * completed / total);
+            }
+        } finally {
+            executor.shutdownNow();
         }
         publish("Done");
 
         return null;
     }
 
+    private void runTrial(SessionTestCase testCase, byte[] testRequest, IHttpService service, HostThrottle throttle)
+            throws InterruptedException {
+        if (throttle != null) {
+            throttle.acquire();
+        }
+        long startTime = System.nanoTime();
+        IHttpRequestResponse message = callbacks.makeHttpRequest(service, testRequest);
+        int responseTime = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        if (message == null || message.getResponse() == null) {
+            throw new IllegalStateException("No response for testcase " + testCase.getName());
+        }
+        IResponseInfo responseInfo = callbacks.getHelpers().analyzeResponse(message.getResponse());
+        testCase.addTrial(responseTime, responseInfo, message.getResponse());
+    }
+
+    /**
+     * @return A pool of daemon threads for sending test requests.
+     */
+    static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Paramalyzer session analysis");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * @param requestsPerSecond The maximum rate of requests to the service's host, or 0 for no limit.
+     * @return The throttle shared by every analyzer running against the host, or null if there is no limit.
+     */
+    static HostThrottle getThrottle(IHttpService service, int requestsPerSecond) {
+        if (requestsPerSecond <= 0) {
+            return null;
+        }
+        String key = service.getProtocol() + "://" + service.getHost() + ":" + service.getPort();
+        HostThrottle throttle = throttles.get(key);
+        if (throttle == null) {
+            throttles.putIfAbsent(key, new HostThrottle());
+            throttle = throttles.get(key);
+        }
+        throttle.setRequestsPerSecond(requestsPerSecond);
+        return throttle;
+    }
+
     @Override
-    protected void process(List chunks) {
+    protected void process(List<Object> chunks) {
         super.process(chunks);
         String lastMessage = null;
         int lastPercent = -1;
@@ -73,6 +182,14 @@ public class SessionAnalyzer extends SwingWorker {
                 callbacks.printOutput(lastMessage);
             } else if (chunk instanceof Integer) {
                 lastPercent = (Integer) chunk;
+            } else if (chunk instanceof SessionTestCase) {
+                int row = model.getSessionTestCases().indexOf(chunk);
+                if (row == 0) {
+                    // every test case is compared to the baseline
+                    model.fireTableRowsUpdated(0, model.getRowCount() - 1);
+                } else if (row > 0) {
+                    model.fireTableRowsUpdated(row, row);
+                }
             }
         }
 
@@ -83,4 +200,29 @@ public class SessionAnalyzer extends SwingWorker {
             l.setProgress(lastPercent);
         }
     }
+
+    /**
+     * Spaces out the requests to a single host.  Each caller reserves the next free slot and then sleeps until it
+     * arrives, so the reservations stay fair no matter how many threads are waiting.
+     */
+    static class HostThrottle {
+        private long intervalNanos;
+        private long nextSlot = System.nanoTime();
+
+        synchronized void setRequestsPerSecond(int requestsPerSecond) {
+            intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+        }
+
+        void acquire() throws InterruptedException {
+            long slot;
+            synchronized (this) {
+                slot = Math.max(nextSlot, System.nanoTime());
+                nextSlot = slot + intervalNanos;
+            }
+            long wait = slot - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+import burp.IResponseInfo;
+
+import javax.swing.*;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds a minimal set of the cookies and headers in a session test that together keep the session alive, using the
+ * ddmin delta debugging algorithm.  The set is repeatedly split; each subset and its complement are tried in one
+ * parallel batch, and the search continues with the first one that still gets a baseline-like response.  This takes
+ * on the order of k log n requests for k required tokens out of n, rather than trying all 2^n combinations.
+ */
+class SessionMinimizer extends SwingWorker<Set<SessionTestCase>, Object> {
+
+    /** The number of baseline requests to send first if the baseline has not already been analyzed. */
+    private static final int BASELINE_SAMPLES = 3;
+
+    /** How far (as a fraction of the median baseline size) a response may fall outside the baseline size range. */
+    private static final double SIZE_TOLERANCE = 0.05;
+
+    private final IBurpExtenderCallbacks callbacks;
+    private final SessionAnalysisTableModel model;
+    private final WorkerStatusListener l;
+    private final int threads;
+    private final int requestsPerSecond;
+    private final Map<BitSet, Boolean> outcomes = new HashMap<>();
+    private List<SessionTestCase> tokens;
+    private byte[] baselineRequest;
+    private IHttpService service;
+    private SessionAnalyzer.HostThrottle throttle;
+    private ExecutorService executor;
+    private String baselineCode;
+    private int minSize;
+    private int maxSize;
+    private int requestCount = 0;
+
+    SessionMinimizer(SessionAnalysisTableModel model, IBurpExtenderCallbacks callbacks, WorkerStatusListener l,
+                     int threads, int requestsPerSecond) {
+        this.model = model;
+        this.callbacks = callbacks;
+        this.l = l;
+        this.threads = Math.max(1, threads);
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+    }
+
+    @Override
+    protected Set<SessionTestCase> doInBackground() throws Exception {
+        List<SessionTestCase> testCases = model.getSessionTestCases();
+        tokens = new ArrayList<>(testCases.subList(1, testCases.size()));
+        baselineRequest = model.getBaselineRequest();
+        service = model.getService();
+        throttle = SessionAnalyzer.getThrottle(service, requestsPerSecond);
+        executor = SessionAnalyzer.newExecutor(threads);
+        try {
+            publish(0);
+            publish("Minimizing " + tokens.size() + " session tokens");
+            sampleBaseline(testCases.get(0));
+
+            BitSet current = new BitSet();
+            current.set(0, tokens.size());
+            if (tokens.isEmpty() || isAlive(new BitSet())) {
+                current.clear();
+            } else {
+                current = minimize(current);
+            }
+
+            Set<SessionTestCase> required = new LinkedHashSet<>();
+            for (int i = current.nextSetBit(0); i >= 0; i = current.nextSetBit(i + 1)) {
+                required.add(tokens.get(i));
+            }
+            model.setMinimalSession(required, buildRequest(current));
+            StringBuilder names = new StringBuilder();
+            for (SessionTestCase token : required) {
+                names.append(names.length() > 0 ? ", " : "").append(token.getName());
+            }
+            publish(100);
+            publish("Minimal session (" + requestCount + " requests): " + (required.isEmpty() ? "(none)" : names));
+            return required;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Collect the status code and size range of the baseline, sending it a few times if it has no trials yet.
+     */
+    private void sampleBaseline(final SessionTestCase baseline) throws Exception {
+        if (baseline.getTrialCount() == 0) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < BASELINE_SAMPLES; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        long startTime = System.nanoTime();
+                        IHttpRequestResponse message = send(baselineRequest);
+                        IResponseInfo responseInfo = callbacks.getHelpers().analyzeResponse(message.getResponse());
+                        baseline.addTrial((int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                                responseInfo, message.getResponse());
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        int[] sizes = baseline.getResponseSizes();
+        baselineCode = baseline.getResponseCode();
+        int slack = (int) (TrialStatistics.median(sizes) * SIZE_TOLERANCE);
+        minSize = TrialStatistics.percentile(sizes, 0) - slack;
+        maxSize = TrialStatistics.percentile(sizes, 100) + slack;
+    }
+
+    private BitSet minimize(BitSet current) throws Exception {
+        int granularity = 2;
+        while (current.cardinality() >= 2) {
+            List<BitSet> subsets = split(current, granularity);
+            List<BitSet> candidates = new ArrayList<>(subsets);
+            if (granularity > 2) {
+                for (BitSet subset : subsets) {
+                    BitSet complement = (BitSet) current.clone();
+                    complement.andNot(subset);
+                    candidates.add(complement);
+                }
+            }
+            publish("Trying " + candidates.size() + " subsets of " + current.cardinality() + " session tokens");
+            List<Boolean> results = areAlive(candidates);
+
+            int passed = results.indexOf(Boolean.TRUE);
+            if (passed > -1 && passed < subsets.size()) {
+                current = candidates.get(passed);
+                granularity = 2;
+            } else if (passed > -1) {
+                current = candidates.get(passed);
+                granularity = Math.max(granularity - 1, 2);
+            } else if (granularity < current.cardinality()) {
+                granularity = Math.min(granularity * 2, current.cardinality());
+            } else {
+                break;
+            }
+            publish(100 * (tokens.size() - current.cardinality()) / tokens.size());
+        }
+        return current;
+    }
+
+    private static List<BitSet> split(BitSet set, int parts) {
+        List<BitSet> subsets = new ArrayList<>(parts);
+        int size = set.cardinality();
+        int index = set.nextSetBit(0);
+        for (int p = 0; p < parts; p++) {
+            BitSet subset = new BitSet();
+            int count = (size * (p + 1)) / parts - (size * p) / parts;
+            for (int c = 0; c < count; c++) {
+                subset.set(index);
+                index = set.nextSetBit(index + 1);
+            }
+            subsets.add(subset);
+        }
+        return subsets;
+    }
+
+    private boolean isAlive(BitSet kept) throws Exception {
+        return areAlive(Collections.singletonList(kept)).get(0);
+    }
+
+    /**
+     * Send a request for every set of kept tokens that has not been tried before, all at once.
+     * @return Whether the session survived with each set of tokens.
+     */
+    private List<Boolean> areAlive(List<BitSet> candidates) throws Exception {
+        Map<BitSet, Future<Boolean>> pending = new LinkedHashMap<>();
+        for (final BitSet kept : candidates) {
+            if (!outcomes.containsKey(kept) && !pending.containsKey(kept)) {
+                pending.put(kept, executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        IHttpRequestResponse message = send(buildRequest(kept));
+                        IResponseInfo responseInfo = callbacks.getHelpers().analyzeResponse(message.getResponse());
+                        int size = message.getResponse().length - responseInfo.getBodyOffset();
+                        return baselineCode.equals(Short.toString(responseInfo.getStatusCode()))
+                                && size >= minSize && size <= maxSize;
+                    }
+                }));
+            }
+        }
+        for (Map.Entry<BitSet, Future<Boolean>> entry : pending.entrySet()) {
+            try {
+                outcomes.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                StringWriter sw = new StringWriter();
+                e.getCause().printStackTrace(new PrintWriter(sw));
+                callbacks.printError(sw.toString());
+                outcomes.put(entry.getKey(), false);
+            }
+            requestCount++;
+        }
+        List<Boolean> results = new ArrayList<>(candidates.size());
+        for (BitSet kept : candidates) {
+            results.add(outcomes.get(kept));
+        }
+        return results;
+    }
+
+    /**
+     * @param kept The indexes of the tokens to keep.
+     * @return The baseline request with every other token removed.
+     */
+    private byte[] buildRequest(BitSet kept) {
+        byte[] request = baselineRequest;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!kept.get(i)) {
+                request = tokens.get(i).removeFrom(request, callbacks);
+            }
+        }
+        return request;
+    }
+
+    private IHttpRequestResponse send(byte[] request) throws InterruptedException {
+        if (throttle != null) {
+            throttle.acquire();
+        }
+        IHttpRequestResponse message = callbacks.makeHttpRequest(service, request);
+        if (message == null || message.getResponse() == null) {
+            throw new IllegalStateException("No response to session minimization request");
+        }
+        return message;
+    }
+
+    @Override
+    protected void process(List<Object> chunks) {
+        String lastMessage = null;
+        int lastPercent = -1;
+
+        for (Object chunk : chunks) {
+            if (chunk instanceof String) {
+                lastMessage = (String) chunk;
+                callbacks.printOutput(lastMessage);
+            } else if (chunk instanceof Integer) {
+                lastPercent = (Integer) chunk;
+            }
+        }
+
+        if (lastMessage != null) {
+            l.setStatus(lastMessage);
+        }
+        if (lastPercent > -1) {
+            l.setProgress(lastPercent);
+        }
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+            model.fireTableDataChanged();
+        } catch (Exception e) {
+            StringWriter sw = new StringWriter();
+            e.printStackTrace(new PrintWriter(sw));
+            callbacks.printError(sw.toString());
+            l.setStatus("Session minimization failed");
+        }
+    }
+}
@@ -19,15 +19,17 @@ package com.professionallyevil.bc;
 import burp.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class SessionTestCase {
 
     private IParameter param;
     private String testcaseHeader;
-    private int responseSize = 0;
-    private String responseCode;
-    private int responseTime = -1;
+    private int trials = 0;
+    private int[] responseSizes = new int[0];
+    private int[] responseTimes = new int[0];
+    private short[] responseCodes = new short[0];
 
 
     byte[] testRequest;
@@ -74,23 +76,101 @@ public class SessionTestCase {
         }
     }
 
-    int getResponseSize(){
-        return responseSize;
+    /**
+     * @return The median body size over all trials, or 0 if none have completed.
+     */
+    synchronized int getResponseSize(){
+        return trials == 0 ? 0 : TrialStatistics.median(getResponseSizes());
     }
 
-    String getResponseCode(){
-        return responseCode;
+    /**
+     * @return The most common status code over all trials, or null if none have completed.
+     */
+    synchronized String getResponseCode(){
+        return trials == 0 ? null : Short.toString(getModalResponseCode());
+    }
+
+    synchronized int getTrialCount() {
+        return trials;
+    }
+
+    synchronized int[] getResponseSizes() {
+        return Arrays.copyOf(responseSizes, trials);
+    }
+
+    synchronized int[] getResponseTimes() {
+        return Arrays.copyOf(responseTimes, trials);
+    }
+
+    private short getModalResponseCode() {
+        short[] sorted = Arrays.copyOf(responseCodes, trials);
+        Arrays.sort(sorted);
+        short mode = sorted[0];
+        int best = 0;
+        int i = 0;
+        while (i < sorted.length) {
+            int j = i;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i > best) {
+                best = j - i;
+                mode = sorted[i];
+            }
+            i = j;
+        }
+        return mode;
+    }
+
+    /**
+     * Compare the trials of this test case to those of the baseline.
+     * @return True if the status code or body size differs significantly from the baseline.
+     */
+    boolean isSessionRelevant(SessionTestCase baseline) {
+        if (baseline == this) {
+            return false;
+        }
+        int[] baselineSizes;
+        short baselineCode;
+        synchronized (baseline) {
+            if (baseline.trials == 0) {
+                return false;
+            }
+            baselineSizes = baseline.getResponseSizes();
+            baselineCode = baseline.getModalResponseCode();
+        }
+        synchronized (this) {
+            if (trials == 0) {
+                return false;
+            }
+            return getModalResponseCode() != baselineCode
+                    || TrialStatistics.differs(baselineSizes, getResponseSizes());
+        }
     }
 
     byte[] generateTestRequest(byte[] baseline, IBurpExtenderCallbacks callbacks) {
+        testRequest = removeFrom(baseline, callbacks);
+        if (param == null && testcaseHeader != null) {
+            callbacks.printOutput(new String(testRequest));
+        }
+        return testRequest;
+
+    }
+
+    /**
+     * Remove the cookie or header tested by this test case from a request.  Calls can be chained to remove several.
+     * @param request The request to remove it from.  Not modified.
+     * @return The request without this test case's cookie or header (the request itself for the baseline).
+     */
+    byte[] removeFrom(byte[] request, IBurpExtenderCallbacks callbacks) {
         if (param != null){
             IExtensionHelpers helpers = callbacks.getHelpers();
             switch(param.getType()) {
                 default:
-                    testRequest = helpers.removeParameter(baseline, param);
+                    return helpers.removeParameter(request, param);
             }
         } else if (testcaseHeader != null) {
-            IRequestInfo requestInfo = callbacks.getHelpers().analyzeRequest(baseline);
+            IRequestInfo requestInfo = callbacks.getHelpers().analyzeRequest(request);
             List<String> originalHeaders = requestInfo.getHeaders();
             List<String> newHeaders = new ArrayList<>(originalHeaders.size() - 1);
             for (String header: originalHeaders) {
@@ -98,17 +178,12 @@ public class SessionTestCase {
                     newHeaders.add(header);
                 }
             }
-            byte[] body = new byte[baseline.length - requestInfo.getBodyOffset()];
-            System.arraycopy(baseline, requestInfo.getBodyOffset(), body, 0, body.length);
-            byte[] newRequest = callbacks.getHelpers().buildHttpMessage(newHeaders, body);
-            callbacks.printOutput(new String(newRequest));
-            testRequest = newRequest;
-
+            byte[] body = new byte[request.length - requestInfo.getBodyOffset()];
+            System.arraycopy(request, requestInfo.getBodyOffset(), body, 0, body.length);
+            return callbacks.getHelpers().buildHttpMessage(newHeaders, body);
         } else {
-            testRequest = baseline;
+            return request;
         }
-        return testRequest;
-
     }
 
     byte[] getTestRequest() {
@@ -116,23 +191,50 @@ public class SessionTestCase {
     }
 
 
-    byte[] getTestResponse() {
+    synchronized byte[] getTestResponse() {
         return testResponse;
     }
 
-    int getResponseTime() {
-        return responseTime;
+    /**
+     * @return The median response time over all trials in milliseconds, or -1 if none have completed.
+     */
+    synchronized int getResponseTime() {
+        return TrialStatistics.median(getResponseTimes());
     }
 
-    void setResponseTime(int responseTime) {
-        this.responseTime = responseTime;
+    /**
+     * @return The 90th percentile response time over all trials in milliseconds, or -1 if none have completed.
+     */
+    synchronized int getResponseTimeP90() {
+        return TrialStatistics.percentile(getResponseTimes(), 90);
     }
 
+    /**
+     * Discard the results of any previous trials.
+     */
+    synchronized void clearTrials() {
+        trials = 0;
+        testResponse = null;
+    }
 
-    void analyzeResults(IResponseInfo responseInfo, byte[] response) {
-        responseSize = response.length - responseInfo.getBodyOffset();
-        responseCode = Short.toString(responseInfo.getStatusCode());
-        testResponse = response;
+    /**
+     * Record the outcome of one trial.  Safe to call from several threads at once.
+     * @param responseTime How long the request took in milliseconds.
+     */
+    synchronized void addTrial(int responseTime, IResponseInfo responseInfo, byte[] response) {
+        if (trials == responseSizes.length) {
+            int capacity = Math.max(4, trials * 2);
+            responseSizes = Arrays.copyOf(responseSizes, capacity);
+            responseTimes = Arrays.copyOf(responseTimes, capacity);
+            responseCodes = Arrays.copyOf(responseCodes, capacity);
+        }
+        responseSizes[trials] = response.length - responseInfo.getBodyOffset();
+        responseTimes[trials] = responseTime;
+        responseCodes[trials] = responseInfo.getStatusCode();
+        trials++;
+        if (testResponse == null) {
+            testResponse = response;
+        }
     }
 
     IParameter getParameter() {
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Finds the Set-Cookie headers of a raw response and parses their attributes in place.  Scanning stops at the end of
+ * the headers, so the size of the body does not matter, and nothing is allocated unless the caller asks for a string.
+ * A scanner is positioned on one cookie at a time by next(); it is not thread-safe.
+ */
+class SetCookieScanner {
+    private static final byte[] SET_COOKIE = "set-cookie:".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final byte[] response;
+    private final int end;
+    private int position;
+
+    private int nameStart;
+    private int nameEnd;
+    private int valueStart;
+    private int valueEnd;
+    private int domainStart;
+    private int domainEnd;
+    private int pathStart;
+    private int pathEnd;
+    private boolean httpOnly;
+    private boolean secure;
+    private boolean persistent;
+
+    /**
+     * @param response A raw HTTP response.  It is read in place and must not be changed while it is being scanned.
+     */
+    SetCookieScanner(byte[] response) {
+        this.response = response;
+        this.end = response.length;
+        this.position = nextLine(lineEnd(0));  // skip the status line
+    }
+
+    /**
+     * Move to the next Set-Cookie header that has a cookie name.
+     * @return False once the end of the headers has been reached.
+     */
+    boolean next() {
+        while (position < end) {
+            int lineStart = position;
+            int lineEnd = lineEnd(lineStart);
+            if (lineEnd == lineStart) {
+                position = end;  // blank line: the body starts here
+                return false;
+            }
+            position = nextLine(lineEnd);
+            if (regionMatchesIgnoreCase(lineStart, lineEnd, SET_COOKIE) && parse(lineStart + SET_COOKIE.length, lineEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean parse(int from, int to) {
+        httpOnly = false;
+        secure = false;
+        persistent = false;
+        domainStart = -1;
+        pathStart = -1;
+
+        int segmentEnd = indexOf((byte) ';', from, to);
+        int equals = indexOf((byte) '=', from, segmentEnd);
+        nameStart = trimStart(from, equals);
+        nameEnd = trimEnd(nameStart, equals);
+        if (equals < segmentEnd) {
+            valueStart = trimStart(equals + 1, segmentEnd);
+            valueEnd = trimEnd(valueStart, segmentEnd);
+        } else {
+            valueStart = -1;
+            valueEnd = -1;
+        }
+
+        while (segmentEnd < to) {
+            int segmentStart = segmentEnd + 1;
+            segmentEnd = indexOf((byte) ';', segmentStart, to);
+            equals = indexOf((byte) '=', segmentStart, segmentEnd);
+            int keyStart = trimStart(segmentStart, equals);
+            int keyEnd = trimEnd(keyStart, equals);
+            int attrStart = equals < segmentEnd ? trimStart(equals + 1, segmentEnd) : segmentEnd;
+            int attrEnd = trimEnd(attrStart, segmentEnd);
+            boolean hasValue = attrEnd > attrStart;
+            if (keyMatches(keyStart, keyEnd, "HTTPONLY")) {
+                httpOnly = true;
+            } else if (keyMatches(keyStart, keyEnd, "SECURE")) {
+                secure = true;
+            } else if (hasValue && (keyMatches(keyStart, keyEnd, "EXPIRES") || keyMatches(keyStart, keyEnd, "MAX-AGE"))) {
+                persistent = true;
+            } else if (hasValue && keyMatches(keyStart, keyEnd, "DOMAIN")) {
+                domainStart = attrStart;
+                domainEnd = attrEnd;
+            } else if (hasValue && keyMatches(keyStart, keyEnd, "PATH")) {
+                pathStart = attrStart;
+                pathEnd = attrEnd;
+            }
+        }
+        return nameEnd > nameStart;
+    }
+
+    String getName() {
+        return string(nameStart, nameEnd);
+    }
+
+    /**
+     * @return The cookie's value, or null if the header has no '=' after the name.
+     */
+    String getValue() {
+        return valueStart < 0 ? null : string(valueStart, valueEnd);
+    }
+
+    /**
+     * @return The length of the value in bytes (0 if there is no value).
+     */
+    int getValueLength() {
+        return valueStart < 0 ? 0 : valueEnd - valueStart;
+    }
+
+    /**
+     * @param i Between 0 and getValueLength() - 1.
+     * @return The unsigned byte at that position of the value.
+     */
+    int getValueByte(int i) {
+        return response[valueStart + i] & 0xff;
+    }
+
+    boolean isHttpOnly() {
+        return httpOnly;
+    }
+
+    boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * @return True if the cookie has an Expires or Max-Age attribute.
+     */
+    boolean isPersistent() {
+        return persistent;
+    }
+
+    boolean hasDomain() {
+        return domainStart >= 0;
+    }
+
+    boolean hasPath() {
+        return pathStart >= 0;
+    }
+
+    String getDomain() {
+        return hasDomain() ? string(domainStart, domainEnd) : null;
+    }
+
+    String getPath() {
+        return hasPath() ? string(pathStart, pathEnd) : null;
+    }
+
+    /**
+     * @return True if the cookie has a Domain attribute equal to the given string, compared without allocating.
+     */
+    boolean domainEquals(String domain) {
+        return hasDomain() && regionEquals(domainStart, domainEnd, domain);
+    }
+
+    /**
+     * @return True if the cookie has a Path attribute equal to the given string, compared without allocating.
+     */
+    boolean pathEquals(String path) {
+        return hasPath() && regionEquals(pathStart, pathEnd, path);
+    }
+
+    private String string(int from, int to) {
+        return new String(response, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean regionEquals(int from, int to, String s) {
+        if (to - from != s.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if ((response[i] & 0xff) != s.charAt(i - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keyMatches(int from, int to, String upperCaseKey) {
+        if (to - from != upperCaseKey.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            int c = response[i] & 0xff;
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != upperCaseKey.charAt(i - from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean regionMatchesIgnoreCase(int from, int to, byte[] lowerCasePrefix) {
+        if (to - from < lowerCasePrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCasePrefix.length; i++) {
+            int c = response[from + i];
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != lowerCasePrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (response[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // same definition of whitespace as String.trim()
+    private int trimStart(int from, int to) {
+        while (from < to && (response[from] & 0xff) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (response[to - 1] & 0xff) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /**
+     * @return The index of the CR or LF that ends the line starting at from (or the end of the response).
+     */
+    private int lineEnd(int from) {
+        int i = from;
+        while (i < end && response[i] != '\r' && response[i] != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private int nextLine(int lineEnd) {
+        int i = lineEnd;
+        if (i < end && response[i] == '\r') {
+            i++;
+        }
+        if (i < end && response[i] == '\n') {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import burp.IBurpExtenderCallbacks;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Saves a snapshot of the results shown in the background.  If live analysis is adding to the results, the snapshot
+ * is written on the live analysis thread between messages.
+ */
+class SnapshotSaver extends SwingWorker<Integer, Object> {
+    private final CorrelationShard results;
+    private final File file;
+    private final LiveCorrelator liveCorrelator;
+    private final IBurpExtenderCallbacks callbacks;
+    private final WorkerStatusListener statusListener;
+
+    /**
+     * @param liveCorrelator The live analysis adding to the results, or null if there is none.
+     */
+    SnapshotSaver(CorrelationShard results, File file, LiveCorrelator liveCorrelator, IBurpExtenderCallbacks callbacks,
+                  WorkerStatusListener listener) {
+        this.results = results;
+        this.file = file;
+        this.liveCorrelator = liveCorrelator;
+        this.callbacks = callbacks;
+        this.statusListener = listener;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        publish("Saving snapshot to " + file.getName() + "...");
+        Callable<Integer> save = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return ResultsSnapshot.save(results, file);
+            }
+        };
+        return liveCorrelator == null ? save.call() : liveCorrelator.submit(save).get();
+    }
+
+    @Override
+    protected void process(List<Object> chunks) {
+        statusListener.setStatus((String) chunks.get(chunks.size() - 1));
+    }
+
+    @Override
+    protected void done() {
+        try {
+            int messageCount = get();
+            statusListener.setStatus("Saved a snapshot of " + messageCount + " messages to " + file.getName() + ".");
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            callbacks.printError("Unable to save snapshot: " + cause);
+            statusListener.setStatus("Unable to save snapshot: " + cause.getMessage());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import javax.swing.table.TableModel;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the contents of a table (e.g. the parameters or cookie statistics) to a delimited text file, one row per
+ * line with the column names first.  Used by the Export buttons and by the headless runner.
+ */
+class TableExporter {
+
+    static void export(TableModel model, File f, char separator) throws IOException {
+        PrintWriter w = new PrintWriter(new FileWriter(f));
+        try {
+            StringBuilder buf = new StringBuilder();
+            for (int col = 0; col < model.getColumnCount(); col++) {
+                appendField(buf, model.getColumnName(col), separator);
+                buf.append(separator);
+            }
+            buf.deleteCharAt(buf.length() - 1);
+            w.println(buf.toString());
+
+            for (int row = 0; row < model.getRowCount(); row++) {
+                buf = new StringBuilder();
+                for (int col = 0; col < model.getColumnCount(); col++) {
+                    appendField(buf, model.getValueAt(row, col), separator);
+                    buf.append(separator);
+                }
+                buf.deleteCharAt(buf.length() - 1);
+                w.println(buf.toString());
+            }
+            w.flush();
+            if (w.checkError()) {
+                throw new IOException("Error writing to " + f);
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Append a value as a delimited field, quoting it (RFC 4180 style) if it contains the separator, a quote or a line
+     * break.  Nulls are written as empty fields.
+     */
+    static void appendField(StringBuilder buf, Object value, char separator) {
+        if (value == null) {
+            return;
+        }
+        String s = value.toString();
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == separator || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            buf.append(s);
+            return;
+        }
+        buf.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                buf.append('"');
+            }
+            buf.append(c);
+        }
+        buf.append('"');
+    }
+
+    /**
+     * Append a value as JSON: numbers and booleans as they are, null (or a non-finite number) as null, and anything
+     * else as an escaped string.
+     */
+    static void appendJSON(StringBuilder buf, Object value) {
+        if (value == null || (value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite()))) {
+            buf.append("null");
+        } else if (value instanceof Number || value instanceof Boolean) {
+            buf.append(value);
+        } else {
+            String s = value.toString();
+            buf.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                        buf.append("\\\"");
+                        break;
+                    case '\\':
+                        buf.append("\\\\");
+                        break;
+                    case '\n':
+                        buf.append("\\n");
+                        break;
+                    case '\r':
+                        buf.append("\\r");
+                        break;
+                    case '\t':
+                        buf.append("\\t");
+                        break;
+                    default:
+                        if (c < ' ' || c == '\u2028' || c == '\u2029') {
+                            buf.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            buf.append(c);
+                        }
+                }
+            }
+            buf.append('"');
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics and a rank-sum test for the samples collected by repeated session test trials.
+ */
+class TrialStatistics {
+    /** The p-value below which a difference from the baseline is considered significant. */
+    static final double SIGNIFICANCE_LEVEL = 0.05;
+
+    /** Below this many trials per side the rank-sum test cannot reach significance, so a range check is used. */
+    static final int MIN_TEST_SAMPLES = 4;
+
+    private TrialStatistics() {
+    }
+
+    /**
+     * @param samples The values to summarize.  Not modified.
+     * @param percentile Between 0 and 100.
+     * @return The nearest-rank percentile, or -1 if there are no samples.
+     */
+    static int percentile(int[] samples, int percentile) {
+        if (samples.length == 0) {
+            return -1;
+        }
+        int[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    static int median(int[] samples) {
+        return percentile(samples, 50);
+    }
+
+    /**
+     * Two-sided Mann-Whitney U test using the normal approximation with tie and continuity corrections.
+     * @return The p-value of the hypothesis that both samples come from the same distribution (1.0 if either is empty
+     * or every value is tied).
+     */
+    static double rankSumPValue(int[] a, int[] b) {
+        int n1 = a.length;
+        int n2 = b.length;
+        int n = n1 + n2;
+        if (n1 == 0 || n2 == 0) {
+            return 1.0;
+        }
+        long[] combined = new long[n];
+        for (int i = 0; i < n1; i++) {
+            combined[i] = ((long) a[i] << 1);
+        }
+        for (int i = 0; i < n2; i++) {
+            combined[n1 + i] = ((long) b[i] << 1) | 1;
+        }
+        Arrays.sort(combined);
+
+        // Assign mid-ranks to runs of equal values, summing the ranks of the first sample.
+        double rankSumA = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j < n && (combined[j] >> 1) == (combined[i] >> 1)) {
+                j++;
+            }
+            double midRank = (i + 1 + j) / 2.0;
+            for (int k = i; k < j; k++) {
+                if ((combined[k] & 1) == 0) {
+                    rankSumA += midRank;
+                }
+            }
+            long t = j - i;
+            tieCorrection += t * t * t - t;
+            i = j;
+        }
+
+        double u = rankSumA - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2.0;
+        double variance = n1 * (double) n2 / 12.0 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+        if (variance <= 0) {
+            return 1.0;
+        }
+        double z = (Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+        if (z <= 0) {
+            return 1.0;
+        }
+        return Math.min(1.0, 2 * (1 - normalCdf(z)));
+    }
+
+    /**
+     * @return True if the two samples differ significantly.  With too few trials for the rank-sum test this falls back
+     * to requiring every test value to lie outside the range of the baseline values.
+     */
+    static boolean differs(int[] baseline, int[] test) {
+        if (baseline.length == 0 || test.length == 0) {
+            return false;
+        }
+        if (baseline.length >= MIN_TEST_SAMPLES && test.length >= MIN_TEST_SAMPLES) {
+            return rankSumPValue(baseline, test) < SIGNIFICANCE_LEVEL;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int value : baseline) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        for (int value : test) {
+            if (value >= min && value <= max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param samples The values to bucket.
+     * @param buckets The number of equal-width buckets spanning the smallest to the largest sample.
+     * @return A text histogram with one line per bucket.
+     */
+    static String histogram(int[] samples, int buckets) {
+        if (samples.length == 0) {
+            return "(no samples)\n";
+        }
+        int[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int min = sorted[0];
+        int max = sorted[sorted.length - 1];
+        int width = Math.max(1, (max - min + buckets) / buckets);
+        int[] counts = new int[buckets];
+        for (int value : sorted) {
+            counts[Math.min(buckets - 1, (value - min) / width)]++;
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int b = 0; b < buckets; b++) {
+            int from = min + b * width;
+            if (from > max) {
+                break;
+            }
+            buf.append(String.format("%8d - %-8d ", from, from + width - 1));
+            for (int c = 0; c < counts[b]; c++) {
+                buf.append('#');
+            }
+            buf.append(' ').append(counts[b]).append('\n');
+        }
+        return buf.toString();
+    }
+
+    // Abramowitz and Stegun 26.2.17, accurate to about 7.5e-8.
+    private static double normalCdf(double z) {
+        double t = 1 / (1 + 0.2316419 * Math.abs(z));
+        double density = Math.exp(-z * z / 2) / Math.sqrt(2 * Math.PI);
+        double tail = density * t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978
+                + t * 1.330274429))));
+        return z >= 0 ? 1 - tail : tail;
+    }
+}
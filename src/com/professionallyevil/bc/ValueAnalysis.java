@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.util.List;
+
+/**
+ * The outcome of analyzing a value: its format, what it finally decoded to and the decoding steps that got there.
+ * This is all that is kept in bulk; the human readable analysis is rendered from the steps only when it is shown.
+ */
+class ValueAnalysis {
+
+    /**
+     * A step of ParamAnalyzer's decoding loop.  The last step is always the one that left the value unchanged.
+     */
+    enum Step {
+        UNQUOTE,
+        URL_DECODE,
+        HEX_DECODE,
+        URL_PATH,
+        JWT_DECODE,
+        BASE64_DECODE,
+        KEEP,           // a credit card or PHP serialized value; decoding it further would destroy it
+        NONE
+    }
+
+    private static final Step[] STEPS = Step.values();
+
+    private final ParamInstance.Format format;
+    private final String decodedValue;
+    private final byte[] steps;
+
+    ValueAnalysis(ParamInstance.Format format, String decodedValue, List<Step> steps) {
+        this.format = format;
+        this.decodedValue = decodedValue;
+        this.steps = new byte[steps.size()];
+        for (int i = 0; i < this.steps.length; i++) {
+            this.steps[i] = (byte) steps.get(i).ordinal();
+        }
+    }
+
+    ParamInstance.Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return The fully decoded value, or null if the value was not run through the decoders (e.g. it was blank).
+     */
+    String getDecodedValue() {
+        return decodedValue;
+    }
+
+    int getStepCount() {
+        return steps.length;
+    }
+
+    Step getStep(int i) {
+        return STEPS[steps[i]];
+    }
+
+    /**
+     * Record this result on an instance, as if it had been analyzed itself.
+     */
+    void applyTo(ParamInstance pi) {
+        if (decodedValue != null) {
+            pi.setDecodedValue(decodedValue);
+        }
+        pi.setFormat(format);
+    }
+}
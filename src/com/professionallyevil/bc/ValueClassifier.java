@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+/**
+ * Walks a value once and records which characters it contains as a bitmask.  Each ParamAnalyzer.ValuePattern lists
+ * the bits that any value it matches must have, so the regex is only run when the bitmask still allows a match.  The
+ * bits are all necessary (never sufficient) conditions, so a gated match always gives the same answer as the regex
+ * alone.
+ * <p>
+ * The ALL_* bits describe the value without any trailing line terminators, because a regex ending in $ also matches
+ * just before a final line terminator.
+ */
+class ValueClassifier {
+    static final int NOT_EMPTY = 1;
+    static final int HAS_DIGIT = 1 << 1;
+    static final int HAS_PERCENT = 1 << 2;
+    static final int HAS_AT = 1 << 3;
+    static final int HAS_DOT = 1 << 4;
+    static final int HAS_SPACE = 1 << 5;
+    static final int HAS_QUOTE = 1 << 6;
+    static final int HAS_LT = 1 << 7;
+    static final int HAS_COLON = 1 << 8;
+    static final int HAS_COLON_OR_SEMICOLON = 1 << 9;
+    static final int STARTS_SLASH = 1 << 10;
+    static final int STARTS_HTTP = 1 << 11;
+    static final int STARTS_EY = 1 << 12;
+    static final int STARTS_BRACE = 1 << 13;
+    static final int ENDS_BRACE = 1 << 14;
+    static final int ALL_DIGITS_DASH = 1 << 15;   // [0-9-]
+    static final int ALL_CARD = 1 << 16;          // [0-9 -]
+    static final int ALL_HEX = 1 << 17;           // [0-9a-fA-F]
+    static final int ALL_ALNUM = 1 << 18;         // [A-Za-z0-9]
+    static final int ALL_BASE64 = 1 << 19;        // [A-Za-z0-9+/=]
+    static final int ALL_TEXT = 1 << 20;          // [\w' .?!]
+    static final int ALL_PRINTABLE = 1 << 21;     // \p{Print}
+
+    private static final int ALL_BITS = ALL_DIGITS_DASH | ALL_CARD | ALL_HEX | ALL_ALNUM | ALL_BASE64 | ALL_TEXT |
+            ALL_PRINTABLE;
+
+    // the ALL_* bits each ASCII character keeps
+    private static final int[] ASCII_CLASSES = new int[128];
+
+    static {
+        for (char c = 0x20; c < 0x7f; c++) {
+            int bits = ALL_PRINTABLE;
+            boolean digit = c >= '0' && c <= '9';
+            boolean alpha = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+            if (digit || c == '-') {
+                bits |= ALL_DIGITS_DASH | ALL_CARD;
+            }
+            if (c == ' ') {
+                bits |= ALL_CARD;
+            }
+            if (digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+                bits |= ALL_HEX;
+            }
+            if (digit || alpha) {
+                bits |= ALL_ALNUM | ALL_BASE64 | ALL_TEXT;
+            }
+            if (c == '+' || c == '/' || c == '=') {
+                bits |= ALL_BASE64;
+            }
+            if (c == '_' || c == '\'' || c == ' ' || c == '.' || c == '?' || c == '!') {
+                bits |= ALL_TEXT;
+            }
+            ASCII_CLASSES[c] = bits;
+        }
+    }
+
+    static int classify(String value) {
+        int end = value.length();
+        while (end > 0 && isLineTerminator(value.charAt(end - 1))) {
+            end--;
+        }
+
+        int all = ALL_BITS;
+        int has = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (i < end) {
+                all &= c < 128 ? ASCII_CLASSES[c] : 0;
+            }
+            switch (c) {
+                case '%':
+                    has |= HAS_PERCENT;
+                    break;
+                case '@':
+                    has |= HAS_AT;
+                    break;
+                case '.':
+                    has |= HAS_DOT;
+                    break;
+                case ' ':
+                    has |= HAS_SPACE;
+                    break;
+                case '"':
+                    has |= HAS_QUOTE;
+                    break;
+                case '<':
+                    has |= HAS_LT;
+                    break;
+                case ':':
+                    has |= HAS_COLON | HAS_COLON_OR_SEMICOLON;
+                    break;
+                case ';':
+                    has |= HAS_COLON_OR_SEMICOLON;
+                    break;
+                default:
+                    if (c >= '0' && c <= '9') {
+                        has |= HAS_DIGIT;
+                    }
+            }
+        }
+
+        int mask = all | has;
+        if (end > 0) {
+            mask |= NOT_EMPTY;
+            if (value.charAt(end - 1) == '}') {
+                mask |= ENDS_BRACE;
+            }
+        }
+        if (value.startsWith("/")) {
+            mask |= STARTS_SLASH;
+        } else if (value.startsWith("http")) {
+            mask |= STARTS_HTTP;
+        } else if (value.startsWith("ey")) {
+            mask |= STARTS_EY;
+        } else if (value.startsWith("{")) {
+            mask |= STARTS_BRACE;
+        }
+        return mask;
+    }
+
+    // the characters java.util.regex treats as line terminators
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2019 Jason Gillam
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.professionallyevil.bc;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every raw and decoded value to the (unique value) instances it was seen in, across all parameters.  It is built
+ * once when an analysis finishes and then extended by live analysis, so deep analysis never has to rebuild it.
+ * Updates come from one thread at a time; any number of deep analysis workers may read it at the same time and will
+ * see a consistent posting list for each value, though possibly not values added after they started.
+ */
+class ValueIndex {
+    private static final ParamInstance[] NO_POSTINGS = new ParamInstance[0];
+
+    private final ConcurrentHashMap<String, ParamInstance[]> postings = new ConcurrentHashMap<>();
+    private final Map<CorrelatedParam, Integer> indexedCounts = new LinkedHashMap<>();  // unique values already indexed
+    // distinct values in the order they were first indexed; the array is replaced (never shrunk) before the count grows
+    private volatile String[] values = new String[64];
+    private volatile int valueCount = 0;
+
+    /**
+     * Index the unique values of the given parameters that have not been indexed yet.  The parameters must already be
+     * analyzed so that their decoded values are known.
+     * @param params Parameters that are new or may have new values.
+     */
+    synchronized void update(Collection<CorrelatedParam> params) {
+        for (CorrelatedParam param : params) {
+            Integer indexed = indexedCounts.get(param);
+            int from = indexed == null ? 0 : indexed;
+            List<ParamInstance> instances = param.getParamInstances(false);
+            int to = instances.size();
+            for (int i = from; i < to; i++) {
+                ParamInstance instance = instances.get(i);
+                String value = instance.getValue();
+                add(value, instance);
+                String decodedValue = instance.getDecodedValue();
+                if (!decodedValue.equals(value)) {
+                    add(decodedValue, instance);
+                }
+            }
+            indexedCounts.put(param, to);
+        }
+    }
+
+    /**
+     * @return The parameters indexed so far.
+     */
+    synchronized List<CorrelatedParam> getParameters() {
+        return new ArrayList<>(indexedCounts.keySet());
+    }
+
+    private void add(String value, ParamInstance instance) {
+        ParamInstance[] existing = postings.get(value);
+        if (existing == null) {
+            postings.put(value, new ParamInstance[]{instance});
+            String[] valueArray = values;
+            if (valueCount == valueArray.length) {
+                valueArray = Arrays.copyOf(valueArray, valueArray.length * 2);
+                values = valueArray;
+            }
+            valueArray[valueCount] = value;
+            valueCount++;
+        } else {
+            // copied rather than appended in place so that readers never see a half-updated list
+            ParamInstance[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = instance;
+            postings.put(value, updated);
+        }
+    }
+
+    /**
+     * Values keep their ordinal for the life of the index, so a consumer (e.g. the DigestIndex) can process new values
+     * by picking up where it left off.
+     * @param ordinal From 0 to size() - 1.
+     * @return The value first indexed at this position.
+     */
+    String getValue(int ordinal) {
+        int count = valueCount;
+        if (ordinal >= count) {
+            throw new IndexOutOfBoundsException(ordinal + " >= " + count);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * @param value A raw or decoded value.
+     * @return The instances that have this value, or an empty list.
+     */
+    List<ParamInstance> getInstances(String value) {
+        ParamInstance[] instances = postings.get(value);
+        return Collections.unmodifiableList(Arrays.asList(instances == null ? NO_POSTINGS : instances));
+    }
+
+    boolean contains(String value) {
+        return postings.containsKey(value);
+    }
+
+    /**
+     * @return The number of distinct values indexed so far.
+     */
+    int size() {
+        return valueCount;
+    }
+}